@@ -0,0 +1,285 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+
+/**
+ * Entry points into the integrator's (default package) code for the JMH benchmarks.
+ *
+ * JMH refuses benchmark classes in the default package, and classes in a named package cannot
+ * reference default-package classes. The benchmarks in the `benchmarks` package therefore bind
+ * these methods through constant MethodHandles (see benchmarks.Targets), which the JIT inlines.
+ * Every method takes and returns JDK types only.
+ */
+public final class BenchmarkTargets {
+
+    private BenchmarkTargets() {
+    }
+
+    /**
+     * Current path: ProductPageParser streams the page and processAndAddSkuData stores each record.
+     *
+     * @return The number of SKUs processed.
+     */
+    public static int parsePageStreaming(byte[] page, double priceMultiplier) {
+        SkuRecordStore skuRecords = new SkuRecordStore();
+        PricingEngine pricing = PricingEngine.compile(Double.toString(priceMultiplier));
+        try {
+            ProductPageParser.parse(new ByteArrayInputStream(page),
+                    product -> DropshipzoneAPIClient.processAndAddSkuData(product, skuRecords, pricing));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return skuRecords.size();
+    }
+
+    /**
+     * Previous path, kept here as the baseline: a full JSONObject per page through JSONTokener,
+     * then every item re-serialised with toString() and parsed again before its fields are read.
+     *
+     * @return The number of SKUs processed.
+     */
+    public static int parsePageLegacy(byte[] page, double priceMultiplier) {
+        Map<String, Map<String, String>> skuData = new HashMap<>();
+        JSONObject pageResultJson = new JSONObject(new JSONTokener(new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8))));
+        JSONArray apiData = pageResultJson.getJSONArray("result");
+        for (Object obj : apiData) {
+            JSONObject item = new JSONObject(obj.toString());
+            String sku = item.optString("sku", "INVALID_SKU");
+            int stockQty = (int) Double.parseDouble(item.optString("stock_qty", "0"));
+            if (stockQty < 25) {
+                stockQty = 0;
+            }
+            String cost = item.optString("cost", "0.00");
+            Double.parseDouble(cost);
+            double calculatedSellingPrice = Double.parseDouble(item.optString("price", "0.00")) * priceMultiplier;
+            double sellingPriceValue = Math.abs(calculatedSellingPrice - Math.round(calculatedSellingPrice)) < 0.00001
+                    ? calculatedSellingPrice
+                    : Math.floor(calculatedSellingPrice) + 0.95;
+
+            Map<String, String> skuEntry = new HashMap<>();
+            skuEntry.put("sku", sku);
+            skuEntry.put("quantity", String.valueOf(stockQty));
+            skuEntry.put("cost", cost);
+            skuEntry.put("selling_price", String.format("%.2f", sellingPriceValue));
+            skuData.put(sku, skuEntry);
+        }
+        pageResultJson.optInt("total_pages", 1);
+        return skuData.size();
+    }
+
+    /**
+     * @return A compiled PricingEngine (typed as Object so the benchmarks can hold it).
+     */
+    public static Object compilePricing(String multiplier, String rulesJson) {
+        return PricingEngine.compile(multiplier, rulesJson);
+    }
+
+    /**
+     * Previous pricing path, kept as the baseline: Double.parseDouble, a double multiply, the .95
+     * rule in floating point and String.format("%.2f") for every price.
+     *
+     * @return A checksum of the formatted prices, so the work cannot be eliminated.
+     */
+    public static int priceLegacy(String[] prices, double priceMultiplier) {
+        int checksum = 0;
+        for (String priceText : prices) {
+            double calculatedSellingPrice = Double.parseDouble(priceText) * priceMultiplier;
+            double sellingPriceValue = Math.abs(calculatedSellingPrice - Math.round(calculatedSellingPrice)) < 0.00001
+                    ? Math.round(calculatedSellingPrice)
+                    : Math.floor(calculatedSellingPrice) + 0.95;
+            checksum += String.format("%.2f", sellingPriceValue).hashCode();
+        }
+        return checksum;
+    }
+
+    /**
+     * Current pricing path: parse the price in place, price through the compiled rule table and
+     * append the result to a reused builder, as the CSV writer does.
+     *
+     * @return A checksum of the formatted prices, so the work cannot be eliminated.
+     */
+    public static int priceFixedPoint(Object engine, String[] prices, String[] brands, String[] categories, StringBuilder out) {
+        PricingEngine pricing = (PricingEngine) engine;
+        int checksum = 0;
+        for (int i = 0; i < prices.length; i++) {
+            long sellingPriceCents = pricing.sellingPriceCents(prices[i], brands[i], categories[i]);
+            out.setLength(0);
+            SkuRecordStore.appendCents(out, sellingPriceCents);
+            checksum += out.length() + (int) sellingPriceCents;
+        }
+        return checksum;
+    }
+
+    /**
+     * Builds skuCount products from the products of a template page (products.json), cycling through
+     * them and giving each copy a unique SKU, for the processAndAddSkuData benchmark.
+     *
+     * @return The products (a ProductPageParser.Product[] typed as Object).
+     */
+    public static Object buildProducts(byte[] templatePage, int skuCount) {
+        List<ProductPageParser.Product> template = new ArrayList<>();
+        try {
+            ProductPageParser.parse(new ByteArrayInputStream(templatePage), product -> template.add(copyOf(product, product.sku)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (template.isEmpty()) {
+            throw new IllegalArgumentException("Template page has no products");
+        }
+        ProductPageParser.Product[] products = new ProductPageParser.Product[skuCount];
+        for (int i = 0; i < skuCount; i++) {
+            ProductPageParser.Product source = template.get(i % template.size());
+            products[i] = copyOf(source, source.sku + "-" + i);
+        }
+        return products;
+    }
+
+    private static ProductPageParser.Product copyOf(ProductPageParser.Product source, String sku) {
+        ProductPageParser.Product copy = new ProductPageParser.Product();
+        copy.sku = sku;
+        copy.stockQty.append(source.stockQty);
+        copy.cost.append(source.cost);
+        copy.price.append(source.price);
+        copy.brand.append(source.brand);
+        copy.category.append(source.category);
+        return copy;
+    }
+
+    /**
+     * Runs processAndAddSkuData over prepared products into a fresh, presized store.
+     *
+     * @return The number of records stored.
+     */
+    public static int processProducts(Object products, Object pricing) {
+        ProductPageParser.Product[] items = (ProductPageParser.Product[]) products;
+        PricingEngine engine = (PricingEngine) pricing;
+        SkuRecordStore skuRecords = new SkuRecordStore(items.length);
+        for (ProductPageParser.Product product : items) {
+            DropshipzoneAPIClient.processAndAddSkuData(product, skuRecords, engine);
+        }
+        return skuRecords.size();
+    }
+
+    public static String extractToken(String json) {
+        return DropshipzoneAPIClient.extractToken(json);
+    }
+
+    /**
+     * Builds a record store of skuCount SKUs from the rows of stock_data.csv, cycling through them
+     * with unique SKUs. Every hundredth SKU contains a comma so escapeCsv's quoting branch is exercised.
+     *
+     * @return The store (typed as Object).
+     */
+    public static Object buildRecordStore(byte[] stockCsv, int skuCount) {
+        List<String[]> rows = stockRows(stockCsv);
+        SkuRecordStore skuRecords = new SkuRecordStore(skuCount);
+        for (int i = 0; i < skuCount; i++) {
+            String[] row = rows.get(i % rows.size());
+            String sku = (i % 100 == 99 ? row[0] + ",B" : row[0]) + "-" + i;
+            long costCents = 500 + (i * 7919L) % 50_000;
+            skuRecords.put(sku, parseIntOrZero(row[2]), costCents, costCents * 14 / 10 / 100 * 100 + 95);
+        }
+        return skuRecords;
+    }
+
+    public static int generateCsv(Object skuRecords) {
+        return LambdaHandler.generateCsvContent((SkuRecordStore) skuRecords).length();
+    }
+
+    /**
+     * Streams the store through CsvStreamWriter into a stream that only counts bytes, optionally gzipped.
+     *
+     * @return The number of bytes written.
+     */
+    public static long streamCsv(Object skuRecords, boolean gzip) {
+        long[] bytes = new long[1];
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes[0] += len;
+            }
+        };
+        try (CsvStreamWriter csv = new CsvStreamWriter(gzip ? new GZIPOutputStream(counter, 64 * 1024) : counter)) {
+            csv.writeHeader();
+            csv.writeRecords((SkuRecordStore) skuRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes[0];
+    }
+
+    /**
+     * Builds a SKU input CSV of skuCount data lines (same columns as stock_data.csv) with unique SKUs.
+     */
+    public static byte[] buildSkuCsv(byte[] stockCsv, int skuCount) {
+        List<String[]> rows = stockRows(stockCsv);
+        StringBuilder csv = new StringBuilder(skuCount * 48);
+        csv.append("sku,is_in_stock,new_qty,status\n");
+        for (int i = 0; i < skuCount; i++) {
+            String[] row = rows.get(i % rows.size());
+            csv.append(row[0]).append('-').append(i);
+            for (int c = 1; c < row.length; c++) {
+                csv.append(',').append(row[c]);
+            }
+            csv.append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The parsing half of loadSkusFromCSV, reading from memory instead of an S3 object stream.
+     *
+     * @return The number of SKUs read.
+     */
+    public static int parseSkuCsv(byte[] csv) {
+        try (ByteArrayInputStream in = new ByteArrayInputStream(csv)) {
+            return DropshipzoneAPIClient.parseSkuCsv(in).size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String[]> stockRows(byte[] stockCsv) {
+        List<String[]> rows = new ArrayList<>();
+        String[] lines = new String(stockCsv, StandardCharsets.UTF_8).split("\r?\n");
+        for (int i = 1; i < lines.length; i++) {
+            if (!lines[i].trim().isEmpty()) {
+                String[] row = lines[i].split(",", -1);
+                if (row.length >= 3) {
+                    rows.add(row);
+                }
+            }
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Stock CSV has no data rows");
+        }
+        return rows;
+    }
+
+    private static int parseIntOrZero(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * generateCsvContent (and escapeCsv for every SKU) over a record store built from the
+ * stock_data.csv rows, repeated with unique SKUs up to `skus`. One SKU in a hundred needs quoting.
+ * The streaming variants encode the same rows with CsvStreamWriter, plain and gzipped, into a
+ * byte-counting sink (no S3).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvOutputBenchmark {
+
+    private static final MethodHandle BUILD = Targets.find("buildRecordStore", Object.class, byte[].class, int.class);
+    private static final MethodHandle GENERATE = Targets.find("generateCsv", int.class, Object.class);
+    private static final MethodHandle STREAM = Targets.find("streamCsv", long.class, Object.class, boolean.class);
+
+    @Param({"1000", "100000"})
+    public int skus;
+
+    private Object skuRecords;
+
+    @Setup
+    public void buildFixture() throws Throwable {
+        skuRecords = (Object) BUILD.invokeExact(Targets.stockFixture(), skus);
+    }
+
+    @Benchmark
+    public int generateCsvContent() throws Throwable {
+        return (int) GENERATE.invokeExact(skuRecords);
+    }
+
+    @Benchmark
+    public long streamCsv() throws Throwable {
+        return (long) STREAM.invokeExact(skuRecords, false);
+    }
+
+    @Benchmark
+    public long streamCsvGzip() throws Throwable {
+        return (long) STREAM.invokeExact(skuRecords, true);
+    }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * extractToken on a Dropshipzone /auth response carrying a JWT of realistic size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractTokenBenchmark {
+
+    private static final MethodHandle EXTRACT = Targets.find("extractToken", String.class, String.class);
+
+    private String authResponse;
+
+    @Setup
+    public void buildResponse() {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            payload.append((char) ('A' + (i * 31) % 26));
+        }
+        authResponse = "{\"token\":\"eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9." + payload
+                + ".SflKxwRJSMeKKF2QT4fwpMeJf36POk6yJV_adQssw5c\",\"iat\":1750915934,\"exp\":1750923134}";
+    }
+
+    @Benchmark
+    public String extractToken() throws Throwable {
+        return (String) EXTRACT.invokeExact(authResponse);
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-SKU cost of computing and formatting a selling price: the previous double/String.format path
+ * versus PricingEngine, with only the default rule and with a ten-row brand/category rule table.
+ *
+ * Scores are per SKU (ns/op). Run with `-prof gc` to see that the fixed-point path allocates nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricingBenchmark {
+
+    private static final int SKUS = 1024;
+
+    private static final MethodHandle COMPILE = Targets.find("compilePricing", Object.class, String.class, String.class);
+    private static final MethodHandle LEGACY = Targets.find("priceLegacy", int.class, String[].class, double.class);
+    private static final MethodHandle FIXED_POINT = Targets.find("priceFixedPoint", int.class,
+            Object.class, String[].class, String[].class, String[].class, StringBuilder.class);
+
+    private static final String[] BRANDS = {"Everfit", "Artiss", "Gardeon", "Giantz", "i.Pet", "Devanti", "Zenses", "Embellir"};
+    private static final String[] CATEGORIES = {
+            "Sports & Fitness > Exercise, Gym & Fitness > ",
+            "Furniture > Living Room > Sofas > ",
+            "Home & Garden > Garden Tools > ",
+            "Pet Care > Dog Supplies > Dog Beds > ",
+            "Appliances > Kitchen Appliances > "};
+    private static final String RULES = "["
+            + "{\"brand\":\"Everfit\",\"multiplier\":\"1.5\"},"
+            + "{\"brand\":\"Artiss\",\"multiplier\":\"1.35\",\"ending\":99},"
+            + "{\"brand\":\"Giantz\",\"floor\":\"49.95\"},"
+            + "{\"brand\":\"Zenses\",\"multiplier\":\"1.45\"},"
+            + "{\"brand\":\"LockMaster\",\"multiplier\":\"1.6\"},"
+            + "{\"category\":\"Home & Garden\",\"multiplier\":\"1.3\",\"floor\":\"9.95\"},"
+            + "{\"category\":\"Pet Care > Dog Supplies\",\"ending\":49},"
+            + "{\"category\":\"Furniture\",\"multiplier\":\"1.25\"},"
+            + "{\"category\":\"Toys\",\"multiplier\":\"1.55\"},"
+            + "{\"floor\":\"4.95\"}]";
+
+    private final String[] prices = new String[SKUS];
+    private final String[] brands = new String[SKUS];
+    private final String[] categories = new String[SKUS];
+    private final StringBuilder out = new StringBuilder(16);
+    private Object defaultOnly;
+    private Object withRules;
+
+    @Setup
+    public void generatePrices() throws Throwable {
+        Random random = new Random(42);
+        for (int i = 0; i < SKUS; i++) {
+            int cents = 100 + random.nextInt(99_900);
+            prices[i] = (cents / 100) + "." + (cents % 100 < 10 ? "0" : "") + (cents % 100);
+            brands[i] = BRANDS[random.nextInt(BRANDS.length)];
+            categories[i] = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        }
+        defaultOnly = (Object) COMPILE.invokeExact("1.4", (String) null);
+        withRules = (Object) COMPILE.invokeExact("1.4", RULES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SKUS)
+    public int legacyDoubleFormat() throws Throwable {
+        return (int) LEGACY.invokeExact(prices, 1.4);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SKUS)
+    public int fixedPointDefaultRule() throws Throwable {
+        return (int) FIXED_POINT.invokeExact(defaultOnly, prices, brands, categories, out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SKUS)
+    public int fixedPointRuleTable() throws Throwable {
+        return (int) FIXED_POINT.invokeExact(withRules, prices, brands, categories, out);
+    }
+}
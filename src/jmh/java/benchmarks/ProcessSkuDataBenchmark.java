@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * processAndAddSkuData over a whole run's worth of products: the products.json items repeated with
+ * unique SKUs up to `skus`, merged into a fresh record store and priced with the default rule.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessSkuDataBenchmark {
+
+    private static final MethodHandle BUILD = Targets.find("buildProducts", Object.class, byte[].class, int.class);
+    private static final MethodHandle COMPILE = Targets.find("compilePricing", Object.class, String.class, String.class);
+    private static final MethodHandle PROCESS = Targets.find("processProducts", int.class, Object.class, Object.class);
+
+    @Param({"1000", "100000"})
+    public int skus;
+
+    private Object products;
+    private Object pricing;
+
+    @Setup
+    public void buildFixture() throws Throwable {
+        products = (Object) BUILD.invokeExact(Targets.productsFixture(), skus);
+        pricing = (Object) COMPILE.invokeExact("1.4", (String) null);
+    }
+
+    @Benchmark
+    public int processAndAddSkuData() throws Throwable {
+        return (int) PROCESS.invokeExact(products, pricing);
+    }
+}
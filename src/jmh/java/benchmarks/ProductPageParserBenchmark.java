@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streaming ProductPageParser versus the previous JSONObject/JSONTokener path, on one
+ * Dropshipzone products page (products.json, 40 products with full desc/zone_rates payloads).
+ *
+ * Run with `-prof gc` to compare allocation per page (gc.alloc.rate.norm).
+ * The fixture path can be overridden with -Dfixture.products=...
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductPageParserBenchmark {
+
+    private static final MethodHandle STREAMING = Targets.find("parsePageStreaming", int.class, byte[].class, double.class);
+    private static final MethodHandle LEGACY = Targets.find("parsePageLegacy", int.class, byte[].class, double.class);
+
+    private byte[] page;
+
+    @Setup
+    public void loadFixture() throws IOException {
+        page = Targets.productsFixture();
+    }
+
+    @Benchmark
+    public int streamingParser() throws Throwable {
+        return (int) STREAMING.invokeExact(page, 1.4);
+    }
+
+    @Benchmark
+    public int legacyJsonObject() throws Throwable {
+        return (int) LEGACY.invokeExact(page, 1.4);
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The parsing half of loadSkusFromCSV on an in-memory SKU CSV with the stock_data.csv columns,
+ * repeated with unique SKUs up to `skus`. S3 transfer time is deliberately left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SkuCsvParseBenchmark {
+
+    private static final MethodHandle BUILD = Targets.find("buildSkuCsv", byte[].class, byte[].class, int.class);
+    private static final MethodHandle PARSE = Targets.find("parseSkuCsv", int.class, byte[].class);
+
+    @Param({"1000", "100000"})
+    public int skus;
+
+    private byte[] csv;
+
+    @Setup
+    public void buildFixture() throws Throwable {
+        csv = (byte[]) BUILD.invokeExact(Targets.stockFixture(), skus);
+    }
+
+    @Benchmark
+    public int loadSkusFromCsv() throws Throwable {
+        return (int) PARSE.invokeExact(csv);
+    }
+}
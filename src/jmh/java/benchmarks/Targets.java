@@ -0,0 +1,42 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Resolves the default-package entry points in BenchmarkTargets as MethodHandles.
+ * Store the result in a static final field so the JIT treats the handle as a constant.
+ * Also loads the fixture files, whose paths can be overridden with system properties.
+ */
+final class Targets {
+
+    private Targets() {
+    }
+
+    static MethodHandle find(String methodName, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            Class<?> targets = Class.forName("BenchmarkTargets");
+            return MethodHandles.publicLookup().findStatic(targets, methodName, MethodType.methodType(returnType, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @return The Dropshipzone products page fixture (-Dfixture.products, default products.json).
+     */
+    static byte[] productsFixture() throws IOException {
+        return Files.readAllBytes(Paths.get(System.getProperty("fixture.products", "products.json")));
+    }
+
+    /**
+     * @return The stock CSV fixture (-Dfixture.stock, default stock_data.csv).
+     */
+    static byte[] stockFixture() throws IOException {
+        return Files.readAllBytes(Paths.get(System.getProperty("fixture.stock", "stock_data.csv")));
+    }
+}
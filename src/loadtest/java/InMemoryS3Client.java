@@ -0,0 +1,332 @@
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.DeletedObject;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * In-memory S3Client for load tests: the object operations LambdaHandler uses (get with ranges and
+ * If-None-Match, put, list, delete and multipart uploads), backed by a sorted map so listings come
+ * back in key order like S3. Anything else throws UnsupportedOperationException (the SDK interface
+ * default).
+ */
+public class InMemoryS3Client implements S3Client {
+
+    private static final int MAX_KEYS = 1000;
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final class StoredObject {
+        final byte[] content;
+        final String contentEncoding;
+        final Instant lastModified;
+        final String eTag;
+
+        StoredObject(byte[] content, String contentEncoding) {
+            this.content = content;
+            this.contentEncoding = contentEncoding;
+            this.lastModified = Instant.now();
+            this.eTag = "\"" + md5Hex(content) + "\"";
+        }
+    }
+
+    private static final class MultipartUpload {
+        final String objectKey;
+        final String contentEncoding;
+        final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+        MultipartUpload(String objectKey, String contentEncoding) {
+            this.objectKey = objectKey;
+            this.contentEncoding = contentEncoding;
+        }
+    }
+
+    // Keyed by bucket + '/' + key
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    // Keyed by upload id
+    private final Map<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger deleteObjectsCalls = new AtomicInteger();
+
+    /**
+     * Stores an object directly, e.g. the SKU input file before a run.
+     */
+    public void putObject(String bucket, String key, String content) {
+        objects.put(bucket + "/" + key, new StoredObject(content.getBytes(StandardCharsets.UTF_8), null));
+    }
+
+    /**
+     * @return The objects under a bucket and prefix, by key, with their sizes.
+     */
+    public Map<String, Integer> sizes(String bucket, String prefix) {
+        Map<String, Integer> sizes = new java.util.LinkedHashMap<>();
+        String from = bucket + "/" + (prefix == null ? "" : prefix);
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(from, true).entrySet()) {
+            if (!entry.getKey().startsWith(from)) {
+                break;
+            }
+            sizes.put(entry.getKey().substring(bucket.length() + 1), entry.getValue().content.length);
+        }
+        return sizes;
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        StoredObject object = objects.get(request.bucket() + "/" + request.key());
+        if (object == null) {
+            throw NoSuchKeyException.builder().message("The specified key does not exist: " + request.key()).statusCode(404).build();
+        }
+        if (request.ifNoneMatch() != null && request.ifNoneMatch().equals(object.eTag)) {
+            throw S3Exception.builder().message("Not Modified").statusCode(304).build();
+        }
+        byte[] content = request.range() != null ? range(object.content, request.range()) : object.content;
+        GetObjectResponse response = GetObjectResponse.builder()
+                .eTag(object.eTag)
+                .lastModified(object.lastModified)
+                .contentLength((long) content.length)
+                .contentEncoding(object.contentEncoding)
+                .build();
+        return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Applies a single-range Range header ("bytes=first-last", "bytes=first-" or "bytes=-suffixLength").
+     */
+    private static byte[] range(byte[] content, String range) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            throw S3Exception.builder().message("InvalidRange: " + range).statusCode(416).build();
+        }
+        String spec = range.substring("bytes=".length());
+        int dash = spec.indexOf('-');
+        long first;
+        long last;
+        if (dash == 0) {
+            first = Math.max(0, content.length - Long.parseLong(spec.substring(1)));
+            last = content.length - 1;
+        } else {
+            first = Long.parseLong(spec.substring(0, dash));
+            last = dash == spec.length() - 1 ? content.length - 1 : Math.min(content.length - 1, Long.parseLong(spec.substring(dash + 1)));
+        }
+        if (first >= content.length || first > last) {
+            throw S3Exception.builder().message("InvalidRange: " + range).statusCode(416).build();
+        }
+        return Arrays.copyOfRange(content, (int) first, (int) last + 1);
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+        StoredObject object = new StoredObject(read(body), request.contentEncoding());
+        objects.put(request.bucket() + "/" + request.key(), object);
+        return PutObjectResponse.builder().eTag(object.eTag).build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new MultipartUpload(request.bucket() + "/" + request.key(), request.contentEncoding()));
+        return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+        byte[] part = read(body);
+        upload(request.uploadId()).parts.put(request.partNumber(), part);
+        return UploadPartResponse.builder().eTag("\"" + md5Hex(part) + "\"").build();
+    }
+
+    /**
+     * Assembles the listed parts like S3 does, including its rule that every part but the last is at
+     * least 5 MiB.
+     */
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        MultipartUpload upload = upload(request.uploadId());
+        List<CompletedPart> parts = request.multipartUpload().parts();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < parts.size(); i++) {
+            byte[] part = upload.parts.get(parts.get(i).partNumber());
+            if (part == null) {
+                throw S3Exception.builder().message("InvalidPart: part " + parts.get(i).partNumber() + " was not uploaded").statusCode(400).build();
+            }
+            if (i < parts.size() - 1 && part.length < MIN_PART_SIZE) {
+                throw S3Exception.builder().message("EntityTooSmall: part " + parts.get(i).partNumber() + " is " + part.length + " bytes").statusCode(400).build();
+            }
+            content.writeBytes(part);
+        }
+        uploads.remove(request.uploadId());
+        objects.put(upload.objectKey, new StoredObject(content.toByteArray(), upload.contentEncoding));
+        return CompleteMultipartUploadResponse.builder().build();
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        uploads.remove(request.uploadId());
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    /**
+     * @return The number of multipart uploads neither completed nor aborted.
+     */
+    public int openMultipartUploads() {
+        return uploads.size();
+    }
+
+    private MultipartUpload upload(String uploadId) {
+        MultipartUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw S3Exception.builder().message("NoSuchUpload: " + uploadId).statusCode(404).build();
+        }
+        return upload;
+    }
+
+    private static byte[] read(RequestBody body) {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+        String bucketPrefix = request.bucket() + "/";
+        String prefix = request.prefix() == null ? "" : request.prefix();
+        String from = bucketPrefix + prefix;
+        String after = request.continuationToken() != null ? bucketPrefix + request.continuationToken() : null;
+        String delimiter = request.delimiter();
+        int maxKeys = request.maxKeys() != null ? Math.min(request.maxKeys(), MAX_KEYS) : MAX_KEYS;
+
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> commonPrefixes = new ArrayList<>();
+        String lastKey = null;
+        boolean truncated = false;
+        NavigableMap<String, StoredObject> tail = after != null && after.compareTo(from) >= 0
+                ? objects.tailMap(after, false)
+                : objects.tailMap(from, true);
+        for (Map.Entry<String, StoredObject> entry : tail.entrySet()) {
+            if (!entry.getKey().startsWith(from)) {
+                break;
+            }
+            String key = entry.getKey().substring(bucketPrefix.length());
+            // Keys below a delimiter are rolled up into one common prefix, returned once
+            int delimiterAt = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+            String commonPrefix = delimiterAt >= 0 ? key.substring(0, delimiterAt + delimiter.length()) : null;
+            if (commonPrefix != null && (commonPrefix.equals(lastKey) || commonPrefix.equals(request.continuationToken()))) {
+                continue;
+            }
+            if (contents.size() + commonPrefixes.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            if (commonPrefix != null) {
+                commonPrefixes.add(CommonPrefix.builder().prefix(commonPrefix).build());
+                lastKey = commonPrefix;
+                continue;
+            }
+            lastKey = key;
+            StoredObject object = entry.getValue();
+            contents.add(S3Object.builder()
+                    .key(lastKey)
+                    .lastModified(object.lastModified)
+                    .size((long) object.content.length)
+                    .eTag(object.eTag)
+                    .build());
+        }
+        return ListObjectsV2Response.builder()
+                .contents(contents)
+                .commonPrefixes(commonPrefixes)
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? lastKey : null)
+                .build();
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        objects.remove(request.bucket() + "/" + request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+        if (request.delete().objects().size() > MAX_KEYS) {
+            throw S3Exception.builder().message("MalformedXML: more than " + MAX_KEYS + " keys").statusCode(400).build();
+        }
+        List<DeletedObject> deleted = new ArrayList<>();
+        for (ObjectIdentifier object : request.delete().objects()) {
+            objects.remove(request.bucket() + "/" + object.key());
+            deleted.add(DeletedObject.builder().key(object.key()).build());
+        }
+        deleteObjectsCalls.incrementAndGet();
+        return DeleteObjectsResponse.builder()
+                .deleted(Boolean.TRUE.equals(request.delete().quiet()) ? List.of() : deleted)
+                .errors(List.of())
+                .build();
+    }
+
+    /**
+     * @return The number of DeleteObjects calls so far.
+     */
+    public int deleteObjectsCalls() {
+        return deleteObjectsCalls.get();
+    }
+
+    @Override
+    public String serviceName() {
+        return "s3";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static String md5Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
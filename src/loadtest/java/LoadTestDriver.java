@@ -0,0 +1,264 @@
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * Runs LambdaHandler.handleRequest end to end against MockApiServer and InMemoryS3Client, and reports
+ * throughput (SKUs/sec), p50/p99 latency per call type and peak heap for each run.
+ *
+ * All runs go through one LambdaHandler instance, as invocations of a warm container do. The first run
+ * is a full sync; later runs see the mock's next stock generation, so they exercise delta sync against
+ * the snapshot the previous run wrote. With loadtest.inputChange set, each later run is preceded by a
+ * change of the input file, delivered as an S3 event to S3InputEventHandler and reported on its own.
+ * With loadtest.reconcile, later runs are reconciliation runs (RUN_MODE=reconcile) against the items the
+ * first run wrote to the mock's Neto.
+ *
+ * Settings (system properties):
+ *   loadtest.skus      Number of SKUs in the input file (default 10000)
+ *   loadtest.runs      Number of handler invocations (default 2)
+ *   loadtest.verbose   Keep the handler's per-SKU logging (default false)
+ *   loadtest.timeoutMs The Lambda timeout each run gets (default 900000)
+ *   loadtest.inputChange SKUs removed from and added to the input file before each later run (default 0)
+ *   loadtest.reconcile Run the later runs with RUN_MODE=reconcile (default false)
+ *   fixture.products   Product templates for the mock (default products.json)
+ *   mock.*             Mock behaviour, see MockApiServer.Config
+ * Any handler setting (e.g. -DDROPSHIPZONE_RATE_LIMIT_PER_SEC=50, -DNETO_UPDATE_BATCH_SIZE=200) can be
+ * given as a system property too; it takes precedence over the environment (see Env). For example,
+ * -DRUN_MODE=coordinator -DSHARD_INVOKER=in-process -DSHARD_COUNT=4 runs sharded, with in-process workers.
+ */
+public class LoadTestDriver {
+
+    private static final String INPUT_BUCKET = "loadtest-input";
+    private static final String INPUT_KEY = "skus.csv";
+    private static final String OUTPUT_BUCKET = "loadtest-output";
+    private static final String OUTPUT_PREFIX = "stock/neto_stock";
+
+    /**
+     * Collects call latencies per call type.
+     */
+    static final class LatencyRecorder implements RequestExecutor.RequestListener {
+        private final Map<String, List<Long>> latencies = new TreeMap<>();
+        private final Map<String, Integer> failures = new TreeMap<>();
+
+        @Override
+        public synchronized void onComplete(HttpRequest request, int statusCode, long elapsedNanos) {
+            String type = callType(request);
+            latencies.computeIfAbsent(type, t -> new ArrayList<>()).add(elapsedNanos);
+            if (statusCode != 200 && statusCode != 304) {
+                failures.merge(type, 1, Integer::sum);
+            }
+        }
+
+        synchronized void report(PrintStream out) {
+            out.printf("  %-24s %8s %8s %10s %10s %10s%n", "call type", "calls", "failed", "p50 ms", "p99 ms", "max ms");
+            for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+                long[] sorted = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(sorted);
+                out.printf("  %-24s %8d %8d %10.1f %10.1f %10.1f%n", entry.getKey(), sorted.length,
+                        failures.getOrDefault(entry.getKey(), 0),
+                        millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)), millis(sorted[sorted.length - 1]));
+            }
+        }
+
+        private static String callType(HttpRequest request) {
+            String action = request.headers().firstValue("NETOAPI_ACTION").orElse(null);
+            if (action != null) {
+                return "neto " + action;
+            }
+            return "dropshipzone " + request.uri().getPath();
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Minimal Lambda context with a fixed timeout.
+     */
+    static final class LoadTestContext implements Context {
+        private final long deadlineNanos;
+        private final LambdaLogger logger;
+
+        LoadTestContext(PrintStream log, long timeoutMillis) {
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.logger = new LambdaLogger() {
+                @Override
+                public void log(String message) {
+                    log.println(message);
+                }
+
+                @Override
+                public void log(byte[] message) {
+                    log.println(new String(message, java.nio.charset.StandardCharsets.UTF_8));
+                }
+            };
+        }
+
+        @Override public String getAwsRequestId() { return "loadtest"; }
+        @Override public String getLogGroupName() { return "loadtest"; }
+        @Override public String getLogStreamName() { return "loadtest"; }
+        @Override public String getFunctionName() { return "neto-stock-update-loadtest"; }
+        @Override public String getFunctionVersion() { return "$LATEST"; }
+        @Override public String getInvokedFunctionArn() { return "arn:aws:lambda:local:000000000000:function:neto-stock-update-loadtest"; }
+        @Override public CognitoIdentity getIdentity() { return null; }
+        @Override public ClientContext getClientContext() { return null; }
+        @Override public int getMemoryLimitInMB() { return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024)); }
+        @Override public LambdaLogger getLogger() { return logger; }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int skuCount = Integer.getInteger("loadtest.skus", 10000);
+        int runs = Integer.getInteger("loadtest.runs", 2);
+        boolean verbose = Boolean.getBoolean("loadtest.verbose");
+        long timeoutMillis = Long.getLong("loadtest.timeoutMs", TimeUnit.MINUTES.toMillis(15));
+        int inputChange = Integer.getInteger("loadtest.inputChange", 0);
+        boolean reconcile = Boolean.getBoolean("loadtest.reconcile");
+        PrintStream console = System.out;
+
+        MockApiServer mock = new MockApiServer(MockApiServer.Config.fromSystemProperties(),
+                System.getProperty("fixture.products", "products.json"));
+        mock.start();
+        try {
+            // Different host names give the Dropshipzone and Neto endpoints their own request policies
+            setIfAbsent("DROPSHIPZONE_BASE_URL", "http://127.0.0.1:" + mock.getPort());
+            setIfAbsent("NETO_API_URL", "http://localhost:" + mock.getPort() + MockApiServer.NETO_PATH);
+            setIfAbsent("DROPSHIPZONE_EMAIL", "loadtest@example.com");
+            setIfAbsent("DROPSHIPZONE_PASSWORD", "loadtest");
+            setIfAbsent("NETOAPI_USERNAME", "loadtest");
+            setIfAbsent("NETOAPI_KEY", "loadtest");
+            setIfAbsent("S3_INPUT_BUCKET_NAME", INPUT_BUCKET);
+            setIfAbsent("S3_INPUT_FILE_KEY", INPUT_KEY);
+            setIfAbsent("S3_OUTPUT_BUCKET_NAME", OUTPUT_BUCKET);
+            setIfAbsent("S3_OUTPUT_FILE_PREFIX", OUTPUT_PREFIX);
+
+            InMemoryS3Client s3 = new InMemoryS3Client();
+            s3.putObject(Env.get("S3_INPUT_BUCKET_NAME"), Env.get("S3_INPUT_FILE_KEY"), skuCsv(0, skuCount));
+
+            LambdaHandler handler = new LambdaHandler(s3);
+            S3InputEventHandler eventHandler = new S3InputEventHandler(handler);
+            S3Event inputChangedEvent = objectCreatedEvent(Env.get("S3_INPUT_BUCKET_NAME"), Env.get("S3_INPUT_FILE_KEY"));
+
+            console.println("Load test: " + skuCount + " SKUs, " + runs + " run(s), mock on port " + mock.getPort() + " (" + mock.getConfig() + ")");
+            for (int run = 1; run <= runs; run++) {
+                if (run > 1 && inputChange > 0) {
+                    // The first SKUs leave the list and as many new ones join it
+                    s3.putObject(Env.get("S3_INPUT_BUCKET_NAME"), Env.get("S3_INPUT_FILE_KEY"), skuCsv((run - 1) * inputChange, skuCount));
+                    mock.resetStats();
+                    runOnce("Input change " + (run - 1), inputChange * 2, context -> eventHandler.handleRequest(inputChangedEvent, context),
+                            handler, s3, mock, verbose, timeoutMillis, console);
+                }
+                if (run > 1) {
+                    mock.nextGeneration();
+                    if (reconcile) {
+                        System.setProperty("RUN_MODE", "reconcile");
+                    }
+                }
+                mock.resetStats();
+                runOnce("Run " + run, skuCount, context -> handler.handleRequest(new ScheduledEvent(), context),
+                        handler, s3, mock, verbose, timeoutMillis, console);
+            }
+        } finally {
+            mock.stop();
+        }
+    }
+
+    private static void runOnce(String label, int skuCount, Consumer<Context> invocation, LambdaHandler handler, InMemoryS3Client s3,
+                                MockApiServer mock, boolean verbose, long timeoutMillis, PrintStream console) {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        PrintStream handlerLog = verbose ? console : quiet;
+        PrintStream originalErr = System.err;
+        Throwable failure = null;
+        long startNanos = System.nanoTime();
+        try {
+            if (!verbose) {
+                System.setOut(quiet);
+                System.setErr(quiet);
+            }
+            handler.getRequestExecutor().addRequestListener(recorder);
+            invocation.accept(new LoadTestContext(handlerLog, timeoutMillis));
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            handler.getRequestExecutor().removeRequestListener(recorder);
+            System.setOut(console);
+            System.setErr(originalErr);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        console.printf("%n%s: %s in %.2f s, %.0f SKUs/sec, peak heap %.1f MB%n", label,
+                failure == null ? "completed" : "FAILED (" + failure.getMessage() + ")", seconds, skuCount / seconds, peakHeap / (1024.0 * 1024.0));
+        recorder.report(console);
+        for (Map.Entry<String, MockApiServer.EndpointStats> entry : mock.getStats().entrySet()) {
+            console.println("  mock " + entry.getKey() + ": " + entry.getValue());
+        }
+        console.println("  output objects: " + s3.sizes(Env.get("S3_OUTPUT_BUCKET_NAME"), Env.get("S3_OUTPUT_FILE_PREFIX"))
+                + (s3.openMultipartUploads() > 0 ? ", " + s3.openMultipartUploads() + " multipart upload(s) left open" : ""));
+    }
+
+    private static String skuCsv(int first, int skuCount) {
+        StringBuilder csv = new StringBuilder(skuCount * 16);
+        csv.append("SKU\n");
+        for (int i = first; i < first + skuCount; i++) {
+            csv.append("LT-").append(String.format("%07d", i)).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static S3Event objectCreatedEvent(String bucketName, String key) {
+        S3EventNotification.S3Entity entity = new S3EventNotification.S3Entity("loadtest",
+                new S3EventNotification.S3BucketEntity(bucketName, null, "arn:aws:s3:::" + bucketName),
+                new S3EventNotification.S3ObjectEntity(key, 0L, null, null, null), "1.0");
+        return new S3Event(List.of(new S3EventNotification.S3EventNotificationRecord("local", "ObjectCreated:Put", "aws:s3",
+                null, "2.1", null, null, entity, null)));
+    }
+
+    private static void setIfAbsent(String name, String value) {
+        if (Env.get(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Local stand-in for the Dropshipzone and Neto APIs, for load tests.
+ *
+ * Serves POST /auth, GET /v2/products (the `skus` filter with page_size/page_number pagination, an
+ * ETag per page and 304 Not Modified for a matching If-None-Match) and the Neto endpoint at
+ * POST /do/WS/NetoAPI (NETOAPI_ACTION: UpdateItem or GetItem). Every requested SKU exists:
+ * its product is one of the products.json items with the SKU swapped in, and its stock quantity is
+ * derived from the SKU, so results are repeatable. Calling {@link #nextGeneration()} changes the
+ * quantity of a configurable share of SKUs, as a new day's stock would.
+ *
+ * Neto keeps the quantity and DefaultPrice of every item UpdateItem has set, and GetItem pages
+ * through them (Filter Page/Limit). {@link #nextGeneration()} also makes a configurable share of
+ * those items drift, as orders and manual edits in Neto would.
+ *
+ * Latency, error rate and throttling are configured through {@link Config}.
+ */
+public class MockApiServer {
+
+    public static final String NETO_PATH = "/do/WS/NetoAPI";
+
+    /**
+     * Behaviour of the mock. Every field can be set with a system property of the same name
+     * prefixed by "mock." (e.g. -Dmock.latencyMs=80).
+     */
+    public static final class Config {
+        /** Base latency added to every response. */
+        public long latencyMs = 50;
+        /** Random extra latency, uniform in [0, latencyJitterMs]. */
+        public long latencyJitterMs = 50;
+        /** Share of requests answered with a 500. */
+        public double errorRate = 0.0;
+        /** Requests per second per endpoint above which requests are answered with 429 + Retry-After (0 = no limit). */
+        public int throttleRps = 0;
+        /** Share of items in an UpdateItem request that Neto reports as failed. */
+        public double netoItemFailureRate = 0.0;
+        /** Share of SKUs not returned by /v2/products. */
+        public double missingSkuRate = 0.0;
+        /** Share of SKUs whose quantity changes with each generation. */
+        public double changeRate = 0.05;
+        /** Lifetime of the tokens issued by /auth; requests with an expired token are answered 401. */
+        public long tokenLifetimeSeconds = 8 * 3600;
+        /** Share of Neto items whose quantity or DefaultPrice drifts with each generation. */
+        public double netoDriftRate = 0.0;
+
+        public static Config fromSystemProperties() {
+            Config config = new Config();
+            config.latencyMs = Long.getLong("mock.latencyMs", config.latencyMs);
+            config.latencyJitterMs = Long.getLong("mock.latencyJitterMs", config.latencyJitterMs);
+            config.errorRate = doubleProperty("mock.errorRate", config.errorRate);
+            config.throttleRps = Integer.getInteger("mock.throttleRps", config.throttleRps);
+            config.netoItemFailureRate = doubleProperty("mock.netoItemFailureRate", config.netoItemFailureRate);
+            config.missingSkuRate = doubleProperty("mock.missingSkuRate", config.missingSkuRate);
+            config.changeRate = doubleProperty("mock.changeRate", config.changeRate);
+            config.tokenLifetimeSeconds = Long.getLong("mock.tokenLifetimeSeconds", config.tokenLifetimeSeconds);
+            config.netoDriftRate = doubleProperty("mock.netoDriftRate", config.netoDriftRate);
+            return config;
+        }
+
+        private static double doubleProperty(String name, double defaultValue) {
+            String value = System.getProperty(name);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latencyMs + "+" + latencyJitterMs + "ms, errorRate=" + errorRate + ", throttleRps=" + throttleRps
+                    + ", netoItemFailureRate=" + netoItemFailureRate + ", missingSkuRate=" + missingSkuRate + ", changeRate=" + changeRate + ", tokenLifetime=" + tokenLifetimeSeconds + "s, netoDriftRate=" + netoDriftRate;
+        }
+    }
+
+    /**
+     * Per-endpoint request counters.
+     */
+    public static final class EndpointStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong injectedErrors = new AtomicLong();
+        final AtomicLong throttled = new AtomicLong();
+        final AtomicLong notModified = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        // Fixed one-second window used for throttling
+        private long windowSecond;
+        private int windowCount;
+
+        synchronized boolean overLimit(int limitPerSecond) {
+            long second = System.nanoTime() / 1_000_000_000L;
+            if (second != windowSecond) {
+                windowSecond = second;
+                windowCount = 0;
+            }
+            return ++windowCount > limitPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests.get() + ", injected 500s=" + injectedErrors.get() + ", throttled=" + throttled.get() + ", 304s=" + notModified.get() + ", bytes sent=" + bytesSent.get();
+        }
+    }
+
+    private final Config config;
+    private final List<String> productTemplates;
+    private final Map<String, EndpointStats> stats = new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile int generation;
+    // Neto's items: SKU -> {warehouse quantity, DefaultPrice in cents}
+    private final Map<String, long[]> netoItems = new java.util.concurrent.ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param config The mock's behaviour.
+     * @param productsFixture The products.json page whose items are used as product templates.
+     */
+    public MockApiServer(Config config, String productsFixture) throws IOException {
+        this.config = config;
+        this.productTemplates = loadTemplates(productsFixture);
+        for (String endpoint : new String[]{"auth", "products", "neto"}) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    private static List<String> loadTemplates(String productsFixture) throws IOException {
+        JSONArray result = new JSONObject(new String(Files.readAllBytes(Paths.get(productsFixture)), StandardCharsets.UTF_8))
+                .getJSONArray("result");
+        List<String> templates = new ArrayList<>();
+        for (int i = 0; i < result.length(); i++) {
+            JSONObject product = result.getJSONObject(i);
+            product.put("sku", "%SKU%");
+            product.put("stock_qty", "%QTY%");
+            templates.add(product.toString().replace("\"%QTY%\"", "%QTY%"));
+        }
+        return templates;
+    }
+
+    /**
+     * Starts the server on an ephemeral port on all local addresses.
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(0), 256);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/auth", exchange -> handle(exchange, "auth", this::auth));
+        server.createContext("/v2/products", exchange -> handle(exchange, "products", this::products));
+        server.createContext(NETO_PATH, exchange -> handle(exchange, "neto", this::neto));
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Moves to the next day's stock: SKUs in the changing share get new quantities.
+     */
+    public void nextGeneration() {
+        generation++;
+        for (Map.Entry<String, long[]> item : netoItems.entrySet()) {
+            if (config.netoDriftRate > 0 && ThreadLocalRandom.current().nextDouble() < config.netoDriftRate) {
+                long[] values = item.getValue();
+                if (ThreadLocalRandom.current().nextBoolean()) {
+                    values[0] = Math.max(0, values[0] - 1 - ThreadLocalRandom.current().nextInt(3)); // Orders
+                } else {
+                    values[1] += 100; // A manual price edit
+                }
+            }
+        }
+    }
+
+    public Map<String, EndpointStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Starts new counters, e.g. before the next run.
+     */
+    public void resetStats() {
+        for (String endpoint : stats.keySet()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        void serve(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String endpoint, Endpoint handler) throws IOException {
+        EndpointStats endpointStats = stats.get(endpoint);
+        endpointStats.requests.incrementAndGet();
+        try {
+            long delay = config.latencyMs + (config.latencyJitterMs > 0 ? ThreadLocalRandom.current().nextLong(config.latencyJitterMs + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (config.throttleRps > 0 && endpointStats.overLimit(config.throttleRps)) {
+                endpointStats.throttled.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 429, "{\"message\":\"Too Many Requests\"}");
+            } else if (config.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < config.errorRate) {
+                endpointStats.injectedErrors.incrementAndGet();
+                respond(exchange, 500, "{\"message\":\"Injected failure\"}");
+            } else {
+                handler.serve(exchange);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            respond(exchange, 500, "{\"message\":\"" + e.getClass().getSimpleName() + "\"}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void auth(HttpExchange exchange) throws IOException {
+        readBody(exchange);
+        long now = System.currentTimeMillis() / 1000;
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ("{\"iat\":" + now + ",\"exp\":" + (now + config.tokenLifetimeSeconds) + "}").getBytes(StandardCharsets.UTF_8));
+        respond(exchange, 200, "{\"token\":\"eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9." + payload + ".bW9jaw\"}");
+    }
+
+    // A "jwt <token>" header whose token was issued by auth and has not expired
+    private static boolean validToken(String authorization) {
+        if (authorization == null || !authorization.startsWith("jwt ")) {
+            return false;
+        }
+        String[] parts = authorization.substring(4).split("\\.");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            JSONObject payload = new JSONObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+            return payload.optLong("exp", 0) > System.currentTimeMillis() / 1000;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void products(HttpExchange exchange) throws IOException {
+        if (!validToken(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            respond(exchange, 401, "{\"message\":\"Unauthorized\"}");
+            return;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        List<String> found = new ArrayList<>();
+        for (String sku : query.getOrDefault("skus", "").split(",")) {
+            if (!sku.isEmpty() && !missing(sku)) {
+                found.add(sku);
+            }
+        }
+        int pageSize = Math.max(1, Integer.parseInt(query.getOrDefault("page_size", "40")));
+        int pageNumber = Math.max(1, Integer.parseInt(query.getOrDefault("page_number", "1")));
+        int totalPages = Math.max(1, (found.size() + pageSize - 1) / pageSize);
+
+        StringBuilder body = new StringBuilder(8192);
+        body.append("{\"result\":[");
+        int from = Math.min(found.size(), (pageNumber - 1) * pageSize);
+        int to = Math.min(found.size(), from + pageSize);
+        for (int i = from; i < to; i++) {
+            String sku = found.get(i);
+            if (i > from) {
+                body.append(',');
+            }
+            body.append(productTemplates.get(Math.floorMod(sku.hashCode(), productTemplates.size()))
+                    .replace("\"%SKU%\"", JSONObject.quote(sku))
+                    .replace("%QTY%", String.valueOf(quantity(sku))));
+        }
+        body.append("],\"total\":").append(found.size())
+                .append(",\"total_pages\":").append(totalPages)
+                .append(",\"current_page\":").append(pageNumber)
+                .append(",\"page_size\":").append(pageSize).append('}');
+
+        // The page's ETag changes with its content, as a real cache validator would
+        String content = body.toString();
+        String eTag = "\"" + Integer.toHexString(content.hashCode()) + Integer.toHexString(content.length()) + "\"";
+        exchange.getResponseHeaders().set("ETag", eTag);
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            stats.get("products").notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        respond(exchange, "products", 200, content);
+    }
+
+    /**
+     * Sends a JSON response, gzipped when the request accepts it, counting the bytes sent.
+     */
+    private void respond(HttpExchange exchange, String endpoint, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(bytes);
+            }
+            bytes = gzipped.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        stats.get(endpoint).bytesSent.addAndGet(bytes.length);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void neto(HttpExchange exchange) throws IOException {
+        String action = exchange.getRequestHeaders().getFirst("NETOAPI_ACTION");
+        if ("GetItem".equals(action)) {
+            getItem(exchange);
+            return;
+        }
+        if (!"UpdateItem".equals(action)) {
+            respond(exchange, 400, "{\"Ack\":\"Error\",\"Messages\":{\"Error\":{\"Message\":\"Unsupported action " + action + "\"}}}");
+            return;
+        }
+        JSONArray items = new JSONObject(readBody(exchange)).optJSONArray("Item");
+        JSONArray updated = new JSONArray();
+        int failed = 0;
+        for (int i = 0; items != null && i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            String sku = item.optString("SKU");
+            if (config.netoItemFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < config.netoItemFailureRate) {
+                failed++;
+            } else {
+                long[] values = netoItems.computeIfAbsent(sku, s -> new long[2]);
+                JSONObject warehouseQuantity = item.optJSONObject("WarehouseQuantity");
+                if (warehouseQuantity != null) {
+                    values[0] = Long.parseLong(warehouseQuantity.optString("Quantity", "0"));
+                }
+                if (item.has("DefaultPrice")) {
+                    values[1] = SkuRecordStore.parseCents(item.getString("DefaultPrice"));
+                }
+                updated.put(new JSONObject().put("SKU", sku));
+            }
+        }
+        JSONObject response = new JSONObject()
+                .put("Item", updated)
+                .put("Ack", failed == 0 ? "Success" : "Warning");
+        respond(exchange, "neto", 200, response.toString());
+    }
+
+    /**
+     * Answers a GetItem page of the items UpdateItem has set, in a fixed order that is not sorted by SKU.
+     */
+    private void getItem(HttpExchange exchange) throws IOException {
+        JSONObject filter = new JSONObject(readBody(exchange)).optJSONObject("Filter");
+        int page = filter != null ? filter.optInt("Page", 0) : 0;
+        int limit = filter != null ? filter.optInt("Limit", 100) : 100;
+        List<String> skus = new ArrayList<>(netoItems.keySet());
+        skus.sort(java.util.Comparator.comparingDouble(sku -> unit(sku, 0x27D4EB2FL)));
+        JSONArray items = new JSONArray();
+        for (int i = page * limit; i < Math.min(skus.size(), (page + 1) * limit); i++) {
+            long[] values = netoItems.get(skus.get(i));
+            items.put(new JSONObject()
+                    .put("SKU", skus.get(i))
+                    .put("DefaultPrice", SkuRecordStore.formatCents(values[1]))
+                    .put("WarehouseQuantity", new JSONArray()
+                            .put(new JSONObject().put("WarehouseID", "1").put("Quantity", "0"))
+                            .put(new JSONObject().put("WarehouseID", "2").put("Quantity", String.valueOf(values[0])))));
+        }
+        respond(exchange, "neto", 200, new JSONObject().put("Item", items).put("Ack", "Success").toString());
+    }
+
+    private boolean missing(String sku) {
+        return config.missingSkuRate > 0 && unit(sku, 0x9E3779B9L) < config.missingSkuRate;
+    }
+
+    /**
+     * Deterministic stock quantity for a SKU; SKUs in the changing share move with the generation.
+     */
+    private int quantity(String sku) {
+        long seed = unit(sku, 0x85EBCA6BL) < config.changeRate ? generation : 0;
+        return (int) Math.floor(unit(sku, 0xC2B2AE35L + seed) * 300);
+    }
+
+    /**
+     * @return A value in [0, 1) derived from the SKU and a salt.
+     */
+    private static double unit(String sku, long salt) {
+        long h = sku.hashCode() * 0x9E3779B97F4A7C15L + salt;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetUrlRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Warms the code paths of a run without touching the network, so their classes are loaded and
+ * initialised ahead of the first invocation: during the init phase (COLD_START_MODE=prime), or just
+ * before a SnapStart/CRaC checkpoint so the snapshot already holds them.
+ *
+ * Covers the S3 client (request marshalling and endpoint resolution), JSSE (trust store, cipher
+ * suites and a ClientHello), java.net.http request/response builders, org.json, the streaming
+ * product page parser, pricing, and the CSV and columnar snapshot paths. Every step is best
+ * effort: a failure is logged and the next step runs.
+ */
+final class ColdStartPrimer {
+
+    // One Dropshipzone product in the shape ProductPageParser reads
+    private static final String SAMPLE_PRODUCTS_PAGE = "{\"result\":[{\"sku\":\"PRIME-1\",\"stock_qty\":\"12\",\"cost\":\"10.50\","
+            + "\"price\":\"14.20\",\"brand\":\"Prime\",\"Category\":\"Home > Prime\"}],\"total\":1,\"total_pages\":1,\"current_page\":1}";
+    private static final String SAMPLE_NETO_RESPONSE = "{\"Item\":[{\"SKU\":\"PRIME-1\"}],\"Ack\":\"Success\"}";
+
+    private ColdStartPrimer() {
+    }
+
+    /**
+     * Runs every priming step.
+     *
+     * @param s3Client The S3 client the handler will use.
+     * @return The time taken, in milliseconds.
+     */
+    static long prime(S3Client s3Client) {
+        long startNanos = System.nanoTime();
+        step("S3 client", () -> primeS3(s3Client));
+        step("TLS", ColdStartPrimer::primeTls);
+        step("HTTP", ColdStartPrimer::primeHttp);
+        step("JSON and pricing", ColdStartPrimer::primeParsing);
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        Log.info("Cold-start priming completed in " + elapsedMillis + " ms.");
+        return elapsedMillis;
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static void step(String name, Step step) {
+        long startNanos = System.nanoTime();
+        try {
+            step.run();
+            Log.info("Primed " + name + " in " + (System.nanoTime() - startNanos) / 1_000_000 + " ms.");
+        } catch (Exception | LinkageError e) {
+            Log.warn("Warning: Priming " + name + " failed (continuing without it): " + e);
+        }
+    }
+
+    private static void primeS3(S3Client s3Client) {
+        String bucket = Env.get("S3_INPUT_BUCKET_NAME", "prime-bucket");
+        GetObjectRequest.builder().bucket(bucket).key("prime.csv").build();
+        ListObjectsV2Request.builder().bucket(bucket).prefix("prime").build();
+        PutObjectRequest.builder().bucket(bucket).key("prime.csv").contentType("text/csv").build();
+        RequestBody.fromString("SKU\n");
+        CreateMultipartUploadRequest.builder().bucket(bucket).key("prime.csv").contentType("text/csv").build();
+        UploadPartRequest.builder().bucket(bucket).key("prime.csv").uploadId("prime").partNumber(1).contentLength(1L).build();
+        CompletedPart.builder().partNumber(1).eTag("prime").build();
+        RequestBody.fromInputStream(new ByteArrayInputStream(new byte[1]), 1);
+        // Resolving an object URL runs the endpoint rules without sending anything
+        s3Client.utilities().getUrl(GetUrlRequest.builder().bucket(bucket).key("prime.csv").build());
+    }
+
+    /**
+     * Loads the default trust store and drives a client handshake as far as producing the ClientHello
+     * (key share generation included), which is the bulk of JSSE's first-connection cost.
+     */
+    private static void primeTls() throws Exception {
+        SSLEngine engine = SSLContext.getDefault().createSSLEngine(URI.create(DropshipzoneAPIClient.DROPSHIPZONE_BASE_URL).getHost(), 443);
+        engine.setUseClientMode(true);
+        engine.beginHandshake();
+        ByteBuffer clientHello = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        engine.wrap(ByteBuffer.allocate(0), clientHello);
+        engine.closeOutbound();
+    }
+
+    private static void primeHttp() {
+        HttpRequest.newBuilder()
+                .uri(URI.create(DropshipzoneAPIClient.DROPSHIPZONE_BASE_URL + "/v2/products?skus=PRIME-1&page_size=1&page_number=1"))
+                .header("Authorization", "jwt prime")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .timeout(Duration.ofMillis(DropshipzoneAPIClient.READ_TIMEOUT_MS))
+                .build();
+        HttpResponse.BodyHandlers.ofInputStream();
+        HttpResponse.BodyHandlers.ofString();
+    }
+
+    private static void primeParsing() throws Exception {
+        DropshipzoneAPIClient.extractToken("{\"token\":\"prime\"}");
+        DropshipzoneTokenManager.expiresAtMillis("e30.e30.c2ln");
+        new JSONObject(SAMPLE_NETO_RESPONSE).optJSONArray("Item");
+        new JSONObject().put("Item", new JSONArray().put(new JSONObject().put("SKU", "PRIME-1"))).toString();
+
+        PricingEngine pricing;
+        try {
+            pricing = PricingEngine.compile(Env.get("PRICE_MULTIPLIER", "1.4"), Env.get("PRICING_RULES"));
+        } catch (IllegalArgumentException e) {
+            // The handler reports invalid pricing settings when it runs
+            pricing = PricingEngine.compile("1.4");
+        }
+        SkuRecordStore skuRecords = new SkuRecordStore();
+        PricingEngine pagePricing = pricing;
+        ProductPageParser.parse(new ByteArrayInputStream(SAMPLE_PRODUCTS_PAGE.getBytes(StandardCharsets.UTF_8)),
+                product -> DropshipzoneAPIClient.processAndAddSkuData(product, skuRecords, pagePricing));
+
+        String csv = LambdaHandler.generateCsvContent(skuRecords);
+        try (CsvStreamWriter writer = new CsvStreamWriter(new GZIPOutputStream(new ByteArrayOutputStream()))) {
+            writer.writeHeader();
+            writer.writeRecords(skuRecords);
+        }
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        ColumnarSnapshot.write(skuRecords, snapshot);
+        ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(snapshot.toByteArray()));
+        SnapshotDiff diff = new SnapshotDiff(SnapshotDiff.parseSnapshotCsv(new BufferedReader(new StringReader(csv))));
+        diff.needsUpdate(skuRecords, 0);
+        DropshipzoneAPIClient.parseSkuCsv(new ByteArrayInputStream("SKU\nPRIME-1\n".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,614 @@
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Compact binary form of a run's output snapshot (.dsnap), written next to the output CSV.
+ *
+ * Records are sorted by SKU and cut into blocks of {@link #BLOCK_RECORDS}. Each block is deflated on
+ * its own and holds its records column by column: front-coded SKUs (bytes shared with the previous
+ * SKU, then the rest), then quantities, costs and selling prices as zigzag varint deltas from the
+ * previous record, then the positions of the SKUs Dropshipzone did not return (count, then varint
+ * deltas; blocks written before this column end after the prices and read as all found). A footer lists every block's offset, length, CRC and first SKU, and a fixed-size
+ * trailer at the very end points to the footer:
+ *
+ *   "DSNP" version | block 0 | block 1 | ... | footer | footer offset (8) footer length (4) "DSNP"
+ *
+ * Reading a whole snapshot is one GET. Looking up one SKU reads the tail (trailer and footer,
+ * usually one ranged GET), then the single block that can hold the SKU.
+ */
+public final class ColumnarSnapshot {
+
+    public static final String FILE_SUFFIX = ".dsnap";
+
+    static final int BLOCK_RECORDS = 4096;
+
+    private static final int MAGIC = 0x44534E50; // "DSNP"
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = 16;
+    // Read with the trailer in one request; holds the footer of snapshots up to a few million SKUs
+    private static final int TAIL_READ_SIZE = 64 * 1024;
+
+    private ColumnarSnapshot() {
+    }
+
+    /**
+     * One SKU's values in a snapshot.
+     */
+    public static final class Entry {
+        public final String sku;
+        public final int quantity;
+        public final long costCents;
+        public final long priceCents;
+        public final boolean notFound;
+
+        Entry(String sku, int quantity, long costCents, long priceCents, boolean notFound) {
+            this.sku = sku;
+            this.quantity = quantity;
+            this.costCents = costCents;
+            this.priceCents = priceCents;
+            this.notFound = notFound;
+        }
+
+        @Override
+        public String toString() {
+            return sku + " qty=" + quantity + " cost=" + SkuRecordStore.formatCents(costCents) + " price=" + SkuRecordStore.formatCents(priceCents)
+                    + (notFound ? " (not found)" : "");
+        }
+    }
+
+    /**
+     * Random access to the bytes of a stored snapshot.
+     */
+    public interface RangeSource {
+        /**
+         * @return length bytes starting at offset.
+         */
+        byte[] read(long offset, int length) throws IOException;
+
+        /**
+         * @return The last length bytes, or the whole snapshot if it is shorter.
+         */
+        byte[] readTail(int length) throws IOException;
+
+        /**
+         * @return The whole snapshot.
+         */
+        byte[] readAll() throws IOException;
+
+        /**
+         * Ranged GETs on an S3 object.
+         */
+        static RangeSource ofS3(S3Client s3Client, String bucketName, String key) {
+            return new RangeSource() {
+                @Override
+                public byte[] read(long offset, int length) throws IOException {
+                    return get("bytes=" + offset + "-" + (offset + length - 1));
+                }
+
+                @Override
+                public byte[] readTail(int length) throws IOException {
+                    return get("bytes=-" + length);
+                }
+
+                @Override
+                public byte[] readAll() throws IOException {
+                    return get(null);
+                }
+
+                private byte[] get(String range) throws IOException {
+                    try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(GetObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .range(range)
+                            .build())) {
+                        return s3Object.readAllBytes();
+                    }
+                }
+            };
+        }
+
+        /**
+         * A local snapshot file, memory-mapped.
+         */
+        static RangeSource ofFile(Path file) throws IOException {
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            return ofBuffer(mapped);
+        }
+
+        static RangeSource ofBytes(byte[] snapshot) {
+            return ofBuffer(ByteBuffer.wrap(snapshot));
+        }
+
+        private static RangeSource ofBuffer(ByteBuffer buffer) {
+            return new RangeSource() {
+                @Override
+                public byte[] read(long offset, int length) {
+                    byte[] bytes = new byte[length];
+                    buffer.get((int) offset, bytes);
+                    return bytes;
+                }
+
+                @Override
+                public byte[] readTail(int length) {
+                    int size = buffer.capacity();
+                    return read(Math.max(0, size - length), Math.min(size, length));
+                }
+
+                @Override
+                public byte[] readAll() {
+                    return read(0, buffer.capacity());
+                }
+            };
+        }
+    }
+
+    // ----- Writing -----
+
+    /**
+     * Writes the included records of a store as a snapshot.
+     *
+     * @return The number of bytes written.
+     */
+    public static long write(SkuRecordStore skuRecords, OutputStream out) throws IOException {
+        int size = skuRecords.size();
+        List<Integer> order = new ArrayList<>(size);
+        for (int record = 0; record < size; record++) {
+            if (skuRecords.isIncluded(record)) {
+                order.add(record);
+            }
+        }
+        order.sort((a, b) -> skuRecords.sku(a).compareTo(skuRecords.sku(b)));
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+
+        ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+        DataOutputStream footer = new DataOutputStream(footerBytes);
+        int blockCount = (order.size() + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        footer.writeInt(order.size());
+        footer.writeInt(blockCount);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int from = 0; from < order.size(); from += BLOCK_RECORDS) {
+                List<Integer> block = order.subList(from, Math.min(order.size(), from + BLOCK_RECORDS));
+                byte[] compressed = deflate(encodeBlock(skuRecords, block), deflater);
+                CRC32 crc = new CRC32();
+                crc.update(compressed);
+
+                footer.writeLong(data.size());
+                footer.writeInt(compressed.length);
+                footer.writeInt(block.size());
+                footer.writeInt((int) crc.getValue());
+                footer.writeUTF(skuRecords.sku(block.get(0)));
+                data.write(compressed);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long footerOffset = data.size();
+        footer.flush();
+        footerBytes.writeTo(data);
+        data.writeLong(footerOffset);
+        data.writeInt(footerBytes.size());
+        data.writeInt(MAGIC);
+        data.flush();
+        // DataOutputStream.size() stops at Integer.MAX_VALUE, far above any snapshot
+        return data.size();
+    }
+
+    private static byte[] encodeBlock(SkuRecordStore skuRecords, List<Integer> block) {
+        VarIntBuffer out = new VarIntBuffer(block.size() * 24);
+        out.writeVarLong(block.size());
+        byte[] previous = new byte[0];
+        for (int record : block) {
+            byte[] sku = skuRecords.sku(record).getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int max = Math.min(previous.length, sku.length);
+            while (shared < max && previous[shared] == sku[shared]) {
+                shared++;
+            }
+            out.writeVarLong(shared);
+            out.writeVarLong(sku.length - shared);
+            out.write(sku, shared, sku.length - shared);
+            previous = sku;
+        }
+        long last = 0;
+        for (int record : block) {
+            out.writeZigZag(skuRecords.quantity(record) - last);
+            last = skuRecords.quantity(record);
+        }
+        last = 0;
+        for (int record : block) {
+            out.writeZigZag(skuRecords.costCents(record) - last);
+            last = skuRecords.costCents(record);
+        }
+        last = 0;
+        for (int record : block) {
+            out.writeZigZag(skuRecords.priceCents(record) - last);
+            last = skuRecords.priceCents(record);
+        }
+        List<Integer> notFound = new ArrayList<>();
+        for (int i = 0; i < block.size(); i++) {
+            if (skuRecords.isNotFound(block.get(i))) {
+                notFound.add(i);
+            }
+        }
+        out.writeVarLong(notFound.size());
+        int lastPosition = 0;
+        for (int position : notFound) {
+            out.writeVarLong(position - lastPosition);
+            lastPosition = position;
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 3 + 64);
+        byte[] chunk = new byte[16 * 1024];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+
+    // ----- Reading -----
+
+    /**
+     * Reads a whole snapshot into a record store (in SKU order).
+     *
+     * @throws IOException If the snapshot cannot be read or is corrupt.
+     */
+    public static SkuRecordStore readAll(RangeSource source) throws IOException {
+        Reader reader = new Reader(source.readAll());
+        SkuRecordStore skuRecords = new SkuRecordStore(reader.recordCount);
+        try {
+            for (Iterator<Entry> entries = reader.entries(); entries.hasNext(); ) {
+                Entry entry = entries.next();
+                if (entry.notFound) {
+                    skuRecords.putNotFound(entry.sku, entry.costCents, entry.priceCents);
+                } else {
+                    skuRecords.put(entry.sku, entry.quantity, entry.costCents, entry.priceCents);
+                }
+            }
+        } catch (IllegalStateException e) {
+            // The iterator wraps a corrupt block's IOException
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        return skuRecords;
+    }
+
+    /**
+     * Looks up one SKU, reading only the footer and the block that can hold it.
+     *
+     * @return The SKU's entry, or null if the snapshot does not have it.
+     * @throws IOException If the snapshot cannot be read or is corrupt.
+     */
+    public static Entry lookup(RangeSource source, String sku) throws IOException {
+        Footer footer = Footer.read(source);
+        int block = footer.blockFor(sku);
+        if (block < 0) {
+            return null;
+        }
+        byte[] compressed = source.read(footer.offsets[block], footer.lengths[block]);
+        for (Entry entry : decodeBlock(compressed, footer.crcs[block])) {
+            int order = entry.sku.compareTo(sku);
+            if (order == 0) {
+                return entry;
+            }
+            if (order > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A snapshot held in memory, read block by block in SKU order.
+     */
+    public static final class Reader {
+        private final byte[] snapshot;
+        private final Footer footer;
+        final int recordCount;
+
+        /**
+         * @param snapshot The whole snapshot.
+         * @throws IOException If the snapshot is corrupt.
+         */
+        public Reader(byte[] snapshot) throws IOException {
+            this.snapshot = snapshot;
+            if (snapshot.length < 8 + TRAILER_SIZE || ByteBuffer.wrap(snapshot).getInt(0) != MAGIC) {
+                throw new IOException("Not a columnar snapshot.");
+            }
+            if (ByteBuffer.wrap(snapshot).getInt(4) != VERSION) {
+                throw new IOException("Unsupported columnar snapshot version " + ByteBuffer.wrap(snapshot).getInt(4) + ".");
+            }
+            this.footer = Footer.parse(snapshot, 0, snapshot.length);
+            this.recordCount = footer.recordCount;
+        }
+
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return The entries in SKU order; blocks are decoded as the iteration reaches them.
+         */
+        public Iterator<Entry> entries() {
+            return new Iterator<>() {
+                private int block = -1;
+                private List<Entry> current = List.of();
+                private int position;
+
+                @Override
+                public boolean hasNext() {
+                    while (position == current.size()) {
+                        if (++block >= footer.blockCount) {
+                            return false;
+                        }
+                        try {
+                            byte[] compressed = Arrays.copyOfRange(snapshot, (int) footer.offsets[block], (int) footer.offsets[block] + footer.lengths[block]);
+                            current = decodeBlock(compressed, footer.crcs[block]);
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Corrupt snapshot block " + block + ": " + e.getMessage(), e);
+                        }
+                        position = 0;
+                    }
+                    return true;
+                }
+
+                @Override
+                public Entry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.get(position++);
+                }
+            };
+        }
+    }
+
+    private static final class Footer {
+        int recordCount;
+        int blockCount;
+        long[] offsets;
+        int[] lengths;
+        int[] crcs;
+        String[] firstSkus;
+
+        /**
+         * Reads the footer from the end of a stored snapshot.
+         */
+        static Footer read(RangeSource source) throws IOException {
+            byte[] tail = source.readTail(TAIL_READ_SIZE);
+            if (tail.length < TRAILER_SIZE) {
+                throw new IOException("Snapshot too short.");
+            }
+            ByteBuffer trailer = ByteBuffer.wrap(tail, tail.length - TRAILER_SIZE, TRAILER_SIZE);
+            long footerOffset = trailer.getLong();
+            int footerLength = trailer.getInt();
+            if (trailer.getInt() != MAGIC || footerLength < 0) {
+                throw new IOException("Not a columnar snapshot (bad trailer).");
+            }
+            if (footerLength + TRAILER_SIZE > tail.length) {
+                // A footer larger than the tail read: fetch it on its own
+                return parseFooter(source.read(footerOffset, footerLength), 0, footerLength);
+            }
+            return parse(tail, 0, tail.length);
+        }
+
+        /**
+         * Parses the footer from bytes that end with the trailer.
+         */
+        static Footer parse(byte[] bytes, int from, int to) throws IOException {
+            ByteBuffer trailer = ByteBuffer.wrap(bytes, to - TRAILER_SIZE, TRAILER_SIZE);
+            trailer.getLong(); // footer offset
+            int footerLength = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("Not a columnar snapshot (bad trailer).");
+            }
+            int footerStart = to - TRAILER_SIZE - footerLength;
+            if (footerStart < from) {
+                throw new IOException("Snapshot footer out of range.");
+            }
+            return parseFooter(bytes, footerStart, footerLength);
+        }
+
+        private static Footer parseFooter(byte[] bytes, int offset, int length) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length));
+            Footer footer = new Footer();
+            footer.recordCount = in.readInt();
+            footer.blockCount = in.readInt();
+            footer.offsets = new long[footer.blockCount];
+            footer.lengths = new int[footer.blockCount];
+            footer.crcs = new int[footer.blockCount];
+            footer.firstSkus = new String[footer.blockCount];
+            for (int block = 0; block < footer.blockCount; block++) {
+                footer.offsets[block] = in.readLong();
+                footer.lengths[block] = in.readInt();
+                in.readInt(); // records in the block
+                footer.crcs[block] = in.readInt();
+                footer.firstSkus[block] = in.readUTF();
+            }
+            return footer;
+        }
+
+        /**
+         * @return The only block that can hold the SKU, or -1 if it sorts before the first.
+         */
+        int blockFor(String sku) {
+            int found = Arrays.binarySearch(firstSkus, sku);
+            return found >= 0 ? found : -found - 2;
+        }
+    }
+
+    private static List<Entry> decodeBlock(byte[] compressed, int expectedCrc) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Snapshot block checksum mismatch.");
+        }
+        byte[] raw = inflate(compressed);
+        VarIntReader in = new VarIntReader(raw);
+        int count = (int) in.readVarLong();
+        String[] skus = new String[count];
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            int shared = (int) in.readVarLong();
+            int rest = (int) in.readVarLong();
+            byte[] sku = Arrays.copyOf(previous, shared + rest);
+            in.read(sku, shared, rest);
+            skus[i] = new String(sku, StandardCharsets.UTF_8);
+            previous = sku;
+        }
+        int[] quantities = new int[count];
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            last += in.readZigZag();
+            quantities[i] = (int) last;
+        }
+        long[] costs = new long[count];
+        last = 0;
+        for (int i = 0; i < count; i++) {
+            last += in.readZigZag();
+            costs[i] = last;
+        }
+        long[] prices = new long[count];
+        last = 0;
+        for (int i = 0; i < count; i++) {
+            last += in.readZigZag();
+            prices[i] = last;
+        }
+        BitSet notFound = new BitSet(count);
+        if (in.hasRemaining()) {
+            int notFoundCount = (int) in.readVarLong();
+            int position = 0;
+            for (int i = 0; i < notFoundCount; i++) {
+                position += (int) in.readVarLong();
+                notFound.set(position);
+            }
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(skus[i], quantities[i], costs[i], prices[i], notFound.get(i)));
+        }
+        return entries;
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] chunk = new byte[16 * 1024];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated snapshot block.");
+                }
+                raw.write(chunk, 0, inflated);
+            }
+            return raw.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt snapshot block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class VarIntBuffer extends ByteArrayOutputStream {
+        VarIntBuffer(int size) {
+            super(size);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+    }
+
+    private static final class VarIntReader {
+        private final byte[] bytes;
+        private int position;
+
+        VarIntReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IOException("Truncated snapshot block.");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in snapshot block.");
+        }
+
+        boolean hasRemaining() {
+            return position < bytes.length;
+        }
+
+        long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        void read(byte[] into, int offset, int length) throws IOException {
+            if (position + length > bytes.length) {
+                throw new IOException("Truncated snapshot block.");
+            }
+            System.arraycopy(bytes, position, into, offset, length);
+            position += length;
+        }
+    }
+}
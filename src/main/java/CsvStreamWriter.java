@@ -0,0 +1,233 @@
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Writes output CSV rows (SKU,Quantity,Cost,Selling Price,Status) straight to an output stream as UTF-8.
+ *
+ * Rows are encoded into a small byte buffer without building Strings: numbers are written digit by
+ * digit and plain ASCII SKUs byte by byte, only SKUs that need quoting or non-ASCII encoding take
+ * the String path. The bytes written are the same as {@link LambdaHandler#generateCsvContent}.
+ */
+public final class CsvStreamWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Longest row apart from the SKU: 4 separators, an int, two cents amounts, the longest status and the line break
+    private static final int MAX_ROW_NUMBERS_SIZE = 4 + 11 + 2 * 21 + SkuRecordStore.STATUS_NOT_FOUND.length() + 1;
+
+    private static final int DEFAULT_PART_SIZE_MB = 8;
+    private static final int DEFAULT_PARTS_IN_FLIGHT = 2;
+
+    /**
+     * Writes the content of an S3 object, see {@link #upload}.
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(CsvStreamWriter csv) throws IOException;
+    }
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private int rows;
+
+    /**
+     * @param out Receives the encoded rows; closed by {@link #close()}.
+     */
+    public CsvStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Streams CSV content to an S3 object through {@link S3MultipartOutputStream}, so the object is never
+     * held in memory as a whole and its upload overlaps with writing it. If writing fails, nothing is
+     * stored. Part size and upload concurrency come from S3_UPLOAD_PART_SIZE_MB (default 8) and
+     * S3_UPLOAD_PARTS_IN_FLIGHT (default 2).
+     *
+     * @param s3Client The S3Client instance.
+     * @param bucketName The bucket to write to.
+     * @param key The object key.
+     * @param contentType The object's Content-Type.
+     * @param gzip Whether to gzip the content (the object gets Content-Encoding: gzip).
+     * @param content Writes the rows.
+     * @return The number of rows written.
+     * @throws IOException If writing or the upload fails.
+     */
+    public static int upload(S3Client s3Client, String bucketName, String key, String contentType, boolean gzip,
+                             Content content) throws IOException {
+        S3MultipartOutputStream upload = new S3MultipartOutputStream(s3Client, bucketName, key, contentType, gzip ? "gzip" : null,
+                LambdaHandler.intFromEnv("S3_UPLOAD_PART_SIZE_MB", DEFAULT_PART_SIZE_MB) * 1024 * 1024,
+                LambdaHandler.intFromEnv("S3_UPLOAD_PARTS_IN_FLIGHT", DEFAULT_PARTS_IN_FLIGHT));
+        try {
+            CsvStreamWriter csv = new CsvStreamWriter(gzip ? new GZIPOutputStream(upload, BUFFER_SIZE) : upload);
+            content.writeTo(csv);
+            csv.close();
+            Log.info("Streamed " + csv.getRowCount() + " rows (" + upload.getTotalBytes() + " bytes" + (gzip ? " gzipped" : "")
+                    + ", " + Math.max(1, upload.getPartCount()) + " part(s)) to s3://" + bucketName + "/" + key);
+            return csv.getRowCount();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of data rows written (lines written with writeLine are not counted).
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    public void writeHeader() throws IOException {
+        writeLine(LambdaHandler.CSV_HEADER);
+    }
+
+    /**
+     * Writes a line as it is, followed by a line break.
+     */
+    public void writeLine(String line) throws IOException {
+        writeBytes(line.getBytes(StandardCharsets.UTF_8));
+        ensureRoom(1);
+        buffer[count++] = '\n';
+    }
+
+    /**
+     * Writes a row that is already in CSV form (as read from another output CSV), adding the line break.
+     */
+    public void writeRawRow(String row) throws IOException {
+        writeLine(row);
+        rows++;
+    }
+
+    /**
+     * Writes the included records of a store, in store order.
+     */
+    public void writeRecords(SkuRecordStore skuRecords) throws IOException {
+        int size = skuRecords.size();
+        for (int record = 0; record < size; record++) {
+            if (skuRecords.isIncluded(record)) {
+                writeRow(skuRecords.sku(record), skuRecords.quantity(record), skuRecords.costCents(record), skuRecords.priceCents(record),
+                        skuRecords.isNotFound(record));
+            }
+        }
+    }
+
+    /**
+     * Writes one row of a SKU Dropshipzone returned, including its line break.
+     */
+    public void writeRow(String sku, int quantity, long costCents, long priceCents) throws IOException {
+        writeRow(sku, quantity, costCents, priceCents, false);
+    }
+
+    /**
+     * Writes one row including its line break; the Status column follows from the quantity and notFound.
+     */
+    public void writeRow(String sku, int quantity, long costCents, long priceCents, boolean notFound) throws IOException {
+        if (sku != null && sku.length() <= BUFFER_SIZE && isPlainAscii(sku)) {
+            ensureRoom(sku.length());
+            for (int i = 0; i < sku.length(); i++) {
+                buffer[count++] = (byte) sku.charAt(i);
+            }
+        } else {
+            writeBytes(LambdaHandler.escapeCsv(sku).getBytes(StandardCharsets.UTF_8));
+        }
+        ensureRoom(MAX_ROW_NUMBERS_SIZE);
+        buffer[count++] = ',';
+        writeDigits(quantity);
+        buffer[count++] = ',';
+        writeCents(costCents);
+        buffer[count++] = ',';
+        writeCents(priceCents);
+        buffer[count++] = ',';
+        String status = SkuRecordStore.statusOf(quantity, notFound);
+        for (int i = 0; i < status.length(); i++) {
+            buffer[count++] = (byte) status.charAt(i);
+        }
+        buffer[count++] = '\n';
+        rows++;
+    }
+
+    /**
+     * @return true if the SKU is ASCII and needs no quoting.
+     */
+    private static boolean isPlainAscii(String sku) {
+        for (int i = 0; i < sku.length(); i++) {
+            char c = sku.charAt(i);
+            if (c >= 0x80 || c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same output as SkuRecordStore.appendCents.
+     */
+    private void writeCents(long cents) {
+        if (cents < 0) {
+            buffer[count++] = '-';
+            cents = -cents;
+        }
+        writeDigits(cents / 100);
+        long fraction = cents % 100;
+        buffer[count++] = '.';
+        buffer[count++] = (byte) ('0' + fraction / 10);
+        buffer[count++] = (byte) ('0' + fraction % 10);
+    }
+
+    private void writeDigits(long value) {
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int start = count;
+        do {
+            buffer[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // Digits were written least significant first
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flushBuffer();
+            out.write(bytes);
+            return;
+        }
+        ensureRoom(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensureRoom(int length) throws IOException {
+        if (count + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Writes out the buffered rows and closes the underlying stream, which for an S3 upload completes it.
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+}
@@ -3,11 +3,21 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 import org.json.JSONObject;
 import org.json.JSONArray;
-import org.json.JSONTokener;
 
 // AWS SDK for S3 imports (unchanged)
 import software.amazon.awssdk.regions.Region;
@@ -15,6 +25,7 @@ import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import java.time.Duration;
 
 // Imports for JAVA.NET.HTTP CLIENT
@@ -37,33 +48,89 @@ import java.net.http.HttpResponse;
  */
 public class DropshipzoneAPIClient {
 
+    // API endpoints (overridable, e.g. to point a local run at the load-test mock server)
+    public static final String DROPSHIPZONE_BASE_URL = Env.get("DROPSHIPZONE_BASE_URL", "https://api.dropshipzone.com.au");
+    public static final String NETO_API_URL = Env.get("NETO_API_URL", "https://www.shoppingsmart.com.au/do/WS/NetoAPI");
+
     // Define the maximum number of SKUs allowed in the 'skus' parameter for Dropshipzone API /v2/products endpoint
     private static final int DROPSHIPZONE_API_SKU_LIMIT = 50; // As per user's specification "up to 50"
 
     // Define the number of products to request per API call for pagination (per filtered SKU batch)
     private static final int API_PAGE_SIZE = 100; // Common pagination parameter
 
+    // Define the default maximum number of Dropshipzone product page requests in flight at once
+    public static final int DEFAULT_DROPSHIPZONE_MAX_IN_FLIGHT = 8;
+
     // Define timeouts for HTTP connections (in milliseconds)
     public static final int CONNECT_TIMEOUT_MS = 5000; // 5 seconds
     public static final int READ_TIMEOUT_MS = 15000;  // 15 seconds (for Dropshipzone and Neto)
 
+    // Define the default number of items packed into a single Neto UpdateItem request
+    public static final int DEFAULT_NETO_UPDATE_BATCH_SIZE = 100;
+
+    // Define the default number of items per Neto GetItem page of a reconciliation export
+    public static final int DEFAULT_NETO_EXPORT_PAGE_SIZE = 1000;
+
+    // The Neto warehouse whose quantity is set and reconciled
+    private static final String NETO_WAREHOUSE_ID = "2";
+
+    // Define how many times a batch is sent before the items Neto still rejects (per-item errors) are given up on
+    private static final int NETO_UPDATE_MAX_ATTEMPTS = 3;
+    private static final long NETO_RETRY_BACKOFF_MS = 1000; // Base delay between attempts, doubled each retry
+
+    // Request templates: the URL, headers and timeout shared by every request to an endpoint, built once
+    // and copied per request. Product pages are large JSON, so they are requested gzipped.
+    private static final HttpRequest.Builder PRODUCTS_REQUEST_TEMPLATE = HttpRequest.newBuilder()
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .GET()
+            .timeout(Duration.ofMillis(READ_TIMEOUT_MS));
+    // Per NETOAPI_ACTION, with the Neto credentials read once
+    private static final Map<String, HttpRequest.Builder> NETO_REQUEST_TEMPLATES = new ConcurrentHashMap<>();
+
 
     /**
      * Authenticates with the Dropshipzone API using predefined credentials.
-     * Credentials are retrieved from environment variables.
+     * Credentials are retrieved from environment variables. Callers normally get the token through
+     * DropshipzoneTokenManager, which reuses it across invocations.
      *
-     * @param httpClient The shared HttpClient instance to use for the request.
+     * @param requestExecutor The shared request executor (rate limiting and retries) to send the request with.
      * @return The JWT token string if authentication is successful, otherwise null.
      * @throws IOException If an I/O error occurs during the HTTP request.
      */
-    protected static String authenticate(HttpClient httpClient) throws IOException, InterruptedException {
-        String authUrl = "https://api.dropshipzone.com.au/auth";
+    protected static String authenticate(RequestExecutor requestExecutor) throws IOException, InterruptedException {
+        HttpRequest request = buildAuthRequest();
+        if (request == null) {
+            return null;
+        }
+        return tokenFromAuthResponse(requestExecutor.send(request, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    /**
+     * Authenticates like {@link #authenticate}, without blocking the calling thread.
+     *
+     * @return A future completing with the JWT token string, or null if authentication failed.
+     */
+    protected static CompletableFuture<String> authenticateAsync(RequestExecutor requestExecutor) {
+        HttpRequest request = buildAuthRequest();
+        if (request == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return requestExecutor.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(DropshipzoneAPIClient::tokenFromAuthResponse);
+    }
+
+    /**
+     * @return The /auth request with the credentials from the environment, or null if they are not set.
+     */
+    private static HttpRequest buildAuthRequest() {
+        String authUrl = DROPSHIPZONE_BASE_URL + "/auth";
 
-        String email = System.getenv("DROPSHIPZONE_EMAIL");
-        String password = System.getenv("DROPSHIPZONE_PASSWORD");
+        String email = Env.get("DROPSHIPZONE_EMAIL");
+        String password = Env.get("DROPSHIPZONE_PASSWORD");
 
         if (email == null || password == null || email.isEmpty() || password.isEmpty()) {
-            System.err.println("Error: Dropshipzone credentials (DROPSHIPZONE_EMAIL, DROPSHIPZONE_PASSWORD) not set as environment variables.");
+            Log.error("Error: Dropshipzone credentials (DROPSHIPZONE_EMAIL, DROPSHIPZONE_PASSWORD) not set as environment variables.");
             return null;
         }
 
@@ -71,19 +138,19 @@ public class DropshipzoneAPIClient {
                 .put("email", email)
                 .put("password", password);
 
-        HttpRequest request = HttpRequest.newBuilder()
+        return HttpRequest.newBuilder()
                 .uri(java.net.URI.create(authUrl))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(jsonInput.toString()))
                 .timeout(Duration.ofMillis(READ_TIMEOUT_MS))
                 .build();
+    }
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
+    private static String tokenFromAuthResponse(HttpResponse<String> response) {
         int responseCode = response.statusCode();
         if (responseCode != 200) {
-            System.err.println("Authentication failed with response code: " + responseCode);
-            System.err.println("Authentication Error Details: " + response.body());
+            Log.error("Authentication failed with response code: " + responseCode);
+            Log.error("Authentication Error Details: " + response.body());
             return null;
         }
 
@@ -92,176 +159,466 @@ public class DropshipzoneAPIClient {
 
     /**
      * Fetches product data for a list of SKUs from the Dropshipzone API v2 Products endpoint,
-     * using the 'skus' filter and handling pagination. It now processes the response in a streaming manner
-     * and populates the provided `processedSkuDataMap` directly, avoiding large in-memory JSON arrays.
+     * using the 'skus' filter and handling pagination, with the default request concurrency.
+     *
+     * @see #fetchStock(RequestExecutor, List, SkuRecordStore, PricingEngine, int, SkuDataSink, SkuDataSink, InvocationDeadline, BitSet)
+     */
+    protected static void fetchStock(RequestExecutor requestExecutor, List<String> allSkus, SkuRecordStore skuRecords, PricingEngine pricing) throws IOException, InterruptedException {
+        fetchStock(requestExecutor, allSkus, skuRecords, pricing, DEFAULT_DROPSHIPZONE_MAX_IN_FLIGHT, null, null, InvocationDeadline.NONE, null);
+    }
+
+    /**
+     * Fetches product data for a list of SKUs from the Dropshipzone API v2 Products endpoint,
+     * using the 'skus' filter and handling pagination. Requests for all SKU batches and their pages
+     * are issued concurrently through RequestExecutor.sendAsync, with at most maxInFlight requests outstanding
+     * (the executor's adaptive limit for the Dropshipzone host may hold fewer of them on the wire). Throttled
+     * and 5xx pages are retried by the executor; a page that still fails fails the fetch.
+     *
+     * The first page of every batch is queued up front. Once a batch's first page reports total_pages,
+     * its remaining pages are queued as well, so page-walking stays correct per batch. Products are
+     * written into the (thread-safe) record store as they are parsed.
+     *
+     * Once the deadline has passed, no further pages are sent: the requests already in flight are
+     * completed and processed, and the remaining pages are skipped and counted. SKU batches are
+     * numbered from 0 in input order; batches marked in completedBatches are not fetched, and batches
+     * whose pages all complete and parse are marked there, so an interrupted run can be resumed (a batch
+     * with a failed page is fetched again).
+     *
+     * Pages cached by earlier runs (see ProductResponseCache) are requested conditionally and replayed
+     * when the API answers 304 Not Modified, or used without a request while within the cache TTL.
+     *
+     * Each page is sent with the current token from DropshipzoneTokenManager. A page answered 401 is
+     * replayed once with a new token; a page rejected again fails the fetch.
      *
-     * @param httpClient The shared HttpClient instance to use for the request.
-     * @param token The JWT token obtained from the authentication step.
+     * Each batch tracks which of its SKUs the API returned in a small BitSet. When all its pages have
+     * completed, the SKUs it did not return are added to the store as not found (quantity 0, see
+     * SkuRecordStore#putNotFound) and passed to notFoundSink. A batch with a page that failed or could
+     * not be parsed reports none, since its absent SKUs are not known to be missing.
+     *
+     * @param requestExecutor The shared request executor (rate limiting and retries) to send requests with.
      * @param allSkus A list of all SKU strings for which to fetch data.
-     * @param processedSkuDataMap A Map to be populated with processed SKU data (SKU -> {quantity, cost, selling_price}).
-     * @param priceMultiplier The multiplier to calculate selling price.
-     * @throws IOException If an I/O error occurs during any HTTP request.
+     * @param skuRecords The store to be populated with processed SKU data (quantity, cost, selling price).
+     * @param pricing The compiled pricing rules used to calculate selling prices.
+     * @param maxInFlight The maximum number of Dropshipzone requests outstanding at any time.
+     * @param sink Receives the record number of every processed SKU as soon as its page is parsed (may be null). A sink
+     *             that blocks holds that page's request slot, which throttles the fetch.
+     * @param notFoundSink Receives the record number of every requested SKU the API did not return, as its batch
+     *                     completes (may be null, in which case such SKUs are not added to the store).
+     * @param deadline No pages are sent after this deadline.
+     * @param completedBatches The SKU batches already fetched, updated as batches complete (may be null). Accessed
+     *                         while synchronized on the BitSet.
+     * @return The number of pages skipped because the deadline passed (0 when everything was fetched).
+     * @throws IOException If a page request could not be sent or its response could not be read, or no token could be obtained.
+     *                     Pages already in flight have completed (and passed their SKUs to the sinks) when it is thrown.
+     * @throws InterruptedException If interrupted while waiting for a request slot.
      */
-    protected static void fetchStock(HttpClient httpClient, String token, List<String> allSkus, Map<String, Map<String, String>> processedSkuDataMap, double priceMultiplier) throws IOException, InterruptedException {
-        String productsBaseUrl = "https://api.dropshipzone.com.au/v2/products";
+    protected static int fetchStock(RequestExecutor requestExecutor, List<String> allSkus, SkuRecordStore skuRecords, PricingEngine pricing, int maxInFlight, SkuDataSink sink, SkuDataSink notFoundSink, InvocationDeadline deadline, BitSet completedBatches) throws IOException, InterruptedException {
+        int inFlightPermits = Math.max(1, maxInFlight);
+        Semaphore inFlight = new Semaphore(inFlightPermits);
+        BlockingQueue<PageRequest> pageQueue = new LinkedBlockingQueue<>();
+        AtomicInteger pendingPages = new AtomicInteger();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        int skippedPages = 0;
+        // Per batch (by batch number): the pages still to complete and the SKUs returned so far
+        Map<Integer, SkuBatch> batches = new ConcurrentHashMap<>();
 
-        // Iterate through all SKUs in batches of DROPSHIPZONE_API_SKU_LIMIT
+        // Queue the first page of every SKU batch of DROPSHIPZONE_API_SKU_LIMIT
         for (int i = 0; i < allSkus.size(); i += DROPSHIPZONE_API_SKU_LIMIT) {
             int endIndex = Math.min(i + DROPSHIPZONE_API_SKU_LIMIT, allSkus.size());
-            List<String> currentApiBatchSkus = allSkus.subList(i, endIndex);
-            String skuString = String.join(",", currentApiBatchSkus);
-
-            int requestedPageNumber = 1; // Our internal counter for the page number to request
-            int totalPages = 1;         // Initialize to 1 to enter the inner pagination loop at least once
-
-            do {
-                StringBuilder queryParams = new StringBuilder();
-                queryParams.append("?");
-                queryParams.append("skus=").append(URLEncoder.encode(skuString, StandardCharsets.UTF_8.toString()));
-                queryParams.append("&page_size=").append(API_PAGE_SIZE);
-                queryParams.append("&page_number=").append(requestedPageNumber); // Use our internal requested page number
-
-                String productsUrl = productsBaseUrl + queryParams.toString();
-
-                System.out.println("\nDropshipzone Products Request URL (SKU Batch " + ((i / DROPSHIPZONE_API_SKU_LIMIT) + 1) + ", Page " + requestedPageNumber + "): " + productsUrl);
+            int batchIndex = i / DROPSHIPZONE_API_SKU_LIMIT;
+            if (completedBatches != null) {
+                synchronized (completedBatches) {
+                    if (completedBatches.get(batchIndex)) {
+                        continue;
+                    }
+                }
+            }
+            batches.put(batchIndex + 1, new SkuBatch(allSkus.subList(i, endIndex)));
+            pendingPages.incrementAndGet();
+            pageQueue.add(new PageRequest((i / DROPSHIPZONE_API_SKU_LIMIT) + 1, String.join(",", allSkus.subList(i, endIndex)), 1));
+        }
+        if (pendingPages.get() == 0) {
+            return 0;
+        }
 
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(java.net.URI.create(productsUrl))
-                        .header("Authorization", "jwt " + token)
-                        .GET()
-                        .timeout(Duration.ofMillis(READ_TIMEOUT_MS))
-                        .build();
+        // Dispatch loop: only this thread blocks (on the queue and the in-flight semaphore);
+        // responses are handled on the HttpClient's executor threads.
+        try {
+            while (true) {
+                PageRequest page = pageQueue.take();
+                if (page == PageRequest.DONE) {
+                    break;
+                }
+                if (deadline.isExpired()) {
+                    // Out of time: drop the page instead of sending it, and let the in-flight ones finish
+                    skippedPages++;
+                    if (pendingPages.decrementAndGet() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                inFlight.acquire();
 
-                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                ProductResponseCache.Entry cached;
+                CompletableFuture<HttpResponse<InputStream>> responseFuture;
+                String token = null;
+                try {
+                    cached = ProductResponseCache.isEnabled() ? ProductResponseCache.get(productsQuery(page)) : null;
+                    if (cached != null && ProductResponseCache.isFresh(cached)) {
+                        // Within the cache TTL: no request, processProductsPage replays the cached page
+                        responseFuture = CompletableFuture.completedFuture(null);
+                    } else {
+                        token = DropshipzoneTokenManager.get(requestExecutor);
+                        if (token == null) {
+                            throw new IOException("No Dropshipzone token for SKU batch " + page.batchNumber + ", Page " + page.pageNumber + ": authentication failed.");
+                        }
+                        responseFuture = requestExecutor.sendAsync(buildProductsRequest(token, page, cached), HttpResponse.BodyHandlers.ofInputStream());
+                    }
+                } catch (IOException e) {
+                    // Nothing was sent: return the slot, so the drain below does not wait for it
+                    inFlight.release();
+                    throw e;
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw new IOException("Failed to send Dropshipzone products request for SKU batch " + page.batchNumber + ", Page " + page.pageNumber + ".", e);
+                }
 
-                int responseCode = response.statusCode();
-                System.out.println("Dropshipzone Products API Response Code (SKU Batch " + ((i / DROPSHIPZONE_API_SKU_LIMIT) + 1) + ", Page " + requestedPageNumber + "): " + responseCode);
-
-                JSONObject pageResultJson;
-                try (InputStream is = response.body();
-                     InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
-                     BufferedReader reader = new BufferedReader(isr)) {
-
-                    if (responseCode != 200) {
-                        String errorBody;
-                        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-                            byte[] buffer = new byte[4096];
-                            int len;
-                            while ((len = is.read(buffer)) != -1) {
-                                os.write(buffer, 0, len);
+                String sentToken = token;
+                responseFuture.whenComplete((response, error) -> {
+                    try {
+                        if (error != null) {
+                            firstFailure.compareAndSet(null, error);
+                            Log.error("Error calling Dropshipzone Products API (SKU Batch " + page.batchNumber + ", Page " + page.pageNumber + "): " + error.getMessage());
+                            return;
+                        }
+                        if (response != null && response.statusCode() == 401 && !page.authReplayed) {
+                            // The token expired or was revoked mid-run: replay the page once with a new one
+                            response.body().close();
+                            Log.warn("Dropshipzone rejected the token (401) for SKU batch " + page.batchNumber + ", Page " + page.pageNumber + ". Refreshing it and replaying the page.");
+                            pendingPages.incrementAndGet();
+                            DropshipzoneTokenManager.refreshAfterUnauthorized(requestExecutor, sentToken)
+                                    .whenComplete((newToken, refreshError) -> pageQueue.add(page.replayedAfterUnauthorized()));
+                            return;
+                        }
+                        SkuBatch batch = batches.get(page.batchNumber);
+                        int totalPages = processProductsPage(response, page, batch, cached, skuRecords, pricing, sink);
+                        // The first page of a batch tells us how many more pages to walk for that batch
+                        AtomicInteger pagesLeft = batch.pagesLeft;
+                        if (page.pageNumber == 1) {
+                            pagesLeft.addAndGet(Math.max(0, totalPages - 1));
+                            for (int nextPage = 2; nextPage <= totalPages; nextPage++) {
+                                pendingPages.incrementAndGet();
+                                pageQueue.add(new PageRequest(page.batchNumber, page.skuString, nextPage));
                             }
-                            errorBody = os.toString(StandardCharsets.UTF_8.toString());
                         }
-                        System.err.println("Dropshipzone Products API Error Response (SKU Batch " + ((i / DROPSHIPZONE_API_SKU_LIMIT) + 1) + ", Page " + requestedPageNumber + "):\n" + errorBody);
-                        pageResultJson = new JSONObject("{\"result\":[],\"total\":0,\"total_pages\":0,\"current_page\":0}");
-                    } else {
-                        pageResultJson = new JSONObject(new JSONTokener(reader));
+                        if (pagesLeft.decrementAndGet() == 0) {
+                            if (notFoundSink != null) {
+                                reportNotFound(batch, skuRecords, notFoundSink);
+                            }
+                            // A batch with a failed or unparseable page is fetched again when the run resumes
+                            if (completedBatches != null && !batch.incomplete) {
+                                synchronized (completedBatches) {
+                                    completedBatches.set(page.batchNumber - 1);
+                                }
+                            }
+                        }
+                    } catch (Throwable t) {
+                        firstFailure.compareAndSet(null, t);
+                        Log.error("Error processing Dropshipzone Products API response (SKU Batch " + page.batchNumber + ", Page " + page.pageNumber + "): " + t.getMessage());
+                    } finally {
+                        inFlight.release();
+                        if (pendingPages.decrementAndGet() == 0) {
+                            pageQueue.add(PageRequest.DONE);
+                        }
                     }
+                });
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // Let the pages already sent finish before the caller tears down the sink (e.g. finishes the
+            // Neto pipeline); a page callback still running would otherwise submit into a finished sink
+            inFlight.acquireUninterruptibly(inFlightPermits);
+            throw e;
+        }
 
-                } catch (org.json.JSONException jsonE) {
-                    System.err.println("ERROR: Failed to parse Dropshipzone Products API response for SKU batch " + ((i / DROPSHIPZONE_API_SKU_LIMIT) + 1) + ", Page " + requestedPageNumber + ".");
-                    System.err.println("Problem reading or parsing response: " + jsonE.getMessage());
-                    jsonE.printStackTrace();
-                    pageResultJson = new JSONObject("{\"result\":[],\"total\":0,\"total_pages\":0,\"current_page\":0}");
-                    break;
-                }
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            throw new IOException("One or more Dropshipzone products requests failed: " + failure.getMessage(), failure);
+        }
+        if (skippedPages > 0) {
+            Log.warn("Invocation deadline reached: skipped " + skippedPages + " Dropshipzone product pages.");
+        }
+        return skippedPages;
+    }
 
-                if (pageResultJson.has("result") && pageResultJson.getJSONArray("result").length() > 0) {
-                    JSONArray pageProductsArray = pageResultJson.getJSONArray("result");
-                    // Pass priceMultiplier to the processing method
-                    processAndAddSkuData(pageProductsArray, processedSkuDataMap, priceMultiplier);
-                }
+    /**
+     * Adds the SKUs of a completed batch that the API did not return to the store as not found.
+     * A SKU already in the store (listed twice, and returned for its other batch) is left as it is.
+     */
+    private static void reportNotFound(SkuBatch batch, SkuRecordStore skuRecords, SkuDataSink notFoundSink) throws InterruptedException {
+        if (batch.incomplete) {
+            return;
+        }
+        BitSet returned;
+        synchronized (batch.returned) {
+            returned = (BitSet) batch.returned.clone();
+        }
+        for (int position = returned.nextClearBit(0); position < batch.skus.size(); position = returned.nextClearBit(position + 1)) {
+            String sku = batch.skus.get(position);
+            if (skuRecords.indexOf(sku) < 0) {
+                notFoundSink.accept(skuRecords.putNotFound(sku, 0, 0));
+            }
+        }
+    }
+
+    /**
+     * @return The query string of the GET request for one page of one SKU batch, which also keys the page in ProductResponseCache.
+     */
+    private static String productsQuery(PageRequest page) {
+        StringBuilder queryParams = new StringBuilder();
+        queryParams.append("skus=").append(URLEncoder.encode(page.skuString, StandardCharsets.UTF_8));
+        queryParams.append("&page_size=").append(API_PAGE_SIZE);
+        queryParams.append("&page_number=").append(page.pageNumber);
+        return queryParams.toString();
+    }
 
-                // Always get total_pages from the API response
-                totalPages = pageResultJson.optInt("total_pages", requestedPageNumber);
-                // Increment our internal counter for the NEXT request
-                requestedPageNumber++;
-                // Log the current state based on what was *just* processed and what will be requested next
-                System.out.println("Pagination Info: Processed Page=" + (requestedPageNumber - 1) + ", Reported Total Pages=" + totalPages + ", Total unique products collected so far: " + processedSkuDataMap.size());
+    /**
+     * Builds the GET request for one page of one SKU batch, conditional on the cached copy of the page if there is one.
+     */
+    private static HttpRequest buildProductsRequest(String token, PageRequest page, ProductResponseCache.Entry cached) {
+        String productsUrl = DROPSHIPZONE_BASE_URL + "/v2/products?" + productsQuery(page);
 
+        if (Log.isDebugEnabled()) {
+            Log.debug("\nDropshipzone Products Request URL (SKU Batch " + page.batchNumber + ", Page " + page.pageNumber + "): " + productsUrl);
+        }
 
-            } while (requestedPageNumber <= totalPages); // Loop continues as long as there are more pages to request
+        HttpRequest.Builder request = PRODUCTS_REQUEST_TEMPLATE.copy()
+                .uri(java.net.URI.create(productsUrl))
+                .header("Authorization", "jwt " + token);
+        if (cached != null && cached.eTag != null) {
+            request.header("If-None-Match", cached.eTag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            request.header("If-Modified-Since", cached.lastModified);
         }
+        return request.build();
     }
 
     /**
-     * Processes a JSONArray of product data and adds/updates entries in the provided map.
-     * This replaces the previous `processStockData` which returned a new list.
+     * Reads and processes one products page response, adding its SKUs to the record store.
+     * A non-200 page or a page that cannot be parsed is logged and treated as empty, as before; none of
+     * the SKUs of an unparseable page reach the store, even those read before the error.
      *
-     * @param apiData The JSONArray of products from one API page/batch.
-     * @param processedSkuDataMap The map to update with processed SKU data.
-     * @param priceMultiplier The multiplier to calculate selling price.
+     * A 304 Not Modified answer (or no response, for a cached page within its TTL) replays the cached
+     * page. A 200 page is cached once it has parsed.
+     *
+     * @param response The response, or null to use the cached page without a request.
+     * @param batch The page's batch, whose returned SKUs are marked (and which is marked incomplete if the page fails).
+     * @param cached The cached copy of the page the request was conditional on, or null.
+     * @return The total_pages reported by the API for this batch (the current page number if unknown).
      */
-    private static void processAndAddSkuData(JSONArray apiData, Map<String, Map<String, String>> processedSkuDataMap, double priceMultiplier) {
-        for (Object obj : apiData) {
-            JSONObject item;
-            try {
-                item = new JSONObject(obj.toString()); // obj.toString() creates string for current item only
-            } catch (org.json.JSONException jsonE) {
-                System.err.println("ERROR: Failed to parse individual item from Dropshipzone API response JSONArray. Skipping this item.");
-                System.err.println("Problematic item string: " + obj.toString());
-                jsonE.printStackTrace();
-                continue;
+    private static int processProductsPage(HttpResponse<InputStream> response, PageRequest page, SkuBatch batch, ProductResponseCache.Entry cached, SkuRecordStore skuRecords, PricingEngine pricing, SkuDataSink sink) throws IOException, InterruptedException {
+        // Parsed into a page-local store and merged only once the page has parsed cleanly, so a page that
+        // fails halfway leaves nothing behind that was never passed to the sink
+        SkuRecordStore pageRecords = new SkuRecordStore(API_PAGE_SIZE);
+        int reportedTotalPages;
+        byte[] fetchedBody = null; // A 200 body to cache once it has parsed
+        InputStream body;
+        if (response == null) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("Dropshipzone Products (SKU Batch " + page.batchNumber + ", Page " + page.pageNumber + "): using cached page within PRODUCT_CACHE_TTL_SECONDS");
+            }
+            body = cached.openBody();
+        } else {
+            int responseCode = response.statusCode();
+            if (Log.isDebugEnabled()) {
+                Log.debug("Dropshipzone Products API Response Code (SKU Batch " + page.batchNumber + ", Page " + page.pageNumber + "): " + responseCode);
             }
 
-            String sku = item.optString("sku", "INVALID_SKU");
-            int stock_qty = 0;
-            String cost = "0.00";
-            String sellingPrice = "0.00"; // Initialize selling price as a decimal string
+            if (responseCode == 304 && cached != null) {
+                response.body().close();
+                ProductResponseCache.revalidated(cached);
+                body = cached.openBody();
+            } else if (responseCode != 200) {
+                String errorBody;
+                try (InputStream is = decodedBody(response)) {
+                    errorBody = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                Log.error("Dropshipzone Products API Error Response (SKU Batch " + page.batchNumber + ", Page " + page.pageNumber + "):\n" + errorBody);
+                batch.incomplete = true;
+                if (responseCode == 429 || responseCode >= 500) {
+                    // Still throttled or failing after the executor's retries: do not silently treat the page as empty
+                    throw new IOException("Dropshipzone Products API returned " + responseCode + " for SKU batch " + page.batchNumber + ", Page " + page.pageNumber + " after retries.");
+                }
+                if (responseCode == 401) {
+                    // Rejected again after the replay with a new token
+                    throw new IOException("Dropshipzone Products API rejected the token for SKU batch " + page.batchNumber + ", Page " + page.pageNumber + " after a token refresh.");
+                }
+                return page.pageNumber;
+            } else if (ProductResponseCache.isEnabled()) {
+                try (InputStream is = decodedBody(response)) {
+                    fetchedBody = is.readAllBytes();
+                }
+                body = new ByteArrayInputStream(fetchedBody);
+            } else {
+                body = decodedBody(response);
+            }
+        }
 
-            if (!sku.equals("INVALID_SKU")) { // Only process if SKU is valid
-                String stockQtyStr = item.optString("stock_qty", "0");
-                try {
-                    stock_qty = (int) Double.parseDouble(stockQtyStr);
-                    if (stock_qty < 25) {
-                        stock_qty = 0;
+        try (InputStream is = body) {
+            // Stream the fields we need straight off the response instead of building a JSONObject per page
+            reportedTotalPages = ProductPageParser.parse(is, product -> processAndAddSkuData(product, pageRecords, pricing));
+
+        } catch (ProductPageParser.MalformedPageException parseE) {
+            Log.error("ERROR: Failed to parse Dropshipzone Products API response for SKU batch " + page.batchNumber + ", Page " + page.pageNumber + ".");
+            Log.error("Problem reading or parsing response: " + parseE.getMessage(), parseE);
+            batch.incomplete = true;
+            return page.pageNumber;
+        }
+
+        if (fetchedBody != null) {
+            ProductResponseCache.put(productsQuery(page), response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null), fetchedBody);
+        }
+
+        int[] records = new int[pageRecords.size()];
+        for (int pageRecord = 0; pageRecord < records.length; pageRecord++) {
+            records[pageRecord] = skuRecords.putFrom(pageRecords, pageRecord);
+            batch.markReturned(pageRecords.sku(pageRecord));
+        }
+        if (sink != null) {
+            for (int record : records) {
+                sink.accept(record);
+            }
+        }
+
+        // Always get total_pages from the API response
+        int totalPages = reportedTotalPages >= 0 ? reportedTotalPages : page.pageNumber;
+        if (Log.isDebugEnabled()) {
+            Log.debug("Pagination Info: Processed SKU Batch " + page.batchNumber + " Page=" + page.pageNumber + ", Reported Total Pages=" + totalPages + ", Total unique products collected so far: " + skuRecords.size());
+        }
+        return totalPages;
+    }
+
+    /**
+     * @return The response body, gunzipped if the server sent it with Content-Encoding: gzip.
+     */
+    private static InputStream decodedBody(HttpResponse<InputStream> response) throws IOException {
+        if ("gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(""))) {
+            return new GZIPInputStream(response.body(), 8192);
+        }
+        return response.body();
+    }
+
+    /**
+     * Receives the record numbers of processed SKUs from {@link #fetchStock} as pages complete.
+     * Called concurrently from the HttpClient's executor threads.
+     */
+    @FunctionalInterface
+    public interface SkuDataSink {
+        void accept(int record) throws InterruptedException;
+    }
+
+    /**
+     * One SKU batch of a fetch: its pages still to complete and which of its SKUs the API returned.
+     */
+    private static final class SkuBatch {
+        final List<String> skus;
+        final AtomicInteger pagesLeft = new AtomicInteger(1);
+        final BitSet returned; // By position in skus, at most DROPSHIPZONE_API_SKU_LIMIT bits; guarded by itself
+        volatile boolean incomplete; // A page failed or could not be parsed
+
+        SkuBatch(List<String> skus) {
+            this.skus = skus;
+            this.returned = new BitSet(skus.size());
+        }
+
+        void markReturned(String sku) {
+            synchronized (returned) {
+                for (int position = 0; position < skus.size(); position++) {
+                    if (skus.get(position).equals(sku)) {
+                        returned.set(position);
                     }
-                } catch (NumberFormatException e) {
-                    System.err.println("Warning: Invalid number format for 'stock_qty': '" + stockQtyStr + "' for SKU " + sku + ". Defaulting to 0.");
-                    stock_qty = 0;
                 }
+            }
+        }
+    }
 
-                cost = item.optString("cost", "0.00");
-                try {
-                    Double.parseDouble(cost);
-                } catch (NumberFormatException e) {
-                    System.err.println("Warning: Invalid number format for 'cost': '" + cost + "' for SKU " + sku + ". Defaulting to 0.00.");
-                    cost = "0.00";
-                }
+    /**
+     * One page of one SKU batch waiting to be requested.
+     */
+    private static final class PageRequest {
+        // Marker telling the dispatch loop that every queued page has completed
+        static final PageRequest DONE = new PageRequest(0, "", 0);
 
-                // Calculate Selling Price: price * priceMultiplier
-                String priceStr = item.optString("price", "0.00");
-                try {
-                    double price = Double.parseDouble(priceStr);
-                    double calculatedSellingPrice = price * priceMultiplier;
-
-                    // Apply the .95 decimal rule
-                    double sellingPriceValue;
-                    // Using a small epsilon to check if it's effectively a whole number
-                    if (Math.abs(calculatedSellingPrice - Math.round(calculatedSellingPrice)) < 0.00001) {
-                        sellingPriceValue = calculatedSellingPrice; // Keep as whole number if it is (e.g., 14.0)
-                    } else {
-                        // If it has any decimal part, set it to X.95
-                        sellingPriceValue = Math.floor(calculatedSellingPrice) + 0.95;
-                    }
-                    sellingPrice = String.format("%.2f", sellingPriceValue); // Format to two decimal places
+        final int batchNumber;
+        final String skuString;
+        final int pageNumber;
+        final boolean authReplayed; // Already replayed once after a 401
 
-                } catch (NumberFormatException e) {
-                    System.err.println("Warning: Invalid number format for 'price': '" + priceStr + "' for SKU " + sku + ". Defaulting selling price to 0.00.");
-                    sellingPrice = "0.00";
-                }
+        PageRequest(int batchNumber, String skuString, int pageNumber) {
+            this(batchNumber, skuString, pageNumber, false);
+        }
 
+        private PageRequest(int batchNumber, String skuString, int pageNumber, boolean authReplayed) {
+            this.batchNumber = batchNumber;
+            this.skuString = skuString;
+            this.pageNumber = pageNumber;
+            this.authReplayed = authReplayed;
+        }
 
-                Map<String, String> skuEntry = new HashMap<>();
-                skuEntry.put("sku", sku);
-                skuEntry.put("quantity", String.valueOf(stock_qty));
-                skuEntry.put("cost", cost);
-                skuEntry.put("selling_price", sellingPrice); // Add selling price
-                processedSkuDataMap.put(sku, skuEntry); // Add/update entry in the main map
-            } else {
-                System.err.println("Error: Skipping item due to invalid SKU in API response: " + item.toString());
+        PageRequest replayedAfterUnauthorized() {
+            return new PageRequest(batchNumber, skuString, pageNumber, true);
+        }
+    }
+
+    /**
+     * Processes one product extracted by {@link ProductPageParser} and adds/updates its record in the store.
+     *
+     * @param product The product fields from one API page (only valid for the duration of the call).
+     * @param skuRecords The store to update with processed SKU data.
+     * @param pricing The compiled pricing rules used to calculate selling prices.
+     * @return The record number of the SKU, or -1 if the product was skipped.
+     */
+    protected static int processAndAddSkuData(ProductPageParser.Product product, SkuRecordStore skuRecords, PricingEngine pricing) {
+        String sku = product.getSku();
+        if (sku == null) {
+            Log.error("Error: Skipping item due to missing or invalid SKU in API response (stock_qty='" + product.getStockQty() + "', cost='" + product.getCost() + "', price='" + product.getPrice() + "').");
+            return -1;
+        }
+
+        int stock_qty;
+        CharSequence stockQtyText = product.getStockQty().length() > 0 ? product.getStockQty() : "0";
+        try {
+            // Truncates like the (int) cast of the API's number did, e.g. "24.9" and "24.995" -> 24
+            stock_qty = (int) Math.min(Integer.MAX_VALUE, SkuRecordStore.parseFixedPoint(stockQtyText, 6) / 1_000_000);
+            if (stock_qty < 25) {
+                stock_qty = 0;
             }
+        } catch (NumberFormatException e) {
+            Log.warn("Warning: Invalid number format for 'stock_qty': '" + stockQtyText + "' for SKU " + sku + ". Defaulting to 0.");
+            stock_qty = 0;
+        }
+
+        long costCents;
+        CharSequence cost = product.getCost().length() > 0 ? product.getCost() : "0.00";
+        try {
+            costCents = SkuRecordStore.parseCents(cost);
+        } catch (NumberFormatException e) {
+            Log.warn("Warning: Invalid number format for 'cost': '" + cost + "' for SKU " + sku + ". Defaulting to 0.00.");
+            costCents = 0;
         }
+
+        // Calculate Selling Price: price * multiplier of the matching pricing rule, with its ending and floor
+        long sellingPriceCents;
+        CharSequence priceText = product.getPrice().length() > 0 ? product.getPrice() : "0.00";
+        try {
+            sellingPriceCents = pricing.sellingPriceCents(priceText, product.getBrand(), product.getCategory());
+        } catch (NumberFormatException | ArithmeticException e) {
+            Log.warn("Warning: Invalid number format for 'price': '" + priceText + "' for SKU " + sku + ". Defaulting selling price to 0.00.");
+            sellingPriceCents = 0;
+        }
+
+        return skuRecords.put(sku, stock_qty, costCents, sellingPriceCents); // Add/update the SKU's record
     }
 
 
@@ -270,114 +627,423 @@ public class DropshipzoneAPIClient {
         try {
             obj = new JSONObject(json);
         } catch (org.json.JSONException jsonE) {
-            System.err.println("ERROR: Failed to parse JSON for token extraction.");
-            System.err.println("Raw JSON content that failed parsing: " + json);
-            jsonE.printStackTrace();
+            Log.error("ERROR: Failed to parse JSON for token extraction.");
+            Log.error("Raw JSON content that failed parsing: " + json, jsonE);
             return null;
         }
         return obj.optString("token", null);
     }
 
+    /**
+     * Loads the SKU list from the input CSV in S3.
+     *
+     * The parsed list is cached with the object's ETag (see SkuListCache). When a cached list exists the
+     * GET is conditional (If-None-Match); an unchanged file then costs one bodiless 304 response and
+     * neither download nor parse. SKU_CACHE_ENABLED=false always downloads.
+     *
+     * @param s3Client The S3Client instance.
+     * @param bucketName The input bucket.
+     * @param key The input CSV key.
+     * @return The SKUs in file order (unmodifiable).
+     * @throws IOException If the file cannot be loaded.
+     */
     protected static List<String> loadSkusFromCSV(S3Client s3Client, String bucketName, String key) throws IOException {
-        List<String> skus = new ArrayList<>();
-        System.out.println("Attempting to load SKUs from S3: Bucket=" + bucketName + ", Key=" + key);
+        List<String> skus;
+        Log.info("Attempting to load SKUs from S3: Bucket=" + bucketName + ", Key=" + key);
 
-        try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(GetObjectRequest.builder()
+        boolean cacheEnabled = SkuListCache.isEnabled();
+        SkuListCache.Entry cached = cacheEnabled ? SkuListCache.get(bucketName, key) : null;
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
                 .bucket(bucketName)
-                .key(key)
-                .build());
-             BufferedReader reader = new BufferedReader(new InputStreamReader(s3Object, StandardCharsets.UTF_8))) {
+                .key(key);
+        if (cached != null) {
+            request.ifNoneMatch(cached.eTag);
+        }
 
-            System.out.println("Successfully opened S3 object stream.");
+        try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(request.build())) {
 
-            String line;
-            boolean isFirstLine = true;
-            while ((line = reader.readLine()) != null) {
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    continue;
-                }
-                line = line.trim();
-                if (!line.isEmpty()) {
-                    skus.add(line.split(",")[0]);
-                }
+            Log.info("Successfully opened S3 object stream.");
+
+            skus = parseSkuCsv(s3Object);
+            if (cacheEnabled) {
+                skus = SkuListCache.put(bucketName, key, s3Object.response().eTag(), skus).skus;
             }
-            System.out.println("Successfully loaded " + skus.size() + " SKUs from S3.");
+            Log.info("Successfully loaded " + skus.size() + " SKUs from S3.");
+        } catch (S3Exception e) {
+            if (cached != null && e.statusCode() == 304) {
+                Log.info("SKU file unchanged (ETag " + cached.eTag + "); using the " + cached.skus.size() + " cached SKUs.");
+                return cached.skus;
+            }
+            Log.error("Error loading SKUs from S3 bucket '" + bucketName + "' with key '" + key + "': " + e.getMessage(), e);
+            throw new IOException("Failed to load SKUs from S3.", e);
         } catch (Exception e) {
-            System.err.println("Error loading SKUs from S3 bucket '" + bucketName + "' with key '" + key + "': " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error loading SKUs from S3 bucket '" + bucketName + "' with key '" + key + "': " + e.getMessage(), e);
             throw new IOException("Failed to load SKUs from S3.", e);
         }
         return skus;
     }
 
     /**
-     * Updates the quantity of a specific item in Neto using the Neto API.
+     * Reads the SKU column (the first one) of a SKU CSV, skipping the header line, blank lines and lines
+     * with an empty SKU.
+     *
+     * Scans the UTF-8 bytes directly: each line is trimmed and cut at its first comma by byte offsets,
+     * and only the SKU itself becomes a String. Lines may end in \n, \r\n or \r.
+     *
+     * @param in The CSV, from its start (header line included).
+     * @return The SKUs in file order.
+     * @throws IOException If the CSV cannot be read.
+     */
+    protected static List<String> parseSkuCsv(InputStream in) throws IOException {
+        List<String> skus = new ArrayList<>();
+        byte[] buffer = new byte[64 * 1024];
+        int count = 0; // Bytes in the buffer; a partial line is kept at its start
+        boolean isFirstLine = true;
+        int read;
+        do {
+            read = in.read(buffer, count, buffer.length - count);
+            if (read > 0) {
+                count += read;
+            }
+            boolean endOfInput = read < 0;
+            int lineStart = 0;
+            for (int i = 0; i < count; i++) {
+                byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    if (!isFirstLine) {
+                        addSku(buffer, lineStart, i, skus);
+                    }
+                    isFirstLine = false;
+                    if (b == '\r' && i + 1 < count && buffer[i + 1] == '\n') {
+                        i++;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (endOfInput) {
+                if (lineStart < count && !isFirstLine) {
+                    addSku(buffer, lineStart, count, skus); // Last line without a line break
+                }
+                break;
+            }
+            // Keep the partial line; grow the buffer if one line fills it
+            System.arraycopy(buffer, lineStart, buffer, 0, count - lineStart);
+            count -= lineStart;
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        } while (true);
+        return skus;
+    }
+
+    /**
+     * Adds the first field of the line bytes[from, to), trimmed like String.trim, unless it is empty.
+     */
+    private static void addSku(byte[] bytes, int from, int to, List<String> skus) {
+        while (from < to && (bytes[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        while (to > from && (bytes[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        int end = from;
+        while (end < to && bytes[end] != ',') {
+            end++;
+        }
+        if (end > from) { // A line starting with a comma has no SKU
+            skus.add(new String(bytes, from, end - from, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Updates quantity and DefaultPrice for a batch of items in Neto with a single UpdateItem request.
+     * All items are packed into the "Item" array of one payload. The per-item result is read from the
+     * response: SKUs echoed back in "Item" were updated, anything else is treated as failed. Only the
+     * failed items are re-sent, up to NETO_UPDATE_MAX_ATTEMPTS times with exponential backoff.
+     * Throttling, 5xx responses and I/O errors are retried by the request executor itself.
      * Credentials are retrieved from environment variables.
      *
-     * @param httpClient The shared HttpClient instance to use for the request.
-     * @param sku The SKU of the item to update.
-     * @param quantity The new quantity to set for the item.
-     * @param sellingPrice The new selling price to set for the item's DefaultPrice field.
+     * @param requestExecutor The shared request executor (rate limiting and retries) to send the request with.
+     * @param skuRecords The store holding the processed SKU data.
+     * @param records The record numbers of the SKUs to update.
+     * @return The SKUs that could not be updated after all attempts (empty if everything succeeded).
      */
-    protected static void updateNetoItem(HttpClient httpClient, String sku, int quantity, String sellingPrice) {
-        String netoUrl = "https://www.shoppingsmart.com.au/do/WS/NetoAPI";
+    protected static Set<String> updateNetoItems(RequestExecutor requestExecutor, SkuRecordStore skuRecords, List<Integer> records) {
+        return updateNetoItems(requestExecutor, skuRecords, records, true);
+    }
 
-        String netoUsername = System.getenv("NETOAPI_USERNAME");
-        String netoKey = System.getenv("NETOAPI_KEY");
+    /**
+     * Sets the stock of items to 0 in Neto, leaving their DefaultPrice as it is; used for SKUs the
+     * Dropshipzone API did not return. The items are sent in UpdateItem requests of up to batchSize
+     * items, retried as in {@link #updateNetoItems(RequestExecutor, SkuRecordStore, List)}.
+     *
+     * @param requestExecutor The shared request executor (rate limiting and retries) to send the requests with.
+     * @param skuRecords The store holding the SKUs.
+     * @param records The record numbers of the SKUs to clear.
+     * @param batchSize The maximum number of items per UpdateItem request.
+     * @return The SKUs whose stock could not be cleared (empty if everything succeeded).
+     */
+    protected static Set<String> clearNetoStock(RequestExecutor requestExecutor, SkuRecordStore skuRecords, List<Integer> records, int batchSize) {
+        Set<String> failedSkus = new LinkedHashSet<>();
+        for (int i = 0; i < records.size(); i += batchSize) {
+            failedSkus.addAll(updateNetoItems(requestExecutor, skuRecords, records.subList(i, Math.min(i + batchSize, records.size())), false));
+        }
+        return failedSkus;
+    }
 
-        if (netoUsername == null || netoKey == null || netoUsername.isEmpty() || netoKey.isEmpty()) {
-            System.err.println("Error: Neto credentials (NETOAPI_USERNAME, NETOAPI_KEY) not set as environment variables. Skipping Neto update for SKU: " + sku);
-            return;
+    private static Set<String> updateNetoItems(RequestExecutor requestExecutor, SkuRecordStore skuRecords, List<Integer> records, boolean setPrice) {
+        Set<String> pendingSkus = new LinkedHashSet<>();
+        for (int record : records) {
+            pendingSkus.add(skuRecords.sku(record));
         }
 
-        JSONObject warehouseQuantity = new JSONObject()
-                .put("WarehouseID", "2")
-                .put("Quantity", String.valueOf(quantity))
-                .put("Action", "Set");
+        HttpRequest.Builder requestTemplate = netoRequestTemplate("UpdateItem");
+        if (requestTemplate == null) {
+            Log.error("Error: Neto credentials (NETOAPI_USERNAME, NETOAPI_KEY) not set as environment variables. Skipping Neto update for " + pendingSkus.size() + " SKUs.");
+            return pendingSkus;
+        }
 
-        JSONObject item = new JSONObject()
-                .put("SKU", sku)
-                .put("WarehouseQuantity", warehouseQuantity)
-                .put("DefaultPrice", sellingPrice); // Set DefaultPrice from sellingPrice
+        for (int attempt = 1; attempt <= NETO_UPDATE_MAX_ATTEMPTS && !pendingSkus.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(NETO_RETRY_BACKOFF_MS << (attempt - 2));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                Log.info("Retrying Neto update for " + pendingSkus.size() + " failed SKUs (attempt " + attempt + " of " + NETO_UPDATE_MAX_ATTEMPTS + ").");
+            }
 
-        JSONObject payload = new JSONObject()
-                .put("Item", item);
+            JSONArray items = new JSONArray();
+            for (int record : records) {
+                String sku = skuRecords.sku(record);
+                if (!pendingSkus.contains(sku)) {
+                    continue;
+                }
+                JSONObject warehouseQuantity = new JSONObject()
+                        .put("WarehouseID", NETO_WAREHOUSE_ID)
+                        .put("Quantity", String.valueOf(skuRecords.quantity(record)))
+                        .put("Action", "Set");
 
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(java.net.URI.create(netoUrl))
-                    .header("NETOAPI_ACTION", "UpdateItem")
-                    .header("NETOAPI_USERNAME", netoUsername)
-                    .header("NETOAPI_KEY", netoKey)
-                    .header("Accept", "application/json")
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
-                    .timeout(Duration.ofMillis(READ_TIMEOUT_MS))
-                    .build();
+                JSONObject item = new JSONObject()
+                        .put("SKU", sku)
+                        .put("WarehouseQuantity", warehouseQuantity);
+                if (setPrice) {
+                    item.put("DefaultPrice", SkuRecordStore.formatCents(skuRecords.priceCents(record))); // Set DefaultPrice from the selling price
+                }
+                items.put(item);
+            }
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            JSONObject payload = new JSONObject()
+                    .put("Item", items);
 
-            int responseCode = response.statusCode();
-            String rawResponse = response.body();
-            String statusMessage = "Neto API Raw Response for SKU " + sku + " (Code: " + responseCode + "): " + rawResponse;
+            try {
+                HttpRequest request = requestTemplate.copy()
+                        .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
+                        .build();
+
+                HttpResponse<String> response = requestExecutor.send(request, HttpResponse.BodyHandlers.ofString());
+
+                int responseCode = response.statusCode();
+                String rawResponse = response.body();
+
+                if (responseCode != 200) {
+                    // Retryable statuses were already retried by the executor; re-sending will not help
+                    Log.error("Neto UpdateItem batch of " + items.length() + " SKUs failed with response code: " + responseCode + ". Response: " + rawResponse);
+                    break;
+                }
+
+                Set<String> updatedSkus = parseNetoUpdatedSkus(rawResponse);
+                pendingSkus.removeAll(updatedSkus);
+
+                if (Log.isDebugEnabled()) {
+                    Log.debug(String.format("Neto Update Status for batch of %d SKUs (attempt %d): Response Code: %d. Updated: %d, Failed: %d",
+                        items.length(), attempt, responseCode, updatedSkus.size(), pendingSkus.size()));
+                }
+                if (!pendingSkus.isEmpty()) {
+                    Log.warn("Neto reported failures for " + pendingSkus.size() + " SKUs (attempt " + attempt + "): " + pendingSkus);
+                    if (Log.isDebugEnabled()) {
+                        Log.debug("Raw Neto response: " + rawResponse);
+                    }
+                }
+
+            } catch (IOException e) {
+                Log.error("Error calling Neto API for batch of " + items.length() + " SKUs: " + e.getMessage(), e);
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Log.warn("Neto update interrupted for batch of " + items.length() + " SKUs.");
+                break;
+            }
+        }
 
-            System.out.println(String.format("Neto Update Status for SKU %s (Qty: %d, DefaultPrice: %s): Response Code: %d. %s",
-                sku, quantity, sellingPrice, responseCode, statusMessage)); // Log sellingPrice
+        if (!pendingSkus.isEmpty()) {
+            Log.error("Neto update failed after " + NETO_UPDATE_MAX_ATTEMPTS + " attempts for " + pendingSkus.size() + " SKUs: " + pendingSkus);
+        }
+        return pendingSkus;
+    }
+
+    /**
+     * Reads every Neto item's SKU, warehouse quantity and DefaultPrice with paged GetItem requests
+     * (an OutputSelector of just those fields, pageSize items per page, active and inactive items),
+     * for reconciliation against the Dropshipzone data. Pages are read until one comes back short.
+     *
+     * @param requestExecutor The shared request executor (rate limiting and retries) to send the requests with.
+     * @param pageSize The number of items per GetItem page.
+     * @return The items, sorted by SKU.
+     * @throws IOException If the credentials are not set, a page cannot be read, or Neto answers with an error.
+     * @throws InterruptedException If interrupted while waiting for a response.
+     */
+    protected static NetoItemIndex exportNetoItems(RequestExecutor requestExecutor, int pageSize) throws IOException, InterruptedException {
+        HttpRequest.Builder requestTemplate = netoRequestTemplate("GetItem");
+        if (requestTemplate == null) {
+            throw new IOException("Neto credentials (NETOAPI_USERNAME, NETOAPI_KEY) not set as environment variables.");
+        }
+        JSONArray outputSelector = new JSONArray().put("SKU").put("WarehouseQuantity").put("DefaultPrice");
+        NetoItemIndex items = new NetoItemIndex(pageSize);
+        for (int page = 0; ; page++) {
+            JSONObject payload = new JSONObject().put("Filter", new JSONObject()
+                    .put("IsActive", new JSONArray().put("True").put("False"))
+                    .put("Page", page)
+                    .put("Limit", pageSize)
+                    .put("OutputSelector", outputSelector));
+            HttpRequest request = requestTemplate.copy()
+                    .POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
+                    .build();
+            HttpResponse<String> response = requestExecutor.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Neto GetItem page " + page + " failed with response code: " + response.statusCode() + ". Response: " + response.body());
+            }
 
+            JSONObject responseJson;
             try {
-                JSONObject netoResponseJson = new JSONObject(rawResponse);
+                responseJson = new JSONObject(response.body());
             } catch (org.json.JSONException jsonE) {
-                System.err.println("ERROR: Failed to parse Neto API response JSON for SKU " + sku + ".");
-                System.err.println("Raw Neto response content that failed parsing: " + rawResponse);
-                jsonE.printStackTrace();
+                throw new IOException("Failed to parse Neto GetItem response for page " + page + ".", jsonE);
+            }
+            if ("Error".equalsIgnoreCase(responseJson.optString("Ack", ""))) {
+                throw new IOException("Neto GetItem Ack=Error for page " + page + ". Messages: " + responseJson.opt("Messages"));
+            }
+            JSONArray pageItems = responseJson.optJSONArray("Item");
+            if (pageItems == null) {
+                JSONObject singleItem = responseJson.optJSONObject("Item");
+                pageItems = singleItem != null ? new JSONArray().put(singleItem) : new JSONArray();
+            }
+            for (int i = 0; i < pageItems.length(); i++) {
+                JSONObject item = pageItems.optJSONObject(i);
+                if (item != null && !item.optString("SKU").isEmpty()) {
+                    items.add(item.optString("SKU"), netoWarehouseQuantity(item), netoPriceCents(item));
+                }
+            }
+            if (Log.isDebugEnabled()) {
+                Log.debug("Neto GetItem page " + page + ": " + pageItems.length() + " items.");
+            }
+            if (pageItems.length() < pageSize) {
+                break;
+            }
+        }
+        items.sort();
+        return items;
+    }
+
+    /**
+     * @return The item's quantity in NETO_WAREHOUSE_ID (0 if it has none). WarehouseQuantity is an
+     *         array, or a single object when the item is stocked in one warehouse.
+     */
+    private static int netoWarehouseQuantity(JSONObject item) {
+        JSONArray warehouses = item.optJSONArray("WarehouseQuantity");
+        if (warehouses == null) {
+            JSONObject single = item.optJSONObject("WarehouseQuantity");
+            warehouses = single != null ? new JSONArray().put(single) : new JSONArray();
+        }
+        for (int i = 0; i < warehouses.length(); i++) {
+            JSONObject warehouse = warehouses.optJSONObject(i);
+            if (warehouse != null && NETO_WAREHOUSE_ID.equals(warehouse.optString("WarehouseID"))) {
+                try {
+                    return (int) SkuRecordStore.parseFixedPoint(warehouse.optString("Quantity", "0"), 0);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
             }
+        }
+        return 0;
+    }
+
+    private static long netoPriceCents(JSONObject item) {
+        try {
+            return SkuRecordStore.parseCents(item.optString("DefaultPrice", ""));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param action The NETOAPI_ACTION of the requests.
+     * @return The template for Neto API requests with the action, built on first use with the credentials
+     * (NETOAPI_USERNAME, NETOAPI_KEY) from the environment, or null if the credentials are not set.
+     */
+    private static HttpRequest.Builder netoRequestTemplate(String action) {
+        HttpRequest.Builder template = NETO_REQUEST_TEMPLATES.get(action);
+        if (template != null) {
+            return template;
+        }
+        String netoUsername = Env.get("NETOAPI_USERNAME");
+        String netoKey = Env.get("NETOAPI_KEY");
+        if (netoUsername == null || netoKey == null || netoUsername.isEmpty() || netoKey.isEmpty()) {
+            return null;
+        }
+        template = HttpRequest.newBuilder()
+                .uri(java.net.URI.create(NETO_API_URL))
+                .header("NETOAPI_ACTION", action)
+                .header("NETOAPI_USERNAME", netoUsername)
+                .header("NETOAPI_KEY", netoKey)
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMillis(READ_TIMEOUT_MS));
+        HttpRequest.Builder existing = NETO_REQUEST_TEMPLATES.putIfAbsent(action, template);
+        return existing != null ? existing : template;
+    }
+
+    /**
+     * Reads the per-item outcome of a Neto UpdateItem response. Neto echoes each successfully updated
+     * item's SKU back in the "Item" array (a single object when only one item was updated) and lists
+     * problems under "Messages"; the overall "Ack" is Success, Warning or Error.
+     *
+     * @param rawResponse The raw JSON body returned by Neto.
+     * @return The SKUs Neto confirmed as updated. Empty if the response could not be parsed.
+     */
+    private static Set<String> parseNetoUpdatedSkus(String rawResponse) {
+        Set<String> updatedSkus = new LinkedHashSet<>();
+        JSONObject netoResponseJson;
+        try {
+            netoResponseJson = new JSONObject(rawResponse);
+        } catch (org.json.JSONException jsonE) {
+            Log.error("ERROR: Failed to parse Neto API response JSON for UpdateItem batch.");
+            Log.error("Raw Neto response content that failed parsing: " + rawResponse, jsonE);
+            return updatedSkus;
+        }
 
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Error calling Neto API for SKU " + sku + ": " + e.getMessage());
-            e.printStackTrace();
-            System.out.println(String.format("Neto Update Status for SKU %s (Qty: %d, DefaultPrice: %s): Failed due to I/O Error or Interruption: %s",
-                sku, quantity, sellingPrice, e.getMessage())); // Log sellingPrice
+        if ("Error".equalsIgnoreCase(netoResponseJson.optString("Ack", ""))) {
+            Log.error("Neto UpdateItem Ack=Error. Messages: " + netoResponseJson.opt("Messages"));
+        }
+
+        JSONArray itemArray = netoResponseJson.optJSONArray("Item");
+        if (itemArray != null) {
+            for (int i = 0; i < itemArray.length(); i++) {
+                JSONObject item = itemArray.optJSONObject(i);
+                if (item != null && item.has("SKU")) {
+                    updatedSkus.add(item.optString("SKU"));
+                }
+            }
+        } else {
+            JSONObject singleItem = netoResponseJson.optJSONObject("Item");
+            if (singleItem != null && singleItem.has("SKU")) {
+                updatedSkus.add(singleItem.optString("SKU"));
+            }
         }
+        return updatedSkus;
     }
 }
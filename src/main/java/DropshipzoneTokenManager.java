@@ -0,0 +1,200 @@
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * The Dropshipzone JWT, kept in memory for the life of the execution environment so warm invocations
+ * skip the /auth round-trip. The token is not written to disk.
+ *
+ * The token's expiry is read from its `exp` claim. Within DROPSHIPZONE_TOKEN_REFRESH_SECONDS (default
+ * 300, at most half the token's lifetime) of the expiry, {@link #get} still returns the current token
+ * and a new one is requested in the background; a token that has (nearly) expired is replaced before
+ * it is returned. A token without a readable `exp` is used until the API rejects it.
+ *
+ * When a request is answered 401, {@link #refreshAfterUnauthorized} replaces the rejected token; the
+ * 401s of all requests sent with the same token share one /auth call. Refreshes go through the
+ * RequestExecutor like every other call. DROPSHIPZONE_TOKEN_CACHE_ENABLED=false authenticates on
+ * every invocation, as before.
+ */
+final class DropshipzoneTokenManager {
+
+    private static final int DEFAULT_REFRESH_SECONDS = 300;
+    // A token this close to its expiry (at most a tenth of its lifetime) is not used any more: requests sent with it could arrive after it expired
+    private static final long EXPIRY_SKEW_MILLIS = 30_000;
+    // A background refresh that has not completed after this long (e.g. frozen with the environment) is abandoned
+    private static final long REFRESH_ABANDON_MILLIS = 4L * DropshipzoneAPIClient.READ_TIMEOUT_MS;
+
+    /**
+     * A token and the account and expiry it was issued for.
+     */
+    private static final class Token {
+        final String value;
+        final String issuedFor;
+        final long issuedAtMillis;
+        final long expiresAtMillis; // 0 if the token carries no readable exp claim
+
+        Token(String value, String issuedFor, long issuedAtMillis, long expiresAtMillis) {
+            this.value = value;
+            this.issuedFor = issuedFor;
+            this.issuedAtMillis = issuedAtMillis;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        boolean isUsable(long now) {
+            return expiresAtMillis == 0 || now < expiresAtMillis - Math.min(EXPIRY_SKEW_MILLIS, (expiresAtMillis - issuedAtMillis) / 10);
+        }
+
+        boolean isDueForRefresh(long now) {
+            if (expiresAtMillis == 0) {
+                return false;
+            }
+            long margin = Math.min(refreshMillis(), (expiresAtMillis - issuedAtMillis) / 2);
+            return now >= expiresAtMillis - margin;
+        }
+    }
+
+    private static volatile Token current;
+    // The refresh in progress, if any; guarded by the class lock
+    private static CompletableFuture<Token> refreshing;
+    private static long refreshStartedMillis;
+
+    private DropshipzoneTokenManager() {
+    }
+
+    /**
+     * @return Whether DROPSHIPZONE_TOKEN_CACHE_ENABLED is set (default true).
+     */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(Env.get("DROPSHIPZONE_TOKEN_CACHE_ENABLED", "true"));
+    }
+
+    /**
+     * Returns a token to send requests with: the cached one while it is usable (starting a background
+     * refresh when it is close to its expiry), otherwise a new one, waiting for the /auth call.
+     *
+     * @param requestExecutor The shared request executor to authenticate with.
+     * @return The token, or null if authentication failed.
+     * @throws IOException If the /auth request could not be sent or read.
+     * @throws InterruptedException If interrupted while waiting for the /auth response.
+     */
+    static String get(RequestExecutor requestExecutor) throws IOException, InterruptedException {
+        if (!isEnabled()) {
+            return DropshipzoneAPIClient.authenticate(requestExecutor);
+        }
+        long now = System.currentTimeMillis();
+        Token token = current;
+        if (token != null && token.issuedFor.equals(account()) && token.isUsable(now)) {
+            if (token.isDueForRefresh(now)) {
+                refresh(requestExecutor, token);
+            }
+            return token.value;
+        }
+        Token refreshed = await(refresh(requestExecutor, token));
+        return refreshed != null ? refreshed.value : null;
+    }
+
+    /**
+     * Replaces a token the API has rejected with 401, unless it has been replaced already.
+     *
+     * @param requestExecutor The shared request executor to authenticate with.
+     * @param rejectedToken The token the rejected request was sent with.
+     * @return A future completing with the token to replay the request with (null if authentication
+     *         failed); it does not complete exceptionally.
+     */
+    static CompletableFuture<String> refreshAfterUnauthorized(RequestExecutor requestExecutor, String rejectedToken) {
+        Token token = current;
+        if (token != null && !token.value.equals(rejectedToken) && token.issuedFor.equals(account())) {
+            return CompletableFuture.completedFuture(token.value); // Already replaced by another request's refresh
+        }
+        return refresh(requestExecutor, token)
+                .handle((refreshed, error) -> refreshed != null ? refreshed.value : null);
+    }
+
+    /**
+     * Starts a refresh replacing the given token, or joins the one in progress.
+     */
+    private static synchronized CompletableFuture<Token> refresh(RequestExecutor requestExecutor, Token replacing) {
+        long now = System.currentTimeMillis();
+        if (refreshing != null && now - refreshStartedMillis < REFRESH_ABANDON_MILLIS) {
+            return refreshing;
+        }
+        if (replacing != current) {
+            return CompletableFuture.completedFuture(current); // Replaced since the caller looked
+        }
+        CompletableFuture<Token> refresh = authenticate(requestExecutor, account());
+        refreshing = refresh;
+        refreshStartedMillis = now;
+        refresh.whenComplete((token, error) -> {
+            synchronized (DropshipzoneTokenManager.class) {
+                if (token != null && isEnabled()) {
+                    current = token;
+                }
+                if (refreshing == refresh) {
+                    refreshing = null;
+                }
+            }
+            if (error != null) {
+                Log.error("Error refreshing Dropshipzone token: " + error.getMessage());
+            }
+        });
+        return refresh;
+    }
+
+    private static CompletableFuture<Token> authenticate(RequestExecutor requestExecutor, String account) {
+        try {
+            return DropshipzoneAPIClient.authenticateAsync(requestExecutor)
+                    .thenApply(value -> value != null ? new Token(value, account, System.currentTimeMillis(), expiresAtMillis(value)) : null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Token await(CompletableFuture<Token> refresh) throws IOException, InterruptedException {
+        try {
+            return refresh.get(REFRESH_ABANDON_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Dropshipzone authentication failed: " + cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new IOException("Dropshipzone authentication did not complete within " + REFRESH_ABANDON_MILLIS + " ms.", e);
+        }
+    }
+
+    /**
+     * @return The expiry of a JWT in epoch milliseconds from its exp claim, or 0 if it has none or
+     *         cannot be decoded.
+     */
+    static long expiresAtMillis(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length < 2) {
+            return 0;
+        }
+        try {
+            String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            long exp = new JSONObject(payload).optLong("exp", 0);
+            return exp > 0 ? exp * 1000 : 0;
+        } catch (IllegalArgumentException | JSONException e) {
+            return 0;
+        }
+    }
+
+    private static long refreshMillis() {
+        return LambdaHandler.intFromEnv("DROPSHIPZONE_TOKEN_REFRESH_SECONDS", DEFAULT_REFRESH_SECONDS) * 1000L;
+    }
+
+    // Tokens are only reused for the endpoint and account they were issued by
+    private static String account() {
+        return DropshipzoneAPIClient.DROPSHIPZONE_BASE_URL + " " + Env.get("DROPSHIPZONE_EMAIL", "");
+    }
+}
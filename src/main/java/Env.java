@@ -0,0 +1,28 @@
+/**
+ * Reads the integrator's configuration.
+ *
+ * Every setting is an environment variable in Lambda. A JVM system property of the same name takes
+ * precedence, so local runs (such as the load-test harness) can configure a handler in-process
+ * without a Lambda environment.
+ */
+public final class Env {
+
+    private Env() {
+    }
+
+    /**
+     * @return The setting's value, or null if it is not set.
+     */
+    public static String get(String name) {
+        String value = System.getProperty(name);
+        return value != null ? value : System.getenv(name);
+    }
+
+    /**
+     * @return The setting's value, or defaultValue if it is not set.
+     */
+    public static String get(String name, String defaultValue) {
+        String value = get(name);
+        return value != null ? value : defaultValue;
+    }
+}
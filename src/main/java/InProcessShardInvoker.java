@@ -0,0 +1,53 @@
+import com.amazonaws.services.lambda.runtime.Context;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+
+/**
+ * Runs shard workers in the coordinator's JVM, each on its own thread with its own LambdaHandler,
+ * as separate Lambda instances would be. Stands in for {@link LambdaShardInvoker} in local runs and
+ * the load-test harness (SHARD_INVOKER=in-process).
+ *
+ * The workers share the coordinator's Context, so they see its remaining time. The invoker is meant
+ * to be kept across coordinator runs: each shard index keeps its worker handler (and with it the
+ * handler's updater pool), as a warm worker instance would, and the worker threads are reused.
+ */
+public class InProcessShardInvoker implements ShardInvoker {
+
+    private final Supplier<LambdaHandler> workerFactory;
+    private volatile Context context;
+    private final Map<Integer, LambdaHandler> workers = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "shard-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param workerFactory Creates the handler for each shard index, on its first run.
+     * @param context The coordinator's context, passed on to the workers.
+     */
+    public InProcessShardInvoker(Supplier<LambdaHandler> workerFactory, Context context) {
+        this.workerFactory = workerFactory;
+        this.context = context;
+    }
+
+    /**
+     * @param context The context of the coordinator run the next workers belong to.
+     */
+    public void setContext(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public CompletableFuture<Void> invoke(ShardTask task) {
+        LambdaHandler worker = workers.computeIfAbsent(task.getShardIndex(), shard -> workerFactory.get());
+        Context workerContext = context;
+        return CompletableFuture.runAsync(() -> worker.handleRequest(task.toEvent(), workerContext), executor);
+    }
+}
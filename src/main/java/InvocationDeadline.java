@@ -0,0 +1,48 @@
+import com.amazonaws.services.lambda.runtime.Context;
+
+
+/**
+ * The point in an invocation after which no new Dropshipzone or Neto work is started, so the run
+ * still has time to write its output CSV before Lambda stops it.
+ *
+ * It is taken from Context.getRemainingTimeInMillis() at the start of the invocation, minus a reserve
+ * for finishing the requests already in flight and uploading the output.
+ */
+public final class InvocationDeadline {
+
+    /** A deadline that never expires, for callers without a Lambda context. */
+    public static final InvocationDeadline NONE = new InvocationDeadline(Long.MAX_VALUE);
+
+    private final long deadlineNanos;
+
+    private InvocationDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param context The invocation's Lambda context.
+     * @param reserveMillis Time kept back at the end of the invocation for in-flight requests and the output upload.
+     * @return The deadline for starting new work.
+     */
+    public static InvocationDeadline fromContext(Context context, long reserveMillis) {
+        long budgetMillis = Math.max(0, context.getRemainingTimeInMillis() - reserveMillis);
+        return new InvocationDeadline(System.nanoTime() + budgetMillis * 1_000_000L);
+    }
+
+    /**
+     * @return true once no new work should be started.
+     */
+    public boolean isExpired() {
+        return this != NONE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * @return The time left before the deadline in milliseconds (0 once expired).
+     */
+    public long remainingMillis() {
+        if (this == NONE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+}
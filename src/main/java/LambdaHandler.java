@@ -5,33 +5,39 @@ import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Request; // For listing objects
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Response; // For listing objects
 import software.amazon.awssdk.services.s3.model.S3Object;           // For S3 object details
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest; // For deleting objects
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.core.ResponseInputStream;
 import java.time.Duration;
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-import java.util.Comparator; // For sorting objects
 
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 
 import java.net.http.HttpClient;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.crac.Core;
+import org.crac.Resource;
 
 
 /**
@@ -42,13 +48,60 @@ import org.json.JSONObject;
  * including loading SKUs from S3 and updating Neto items in parallel,
  * and now also generates an output CSV with cost and selling price data.
  */
-public class LambdaHandler implements RequestHandler<ScheduledEvent, Void> {
+public class LambdaHandler implements RequestHandler<ScheduledEvent, Void>, Resource {
 
-    private static final int NETO_UPDATE_THREAD_POOL_SIZE = 20; // Increased thread pool size
-    private final ExecutorService executorService = Executors.newFixedThreadPool(NETO_UPDATE_THREAD_POOL_SIZE);
+    // Upper bound for concurrent Neto updates; RequestExecutor adapts the actual concurrency below it
+    private static final int DEFAULT_NETO_UPDATE_WORKERS = 20;
 
-    private S3Client s3Client; // S3Client instance
-    private HttpClient httpClient; // Shared HttpClient instance for Dropshipzone and Neto APIs
+    // Time kept back at the end of an invocation for in-flight requests and the output upload
+    private static final int DEFAULT_INVOCATION_RESERVE_MS = 60000;
+
+    // Progress of an unfinished run is saved next to the output CSVs (not ending in .csv, so it is never taken for one)
+    private static final String CHECKPOINT_KEY_SUFFIX = "_checkpoint";
+    private static final int DEFAULT_CHECKPOINT_MAX_AGE_HOURS = 12;
+
+    // Time left to Lambda for returning after waiting for the S3 cleanup
+    private static final int CLEANUP_WAIT_MARGIN_MS = 5000;
+
+    // Sharded runs (RUN_MODE=coordinator)
+    private static final int DEFAULT_SHARD_COUNT = 4;
+    private volatile LambdaShardInvoker lambdaShardInvoker; // Built on the first coordinator run
+    private volatile InProcessShardInvoker inProcessShardInvoker; // Likewise, with SHARD_INVOKER=in-process
+
+    // Neto updater workers. Created once per container and kept across warm invocations; its daemon
+    // threads are started on first use and park between invocations.
+    private final int netoUpdateWorkers;
+    private final ExecutorService executorService;
+
+    // Set when the class is loaded, i.e. at the start of the function's init phase
+    private static final long CLASS_LOAD_NANOS = System.nanoTime();
+    private static final AtomicBoolean FIRST_INSTANCE = new AtomicBoolean(true);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * When the clients are built and whether the run's code paths are warmed (COLD_START_MODE).
+     */
+    enum ColdStartMode {
+        /** Build the S3 client and HttpClient on first use in an invocation (default). */
+        LAZY,
+        /** Build them in the constructor, i.e. during the init phase. */
+        EAGER,
+        /** Build them and run ColdStartPrimer during the init phase. */
+        PRIME
+    }
+
+    private final ColdStartMode coldStartMode;
+    private final S3Client providedS3Client; // Injected client (local runs), or null to build the default one
+    private volatile S3Client s3Client; // S3Client instance, built lazily
+    private volatile HttpClient httpClient; // Shared HttpClient instance for Dropshipzone and Neto APIs, built lazily
+    private volatile RequestExecutor requestExecutor; // Rate limiting, adaptive concurrency and retries on top of httpClient
+
+    // Init timing, reported on the first invocation
+    private final long initMillis;
+    private volatile long clientInitMillis = -1;
+    private volatile long primingMillis = -1;
+    private volatile long restoredAtNanos;
+    private final AtomicBoolean firstInvocation = new AtomicBoolean(true);
 
     // S3 client-side timeouts
     private static final int S3_CONNECT_TIMEOUT_MS = 5000;
@@ -58,8 +111,153 @@ public class LambdaHandler implements RequestHandler<ScheduledEvent, Void> {
 
     // Add a public zero-argument constructor as required by AWS Lambda
     public LambdaHandler() {
-        System.out.println("LambdaHandler constructor invoked. Initializing S3Client and HttpClient.");
-        String awsRegion = System.getenv("AWS_REGION");
+        this(null);
+    }
+
+    /**
+     * @param s3Client The S3 client to use, or null to build the default one for AWS_REGION.
+     *                 Local runs (e.g. the load-test harness) pass an in-memory implementation.
+     */
+    LambdaHandler(S3Client s3Client) {
+        // The first instance's init includes loading this class; later ones (local runs) only their own construction
+        long initStartNanos = FIRST_INSTANCE.getAndSet(false) ? CLASS_LOAD_NANOS : System.nanoTime();
+        this.providedS3Client = s3Client;
+        this.coldStartMode = coldStartModeFromEnv();
+        this.netoUpdateWorkers = intFromEnv("NETO_UPDATE_WORKERS", DEFAULT_NETO_UPDATE_WORKERS);
+        this.executorService = Executors.newFixedThreadPool(netoUpdateWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "neto-updater-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Log.info("LambdaHandler constructor invoked. Cold start mode: " + coldStartMode);
+
+        if (coldStartMode != ColdStartMode.LAZY) {
+            s3Client();
+            requestExecutor();
+        }
+        if (coldStartMode == ColdStartMode.PRIME) {
+            primingMillis = ColdStartPrimer.prime(s3Client());
+        }
+
+        // With SnapStart the checkpoint is taken after this constructor; prime then so the snapshot is warm.
+        // Without a CRaC-capable runtime the registration does nothing.
+        Core.getGlobalContext().register(this);
+
+        this.initMillis = (System.nanoTime() - initStartNanos) / 1_000_000;
+        Log.info("LambdaHandler init completed in " + initMillis + " ms.");
+    }
+
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        if (primingMillis < 0) {
+            primingMillis = ColdStartPrimer.prime(s3Client());
+        }
+        requestExecutor();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        // Nothing was connected before the checkpoint, so the HttpClient has no stale connections to drop
+        restoredAtNanos = System.nanoTime();
+        Log.info("LambdaHandler restored from snapshot.");
+    }
+
+    /**
+     * @return The S3 client, built on first use unless one was injected.
+     */
+    S3Client s3Client() {
+        S3Client client = s3Client;
+        if (client == null) {
+            synchronized (this) {
+                client = s3Client;
+                if (client == null) {
+                    long startNanos = System.nanoTime();
+                    client = providedS3Client != null ? providedS3Client : buildS3Client();
+                    s3Client = client;
+                    recordClientInit(startNanos);
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @return The request executor shared by every Dropshipzone and Neto call (e.g. to attach a
+     * RequestListener), built with its HttpClient on first use.
+     */
+    RequestExecutor getRequestExecutor() {
+        return requestExecutor();
+    }
+
+    private RequestExecutor requestExecutor() {
+        RequestExecutor executor = requestExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = requestExecutor;
+                if (executor == null) {
+                    long startNanos = System.nanoTime();
+                    // --- Shared HttpClient Initialization for Dropshipzone and Neto APIs ---
+                    this.httpClient = buildHttpClient();
+
+                    // --- Request execution layer: per-host rate limits, adaptive concurrency and retries ---
+                    executor = new RequestExecutor(httpClient, nonNegativeIntFromEnv("HTTP_MAX_RETRIES", RequestExecutor.DEFAULT_MAX_RETRIES));
+                    executor.configureHost(java.net.URI.create(DropshipzoneAPIClient.DROPSHIPZONE_BASE_URL).getHost(),
+                            intFromEnv("DROPSHIPZONE_RATE_LIMIT_PER_SEC", 10),
+                            intFromEnv("DROPSHIPZONE_MAX_IN_FLIGHT", DropshipzoneAPIClient.DEFAULT_DROPSHIPZONE_MAX_IN_FLIGHT));
+                    executor.configureHost(java.net.URI.create(DropshipzoneAPIClient.NETO_API_URL).getHost(),
+                            intFromEnv("NETO_RATE_LIMIT_PER_SEC", 10),
+                            netoUpdateWorkers);
+                    requestExecutor = executor;
+                    recordClientInit(startNanos);
+                }
+            }
+        }
+        return executor;
+    }
+
+    private void recordClientInit(long startNanos) {
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        clientInitMillis = Math.max(0, clientInitMillis) + elapsedMillis;
+    }
+
+    private static ColdStartMode coldStartModeFromEnv() {
+        String value = Env.get("COLD_START_MODE", "lazy").trim();
+        try {
+            return ColdStartMode.valueOf(value.toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Log.warn("Warning: Invalid COLD_START_MODE environment variable '" + value + "'. Using lazy.");
+            return ColdStartMode.LAZY;
+        }
+    }
+
+    /**
+     * Logs how long the init phase took on the first invocation of this instance, and which
+     * clients were still built during the invocation.
+     */
+    private void logColdStart(Context context) {
+        if (!firstInvocation.compareAndSet(true, false)) {
+            return;
+        }
+        StringBuilder message = new StringBuilder("Cold start: init ").append(initMillis).append(" ms (mode ").append(coldStartMode);
+        if (primingMillis >= 0) {
+            message.append(", priming ").append(primingMillis).append(" ms");
+        }
+        if (restoredAtNanos != 0) {
+            message.append(", restored from snapshot ").append((System.nanoTime() - restoredAtNanos) / 1_000_000).append(" ms ago");
+        }
+        message.append(").");
+        if (coldStartMode == ColdStartMode.LAZY && s3Client == null) {
+            message.append(" Clients are built during this invocation.");
+        }
+        Log.info(message.toString());
+    }
+
+    /**
+     * Builds the S3 client for AWS_REGION (falling back to us-east-1) with the client-side timeouts above.
+     */
+    static S3Client buildS3Client() {
+        S3Client s3Client;
+        String awsRegion = Env.get("AWS_REGION");
 
         // --- S3Client Initialization (remains similar) ---
         ClientOverrideConfiguration s3ClientConfig = ClientOverrideConfiguration.builder()
@@ -68,179 +266,840 @@ public class LambdaHandler implements RequestHandler<ScheduledEvent, Void> {
                 .build();
 
         if (awsRegion != null && !awsRegion.isEmpty()) {
-            this.s3Client = S3Client.builder()
+            s3Client = S3Client.builder()
                     .region(Region.of(awsRegion))
                     .overrideConfiguration(s3ClientConfig)
                     .httpClientBuilder(UrlConnectionHttpClient.builder()
                             .connectionTimeout(Duration.ofMillis(S3_CONNECT_TIMEOUT_MS))
                             .socketTimeout(Duration.ofMillis(S3_READ_TIMEOUT_MS)))
                     .build();
-            System.out.println("S3Client initialized with region: " + awsRegion);
+            Log.info("S3Client initialized with region: " + awsRegion);
         } else {
-            System.err.println("AWS_REGION environment variable not found. Using default Region.US_EAST_1.");
-            this.s3Client = S3Client.builder()
+            Log.warn("AWS_REGION environment variable not found. Using default Region.US_EAST_1.");
+            s3Client = S3Client.builder()
                     .region(Region.US_EAST_1) // Fallback region
                     .overrideConfiguration(s3ClientConfig)
                     .httpClientBuilder(UrlConnectionHttpClient.builder()
                             .connectionTimeout(Duration.ofMillis(S3_CONNECT_TIMEOUT_MS))
                             .socketTimeout(Duration.ofMillis(S3_READ_TIMEOUT_MS)))
                     .build();
-            System.out.println("S3Client initialized with fallback region: " + Region.US_EAST_1.id());
+            Log.info("S3Client initialized with fallback region: " + Region.US_EAST_1.id());
         }
+        return s3Client;
+    }
 
-        // --- Shared HttpClient Initialization for Dropshipzone and Neto APIs ---
-        this.httpClient = HttpClient.newBuilder()
+    /**
+     * Builds the HttpClient shared by the Dropshipzone and Neto APIs. HTTP_VERSION selects HTTP/2
+     * (default: negotiated through ALPN over TLS, so one connection per host carries every request in
+     * flight as separate streams, with HTTP/1.1 as fallback) or 1.1. Idle connections are kept open for
+     * HTTP_KEEPALIVE_SECONDS (default 60) and reused by later requests and warm invocations.
+     */
+    static HttpClient buildHttpClient() {
+        HttpClient.Version version = HttpClient.Version.HTTP_2;
+        String versionSetting = Env.get("HTTP_VERSION", "2").trim();
+        if ("1.1".equals(versionSetting) || "HTTP_1_1".equalsIgnoreCase(versionSetting)) {
+            version = HttpClient.Version.HTTP_1_1;
+        } else if (!"2".equals(versionSetting) && !"HTTP_2".equalsIgnoreCase(versionSetting)) {
+            Log.warn("Warning: Invalid HTTP_VERSION environment variable '" + versionSetting + "'. Using HTTP/2.");
+        }
+        // Read by the JDK when the first HttpClient is built; an explicit -D setting is left as it is
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(intFromEnv("HTTP_KEEPALIVE_SECONDS", 60)));
+        }
+        HttpClient client = HttpClient.newBuilder()
+                .version(version)
                 .connectTimeout(Duration.ofMillis(DropshipzoneAPIClient.CONNECT_TIMEOUT_MS))
                 .build();
-        System.out.println("Shared HttpClient initialized for external APIs.");
+        Log.info("Shared HttpClient initialized for external APIs (" + version + ", keep-alive "
+                + System.getProperty("jdk.httpclient.keepalive.timeout") + " s).");
+        return client;
+    }
+
+    /**
+     * Reads a positive integer setting from the environment, falling back to a default when unset or invalid.
+     */
+    static int intFromEnv(String name, int defaultValue) {
+        String value = Env.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            Log.warn("Warning: Invalid " + name + " environment variable. Using default value " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a non-negative integer setting from the environment, for settings where 0 has a meaning
+     * (e.g. "off"), falling back to a default when unset or invalid.
+     */
+    static int nonNegativeIntFromEnv(String name, int defaultValue) {
+        String value = Env.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        Log.warn("Warning: Invalid " + name + " environment variable. Using default value " + defaultValue + ".");
+        return defaultValue;
     }
 
     @Override
     public Void handleRequest(ScheduledEvent event, Context context) {
-        context.getLogger().log("Lambda function invoked by CloudWatch Event at: " + event.getTime());
+        Log.info("Lambda function invoked by CloudWatch Event at: " + event.getTime());
+        logColdStart(context);
 
         // --- DEBUGGING LOGS FOR ENVIRONMENT VARIABLES (Keep these for now) ---
-        context.getLogger().log("Checking environment variable: S3_INPUT_BUCKET_NAME = " + System.getenv("S3_INPUT_BUCKET_NAME"));
-        context.getLogger().log("Checking environment variable: S3_INPUT_FILE_KEY = " + System.getenv("S3_INPUT_FILE_KEY"));
+        Log.info("Checking environment variable: S3_INPUT_BUCKET_NAME = " + Env.get("S3_INPUT_BUCKET_NAME"));
+        Log.info("Checking environment variable: S3_INPUT_FILE_KEY = " + Env.get("S3_INPUT_FILE_KEY"));
         // --- END DEBUGGING LOGS ---
 
 
-        String s3InputBucketName = System.getenv("S3_INPUT_BUCKET_NAME");
-        String s3InputFileKey = System.getenv("S3_INPUT_FILE_KEY");
-        String s3OutputBucketName = System.getenv("S3_OUTPUT_BUCKET_NAME");
-        String s3OutputFilePrefix = System.getenv("S3_OUTPUT_FILE_PREFIX");
+        String s3InputBucketName = Env.get("S3_INPUT_BUCKET_NAME");
+        String s3InputFileKey = Env.get("S3_INPUT_FILE_KEY");
+        String s3OutputBucketName = Env.get("S3_OUTPUT_BUCKET_NAME");
+        String s3OutputFilePrefix = Env.get("S3_OUTPUT_FILE_PREFIX");
 
-        // New environment variable for price multiplier
-        double priceMultiplier = 1.4; // Default value
+        // Sharded runs: a coordinator invocation (RUN_MODE=coordinator) splits the SKU list and starts one
+        // worker invocation per shard; a worker invocation's event carries its ShardTask
+        ShardTask shardTask;
         try {
-            priceMultiplier = Double.parseDouble(System.getenv().getOrDefault("PRICE_MULTIPLIER", "1.4"));
-        } catch (NumberFormatException e) {
-            context.getLogger().log("Warning: Invalid PRICE_MULTIPLIER environment variable. Using default value 1.4.");
+            shardTask = ShardTask.fromEvent(event);
+        } catch (IllegalArgumentException e) {
+            Log.error("Error: " + e.getMessage() + ". Aborting execution.");
+            throw new RuntimeException("Invalid shard task.", e);
         }
+        String runMode = Env.get("RUN_MODE", "single").trim();
+        boolean coordinator = shardTask == null && "coordinator".equalsIgnoreCase(runMode);
+        // A reconciliation run (RUN_MODE=reconcile) compares with Neto's live items instead of the previous snapshot
+        boolean reconcile = shardTask == null && "reconcile".equalsIgnoreCase(runMode);
+
+        // Pricing: PRICE_MULTIPLIER is the default multiplier, PRICING_RULES optional brand/category overrides
+        PricingEngine pricing = pricingFromEnv(context);
+
+        // Number of items packed into a single Neto UpdateItem request (1 restores per-SKU requests)
+        int netoUpdateBatchSize = intFromEnv("NETO_UPDATE_BATCH_SIZE", DropshipzoneAPIClient.DEFAULT_NETO_UPDATE_BATCH_SIZE);
+
+        // Maximum number of processed SKUs buffered between the Dropshipzone fetch and the Neto updater workers
+        int netoUpdateQueueCapacity = intFromEnv("NETO_UPDATE_QUEUE_CAPACITY", netoUpdateBatchSize * netoUpdateWorkers * 2);
+
+        // Maximum number of Dropshipzone product page requests in flight at once
+        int dropshipzoneMaxInFlight = intFromEnv("DROPSHIPZONE_MAX_IN_FLIGHT", DropshipzoneAPIClient.DEFAULT_DROPSHIPZONE_MAX_IN_FLIGHT);
+
+        // Only push SKUs whose quantity or selling price changed since the previous output snapshot
+        boolean deltaSyncEnabled = Boolean.parseBoolean(Env.get("DELTA_SYNC_ENABLED", "true"));
+
+        // Save progress to S3 when a run does not finish within one invocation, and resume it next time
+        boolean checkpointEnabled = Boolean.parseBoolean(Env.get("CHECKPOINT_ENABLED", "true"));
 
         // New environment variable for max files to keep
-        int s3OutputMaxFiles = Integer.parseInt(System.getenv().getOrDefault("S3_OUTPUT_MAX_FILES", "5"));
+        int s3OutputMaxFiles = nonNegativeIntFromEnv("S3_OUTPUT_MAX_FILES", 5);
+
+        // Output CSVs older than this many days are deleted as well (0 = kept until S3_OUTPUT_MAX_FILES is exceeded)
+        int s3OutputMaxAgeDays = nonNegativeIntFromEnv("S3_OUTPUT_MAX_AGE_DAYS", 0);
+
+        // Gzip the output CSV (written as .csv.gz with Content-Encoding: gzip)
+        boolean outputGzip = Boolean.parseBoolean(Env.get("OUTPUT_CSV_GZIP", "false"));
+
+        // Also write the output as a columnar snapshot (.dsnap), which the next run's delta sync reads instead of the CSV
+        boolean columnarSnapshotEnabled = Boolean.parseBoolean(Env.get("COLUMNAR_SNAPSHOT_ENABLED", "true"));
 
 
         if (s3InputBucketName == null || s3InputFileKey == null || s3InputBucketName.isEmpty() || s3InputFileKey.isEmpty()) {
-            context.getLogger().log("Error: S3_INPUT_BUCKET_NAME or S3_INPUT_FILE_KEY environment variables not set. Aborting execution.");
+            Log.error("Error: S3_INPUT_BUCKET_NAME or S3_INPUT_FILE_KEY environment variables not set. Aborting execution.");
             throw new RuntimeException("S3 input bucket or file key not configured.");
         }
         if (s3OutputBucketName == null || s3OutputFilePrefix == null || s3OutputBucketName.isEmpty() || s3OutputFilePrefix.isEmpty()) {
-             context.getLogger().log("Warning: S3_OUTPUT_BUCKET_NAME or S3_OUTPUT_FILE_PREFIX environment variables not set. Output CSV will not be generated and cleanup will not run.");
+             Log.warn("Warning: S3_OUTPUT_BUCKET_NAME or S3_OUTPUT_FILE_PREFIX environment variables not set. Output CSV will not be generated and cleanup will not run.");
         }
 
 
+        // Stop starting new Dropshipzone and Neto work once the remaining time falls to the reserve
+        int invocationReserveMs = intFromEnv("INVOCATION_RESERVE_MS", DEFAULT_INVOCATION_RESERVE_MS);
+        InvocationDeadline deadline = InvocationDeadline.fromContext(context, invocationReserveMs);
+        Log.info("Remaining time " + context.getRemainingTimeInMillis() + " ms; new work stops after "
+                + deadline.remainingMillis() + " ms (reserve " + invocationReserveMs + " ms).");
+
+        // Phase times, counts and call latencies of this run, written as one EMF line when it ends
+        RunMetrics metrics = new RunMetrics(context.getFunctionName(),
+                coordinator ? "coordinator" : shardTask != null ? "worker" : reconcile ? "reconcile" : "single");
+        metrics.count("RunFailed", 0);
+
         try {
-            // 1. Authenticate with Dropshipzone API
-            String token = DropshipzoneAPIClient.authenticate(httpClient);
+            // Clients not built during init (COLD_START_MODE=lazy) are built here, on first use
+            long phaseStart = System.nanoTime();
+            S3Client s3Client = s3Client();
+            RequestExecutor requestExecutor = requestExecutor();
+            requestExecutor.addRequestListener(metrics);
+
+            // 1. Load SKUs from the S3 CSV file
+            Log.info("Attempting to load SKUs from S3 Input Bucket: " + s3InputBucketName + ", Key: " + s3InputFileKey);
+            List<String> allSkus = DropshipzoneAPIClient.loadSkusFromCSV(s3Client, s3InputBucketName, s3InputFileKey);
+            metrics.endPhase("SkuListLoad", phaseStart);
+            metrics.count("SkusLoaded", allSkus.size());
+            if (allSkus.isEmpty()) {
+                Log.warn("No SKUs found in S3 file: " + s3InputFileKey + ". Aborting execution.");
+                return null;
+            }
+            Log.info("Loaded SKUs from S3: " + allSkus.size() + " SKUs.");
+
+            boolean outputConfigured = s3OutputBucketName != null && !s3OutputBucketName.isEmpty() &&
+                                       s3OutputFilePrefix != null && !s3OutputFilePrefix.isEmpty();
+            if ((coordinator || shardTask != null) && !outputConfigured) {
+                Log.error("Error: Sharded runs need S3_OUTPUT_BUCKET_NAME and S3_OUTPUT_FILE_PREFIX for the shard results. Aborting execution.");
+                throw new RuntimeException("S3 output location not configured for sharded run.");
+            }
+            if (coordinator) {
+                phaseStart = System.nanoTime();
+                runCoordinator(allSkus, s3Client, s3OutputBucketName, s3OutputFilePrefix, s3OutputMaxFiles, s3OutputMaxAgeDays, outputGzip, deadline, context);
+                metrics.endPhase("ShardedRun", phaseStart);
+                return null;
+            }
+            List<String> skuList = allSkus;
+            if (shardTask != null) {
+                if (!shardTask.getSkuFingerprint().equals(RunCheckpoint.fingerprint(allSkus))) {
+                    Log.error("Error: The SKU list changed after the coordinator split it. Aborting " + shardTask + ".");
+                    throw new RuntimeException("SKU list changed during sharded run.");
+                }
+                skuList = shardTask.select(allSkus);
+                Log.info("Worker for " + shardTask + ": " + skuList.size() + " SKUs.");
+            }
+
+            // 2. Authenticate with Dropshipzone API
+            phaseStart = System.nanoTime();
+            // The token of an earlier invocation is reused while it is valid (see DropshipzoneTokenManager)
+            String token = DropshipzoneTokenManager.get(requestExecutor);
+            metrics.endPhase("Auth", phaseStart);
             if (token == null) {
-                context.getLogger().log("Failed to extract Dropshipzone token. Aborting execution.");
+                Log.error("Failed to extract Dropshipzone token. Aborting execution.");
                 throw new RuntimeException("Authentication failed.");
             }
-            context.getLogger().log("Token acquired successfully.");
+            Log.info("Token acquired successfully.");
 
-            // 2. Load SKUs from the S3 CSV file
-            context.getLogger().log("Attempting to load SKUs from S3 Input Bucket: " + s3InputBucketName + ", Key: " + s3InputFileKey);
-            List<String> skuList = DropshipzoneAPIClient.loadSkusFromCSV(s3Client, s3InputBucketName, s3InputFileKey);
-            if (skuList.isEmpty()) {
-                context.getLogger().log("No SKUs found in S3 file: " + s3InputFileKey + ". Aborting execution.");
-                return null;
+            // 3. Load the previous run's snapshot so only changed and new SKUs are sent to Neto. A reconciliation
+            // run instead exports Neto's items while Dropshipzone is fetched, and only sends the SKUs that differ.
+            SnapshotDiff snapshotDiff = null;
+            CompletableFuture<NetoItemIndex> netoExport = null;
+            if (reconcile) {
+                int netoExportPageSize = intFromEnv("NETO_EXPORT_PAGE_SIZE", DropshipzoneAPIClient.DEFAULT_NETO_EXPORT_PAGE_SIZE);
+                Log.info("Reconciliation run: exporting Neto items (page size " + netoExportPageSize + ") to compare with.");
+                // Runs on an updater thread; the pipeline gets no work before the export is joined
+                netoExport = CompletableFuture.supplyAsync(() -> {
+                    long exportStart = System.nanoTime();
+                    try {
+                        NetoItemIndex netoItems = DropshipzoneAPIClient.exportNetoItems(requestExecutor, netoExportPageSize);
+                        metrics.endPhase("NetoExport", exportStart);
+                        return netoItems;
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CompletionException(e);
+                    }
+                }, executorService);
+            } else if (deltaSyncEnabled && outputConfigured) {
+                phaseStart = System.nanoTime();
+                snapshotDiff = new SnapshotDiff(loadPreviousSnapshot(s3Client, s3OutputBucketName, s3OutputFilePrefix));
+                metrics.endPhase("SnapshotLoad", phaseStart);
+                Log.info("Delta sync enabled. Previous snapshot holds " + snapshotDiff.getPreviousSize() + " SKUs.");
+            } else {
+                Log.info("Delta sync disabled or no output location configured. Sending all SKUs to Neto.");
+            }
+
+            // 4. Resume the run an earlier invocation could not finish, or start a new one
+            RunCheckpoint checkpoint = null;
+            String checkpointKey = outputConfigured ? s3OutputFilePrefix + CHECKPOINT_KEY_SUFFIX : null;
+            if (checkpointEnabled && outputConfigured && shardTask == null && !reconcile) {
+                checkpoint = resumeOrStartRun(s3Client, s3OutputBucketName, checkpointKey, RunCheckpoint.fingerprint(skuList), context);
             }
-            context.getLogger().log("Loaded SKUs from S3: " + skuList.size() + " SKUs.");
 
-            // 3. Prepare a Map to collect all processed SKU data (SKU -> {quantity, cost, selling_price})
-            Map<String, Map<String, String>> finalProcessedSkuData = new HashMap<>();
+            // Prepare the store collecting all processed SKU data (SKU -> quantity, cost, selling price)
+            SkuRecordStore skuRecords = new SkuRecordStore(skuList.size());
+            if (checkpoint != null) {
+                SkuRecordStore resumedRecords = checkpoint.getRecords();
+                for (int record = 0; record < resumedRecords.size(); record++) {
+                    skuRecords.putFrom(resumedRecords, record);
+                }
+            }
 
-            // 4. Fetch stock data from Dropshipzone API (fetchStock now populates finalProcessedSkuData directly)
-            context.getLogger().log("Starting to fetch and process stock data from Dropshipzone API...");
-            // Pass the priceMultiplier to fetchStock
-            DropshipzoneAPIClient.fetchStock(httpClient, token, skuList, finalProcessedSkuData, priceMultiplier);
-            context.getLogger().log("Finished fetching and processing stock data from Dropshipzone API. Total unique SKUs processed: " + finalProcessedSkuData.size());
+            // 5. Fetch from Dropshipzone and stream each processed SKU straight into the Neto updater workers.
+            // The bounded queue blocks the fetch when Neto falls behind, so both network phases overlap.
+            Log.info("\n--- Fetching from Dropshipzone and updating Neto Items in Parallel (batch size " + netoUpdateBatchSize + ") ---");
+            phaseStart = System.nanoTime();
+            NetoUpdatePipeline netoPipeline = new NetoUpdatePipeline(requestExecutor, skuRecords, executorService,
+                    netoUpdateWorkers, netoUpdateBatchSize, netoUpdateQueueCapacity, deadline);
+            netoPipeline.start();
 
-            // 5. Update Neto items in parallel
-            context.getLogger().log("\n--- Updating Neto Items in Parallel ---");
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
-            for (Map<String, String> entry : finalProcessedSkuData.values()) {
-                String sku = entry.get("sku");
-                int quantity = Integer.parseInt(entry.get("quantity"));
-                String cost = entry.get("cost");
-                String sellingPrice = entry.get("selling_price");
+            SnapshotDiff diff = snapshotDiff;
+            // SKUs Dropshipzone did not return whose stock is still set in Neto; cleared in one pass after the fetch
+            List<Integer> notFoundRecords = Collections.synchronizedList(new ArrayList<>());
+            Set<String> failedNetoSkus = Collections.emptySet();
+            int skippedPages;
+            boolean pipelineFinished = false;
+            // Snapshot SKUs no longer listed (a removal an input change could not complete) are set to 0 and dropped
+            List<Integer> removedRecords = diff != null && shardTask == null
+                    ? diff.putRemoved(skuRecords, new HashSet<>(skuList)) : Collections.emptyList();
+            try {
+                for (int record : removedRecords) {
+                    netoPipeline.submit(record);
+                }
+                if (checkpoint != null) {
+                    // Updates an earlier invocation did not get to send go first
+                    for (String pendingSku : checkpoint.getPendingNetoSkus()) {
+                        int record = skuRecords.indexOf(pendingSku);
+                        if (record >= 0 && skuRecords.isNotFound(record)) {
+                            notFoundRecords.add(record);
+                        } else if (record >= 0) {
+                            netoPipeline.submit(record);
+                        }
+                    }
+                }
+                skippedPages = DropshipzoneAPIClient.fetchStock(requestExecutor, skuList, skuRecords, pricing, dropshipzoneMaxInFlight, reconcile ? null : record -> {
+                    if (diff == null || diff.needsUpdate(skuRecords, record)) {
+                        if (Log.isDebugEnabled()) {
+                            Log.debug("Prepared for Neto Update/CSV Output: SKU=" + skuRecords.sku(record)
+                                + ", Quantity=" + skuRecords.quantity(record)
+                                + ", Cost=" + SkuRecordStore.formatCents(skuRecords.costCents(record))
+                                + ", SellingPrice=" + SkuRecordStore.formatCents(skuRecords.priceCents(record)));
+                        }
+                        netoPipeline.submit(record);
+                    }
+                }, record -> {
+                    if (!reconcile && (diff == null || diff.needsStockCleared(skuRecords, record))) {
+                        notFoundRecords.add(record);
+                    }
+                }, deadline, checkpoint != null ? checkpoint.getCompletedBatches() : null);
+                if (netoExport != null) {
+                    // Merge-join the Dropshipzone data with Neto's items; only the SKUs that drifted are sent
+                    NetoItemIndex netoItems = awaitNetoExport(netoExport, deadline);
+                    NetoItemIndex.Reconciliation reconciliation = netoItems.reconcile(skuRecords);
+                    Log.info("Reconciliation against " + netoItems.size() + " Neto items: " + reconciliation);
+                    metrics.count("NetoItemsExported", netoItems.size());
+                    metrics.count("NetoSkusDrifted", reconciliation.getUpdates().size() + reconciliation.getStockToClear().size());
+                    metrics.count("NetoSkusMissing", reconciliation.getMissingInNetoCount());
+                    for (int record : reconciliation.getUpdates()) {
+                        netoPipeline.submit(record);
+                    }
+                    notFoundRecords.addAll(reconciliation.getStockToClear());
+                }
+            } catch (IOException | RuntimeException e) {
+                // Keep the batches that did complete, so the next invocation does not fetch them again
+                failedNetoSkus = netoPipeline.finish();
+                pipelineFinished = true;
+                if (checkpoint != null) {
+                    Set<String> pendingNetoSkus = new LinkedHashSet<>(netoPipeline.getSkippedSkus());
+                    pendingNetoSkus.addAll(skuSet(skuRecords, notFoundRecords));
+                    saveCheckpoint(checkpoint, s3Client, s3OutputBucketName, checkpointKey, skuRecords, failedNetoSkus, pendingNetoSkus, context);
+                }
+                throw e;
+            } finally {
+                // Let the workers flush whatever was already queued, even if the fetch failed part-way
+                if (!pipelineFinished) {
+                    failedNetoSkus = netoPipeline.finish();
+                }
+            }
+            metrics.endPhase("FetchAndUpdate", phaseStart);
+            Log.info("Finished fetching and processing stock data from Dropshipzone API. Total unique SKUs processed: " + skuRecords.size());
+            if (diff != null) {
+                Log.info("Delta sync result: " + diff);
+            }
+            Set<String> skippedNetoSkus = new LinkedHashSet<>(netoPipeline.getSkippedSkus());
+            failedNetoSkus = new LinkedHashSet<>(failedNetoSkus);
 
-                context.getLogger().log(String.format("Prepared for Neto Update/CSV Output: SKU=%s, Quantity=%d, Cost=%s, SellingPrice=%s", sku, quantity, cost, sellingPrice));
+            // Set the stock of the SKUs Dropshipzone did not return to 0 in Neto, all in one pass
+            int clearedNetoSkus = 0;
+            if (!notFoundRecords.isEmpty()) {
+                List<Integer> clearRecords = new ArrayList<>(notFoundRecords);
+                if (deadline.isExpired()) {
+                    skippedNetoSkus.addAll(skuSet(skuRecords, clearRecords));
+                } else {
+                    phaseStart = System.nanoTime();
+                    Set<String> failedClears = DropshipzoneAPIClient.clearNetoStock(requestExecutor, skuRecords, clearRecords, netoUpdateBatchSize);
+                    metrics.endPhase("NetoStockClear", phaseStart);
+                    failedNetoSkus.addAll(failedClears);
+                    clearedNetoSkus = clearRecords.size() - failedClears.size();
+                    Log.info("Set the stock of " + clearedNetoSkus + " SKUs not found in the Dropshipzone response to 0 in Neto. Failed SKUs: " + failedClears.size());
+                }
+            }
+            metrics.count("SkusProcessed", skuRecords.size());
+            metrics.count("SkusNotFound", skuRecords.notFoundCount());
+            metrics.count("NetoSkusCleared", clearedNetoSkus);
+            metrics.count("NetoSkusSent", netoPipeline.getSubmittedCount());
+            metrics.count("NetoRequests", netoPipeline.getRequestCount());
+            metrics.count("NetoSkusFailed", failedNetoSkus.size());
+            metrics.count("ProductPagesSkipped", skippedPages);
+            metrics.count("NetoUpdatesSkipped", skippedNetoSkus.size());
+            Log.info("All SKUs processed for update in Neto. Sent " + netoPipeline.getSubmittedCount() + " SKUs using "
+                    + netoPipeline.getRequestCount() + " UpdateItem batches. Failed SKUs: " + failedNetoSkus.size());
 
-                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                    DropshipzoneAPIClient.updateNetoItem(httpClient, sku, quantity, sellingPrice);
-                }, executorService);
+            Set<String> runFailedNetoSkus = new HashSet<>(failedNetoSkus);
+            if (skippedPages > 0 || !skippedNetoSkus.isEmpty()) {
+                Log.warn("Warning: Invocation deadline reached. Skipped " + skippedPages + " Dropshipzone pages and "
+                        + skippedNetoSkus.size() + " Neto updates.");
+                if (checkpoint != null) {
+                    // Not finished: save progress instead of the output CSV; the next invocation resumes from here
+                    saveCheckpoint(checkpoint, s3Client, s3OutputBucketName, checkpointKey, skuRecords, failedNetoSkus, skippedNetoSkus, context);
+                    Log.info("Run not finished in this invocation. Progress saved to s3://" + s3OutputBucketName + "/" + checkpointKey
+                            + "; the next invocation resumes it.");
+                    return null;
+                }
+                // Without a checkpoint, the skipped SKUs are retried by the next run's delta sync
+                runFailedNetoSkus.addAll(skippedNetoSkus);
+            }
+            if (checkpoint != null) {
+                runFailedNetoSkus.addAll(checkpoint.getFailedNetoSkus());
+            }
 
-                futures.add(future);
+            // The output CSV is the next run's snapshot. Keep the last values Neto accepted for SKUs that
+            // failed to update, so the next delta sync sees them as changed (or new) and retries them.
+            // Removed SKUs are left out once Neto has accepted their zero stock.
+            for (int record : removedRecords) {
+                if (!runFailedNetoSkus.contains(skuRecords.sku(record))) {
+                    skuRecords.exclude(record);
+                }
+            }
+            if (diff != null) {
+                for (String failedSku : runFailedNetoSkus) {
+                    diff.restorePrevious(skuRecords, failedSku);
+                }
+            } else if (reconcile) {
+                // Left out of the snapshot, the next delta sync sends them as new
+                for (String failedSku : runFailedNetoSkus) {
+                    int record = skuRecords.indexOf(failedSku);
+                    if (record >= 0) {
+                        skuRecords.exclude(record);
+                    }
+                }
             }
 
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-            context.getLogger().log("All SKUs processed for update in Neto.");
+            // 6. Generate and upload new CSV to S3 (a shard worker writes its part for the coordinator to merge)
+            phaseStart = System.nanoTime();
+            if (shardTask != null) {
+                String resultKey = shardTask.resultKey(s3OutputFilePrefix);
+                uploadCsvToS3(s3Client, s3OutputBucketName, resultKey, false, csv -> csv.writeRecords(skuRecords));
+                metrics.endPhase("CsvUpload", phaseStart);
+                Log.info("Result of " + shardTask + " uploaded to s3://" + s3OutputBucketName + "/" + resultKey);
+            } else if (outputConfigured) {
+                Log.info("\n--- Generating and Uploading Output CSV to S3 ---");
+                String outputS3Key = OutputHistory.newOutputKey(s3OutputFilePrefix, outputGzip);
+                uploadCsvToS3(s3Client, s3OutputBucketName, outputS3Key, outputGzip, csv -> csv.writeRecords(skuRecords));
+                metrics.endPhase("CsvUpload", phaseStart);
+                Log.info("Output CSV uploaded to s3://" + s3OutputBucketName + "/" + outputS3Key);
 
-            // 6. Generate and upload new CSV to S3
-            if (s3OutputBucketName != null && !s3OutputBucketName.isEmpty() &&
-                s3OutputFilePrefix != null && !s3OutputFilePrefix.isEmpty()) {
-                context.getLogger().log("\n--- Generating and Uploading Output CSV to S3 ---");
-                String csvContent = generateCsvContent(new ArrayList<>(finalProcessedSkuData.values()));
-                String outputS3Key = s3OutputFilePrefix + "_" +
-                                      DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").withZone(ZoneOffset.UTC).format(Instant.now()) +
-                                      ".csv";
-                uploadCsvToS3(s3Client, s3OutputBucketName, outputS3Key, csvContent);
-                context.getLogger().log("Output CSV uploaded to s3://" + s3OutputBucketName + "/" + outputS3Key);
+                // 7. Clean up old files in the output bucket, off the critical path: the retention pass runs on
+                // an updater thread (idle now that the Neto pipeline has finished) while the snapshot is written
+                long cleanupStart = System.nanoTime();
+                OutputHistory outputHistory = new OutputHistory(s3Client, s3OutputBucketName, s3OutputFilePrefix);
+                CompletableFuture<Integer> cleanup = CompletableFuture.supplyAsync(
+                        () -> outputHistory.applyRetention(s3OutputMaxFiles, s3OutputMaxAgeDays), executorService);
 
-                // 7. Clean up old files in the output bucket
-                cleanOldS3Files(s3Client, s3OutputBucketName, s3OutputFilePrefix, s3OutputMaxFiles);
-                context.getLogger().log("S3 cleanup complete for bucket " + s3OutputBucketName + " with prefix " + s3OutputFilePrefix);
+                if (columnarSnapshotEnabled) {
+                    phaseStart = System.nanoTime();
+                    uploadColumnarSnapshot(s3Client, s3OutputBucketName, OutputHistory.snapshotKeyFor(outputS3Key), skuRecords);
+                    metrics.endPhase("SnapshotUpload", phaseStart);
+                }
+
+                // The run is complete, so there is nothing left to resume
+                if (checkpoint != null) {
+                    RunCheckpoint.delete(s3Client, s3OutputBucketName, checkpointKey);
+                }
+
+                awaitCleanup(cleanup, context);
+                metrics.endPhase("Cleanup", cleanupStart);
+                Log.info("S3 cleanup complete for bucket " + s3OutputBucketName + " with prefix " + s3OutputFilePrefix);
             }
 
 
         } catch (Exception e) {
-            context.getLogger().log("An unhandled error occurred during Lambda execution:");
-            e.printStackTrace();
+            metrics.count("RunFailed", 1);
+            Log.error("An unhandled error occurred during Lambda execution:", e);
             throw new RuntimeException("Lambda execution failed: " + e.getMessage(), e);
         } finally {
-            executorService.shutdown();
+            RequestExecutor executor = requestExecutor;
+            if (executor != null) {
+                executor.removeRequestListener(metrics);
+            }
+            metrics.emit();
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the Neto export of a reconciliation run, up to the invocation deadline.
+     *
+     * @throws IOException If the export failed or did not finish in time.
+     */
+    private static NetoItemIndex awaitNetoExport(CompletableFuture<NetoItemIndex> netoExport, InvocationDeadline deadline) throws IOException, InterruptedException {
+        try {
+            return netoExport.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            throw new IOException("Neto export failed: " + cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            netoExport.cancel(true);
+            throw new IOException("Neto export did not finish before the invocation deadline.", e);
+        }
+    }
+
+    /**
+     * @return The SKUs of the records, in order.
+     */
+    private static Set<String> skuSet(SkuRecordStore skuRecords, List<Integer> records) {
+        Set<String> skus = new LinkedHashSet<>();
+        synchronized (records) {
+            for (int record : records) {
+                skus.add(skuRecords.sku(record));
+            }
+        }
+        return skus;
+    }
+
+    /**
+     * Compiles PRICE_MULTIPLIER and PRICING_RULES. An invalid multiplier falls back to 1.4; invalid
+     * pricing rules abort the invocation.
+     */
+    private static PricingEngine pricingFromEnv(Context context) {
+        try {
+            return PricingEngine.compile(Env.get("PRICE_MULTIPLIER", "1.4"), Env.get("PRICING_RULES"));
+        } catch (IllegalArgumentException e) {
+            if (Env.get("PRICING_RULES") != null && !Env.get("PRICING_RULES").trim().isEmpty()) {
+                // Guessing prices from a broken rule table is worse than not running
+                Log.error("Error: Invalid pricing configuration: " + e.getMessage() + ". Aborting execution.");
+                throw new RuntimeException("Pricing rules not valid.", e);
+            }
+            Log.warn("Warning: Invalid PRICE_MULTIPLIER environment variable. Using default value 1.4.");
+            return PricingEngine.compile("1.4");
+        }
+    }
+
+    /**
+     * Handles a new version of the SKU input file (see S3InputEventHandler) without a full run: the new
+     * list is compared with the latest output snapshot, SKUs added to the list are fetched from
+     * Dropshipzone and pushed to Neto straight away, and SKUs no longer listed are set to quantity 0
+     * in Neto (keeping their last selling price). Added SKUs Dropshipzone does not return, and removed
+     * SKUs it did not return before, only have their stock set to 0.
+     *
+     * The result is written as a new output (CSV and columnar snapshot): the previous snapshot without
+     * the removed SKUs, plus the added ones. SKUs whose Neto update failed are left as they were in
+     * the previous snapshot, so the next scheduled run (or input change) retries them: a scheduled run
+     * with delta sync sets snapshot SKUs that are no longer listed to 0 (see SnapshotDiff#putRemoved),
+     * and sends failed added SKUs as new. Without an
+     * output location or an earlier output there is nothing to compare with; the change is then left
+     * to the next scheduled run.
+     *
+     * @param bucketName The bucket of the changed input file.
+     * @param key The key of the changed input file.
+     * @param context The Lambda context.
+     */
+    void handleInputChange(String bucketName, String key, Context context) {
+        Log.info("SKU input file changed: s3://" + bucketName + "/" + key);
+        logColdStart(context);
+
+        String s3OutputBucketName = Env.get("S3_OUTPUT_BUCKET_NAME");
+        String s3OutputFilePrefix = Env.get("S3_OUTPUT_FILE_PREFIX");
+        if (s3OutputBucketName == null || s3OutputFilePrefix == null || s3OutputBucketName.isEmpty() || s3OutputFilePrefix.isEmpty()) {
+            Log.warn("Warning: S3_OUTPUT_BUCKET_NAME or S3_OUTPUT_FILE_PREFIX not set, so there is no previous snapshot to compare the new SKU list with. "
+                    + "The change is picked up by the next scheduled run.");
+            return;
+        }
+
+        PricingEngine pricing = pricingFromEnv(context);
+        int netoUpdateBatchSize = intFromEnv("NETO_UPDATE_BATCH_SIZE", DropshipzoneAPIClient.DEFAULT_NETO_UPDATE_BATCH_SIZE);
+        int netoUpdateQueueCapacity = intFromEnv("NETO_UPDATE_QUEUE_CAPACITY", netoUpdateBatchSize * netoUpdateWorkers * 2);
+        int dropshipzoneMaxInFlight = intFromEnv("DROPSHIPZONE_MAX_IN_FLIGHT", DropshipzoneAPIClient.DEFAULT_DROPSHIPZONE_MAX_IN_FLIGHT);
+        InvocationDeadline deadline = InvocationDeadline.fromContext(context, intFromEnv("INVOCATION_RESERVE_MS", DEFAULT_INVOCATION_RESERVE_MS));
+
+        RunMetrics metrics = new RunMetrics(context.getFunctionName(), "incremental");
+        metrics.count("RunFailed", 0);
+        try {
+            long phaseStart = System.nanoTime();
+            S3Client s3Client = s3Client();
+            RequestExecutor requestExecutor = requestExecutor();
+            requestExecutor.addRequestListener(metrics);
+
+            List<String> skus = DropshipzoneAPIClient.loadSkusFromCSV(s3Client, bucketName, key);
+            metrics.endPhase("SkuListLoad", phaseStart);
+            metrics.count("SkusLoaded", skus.size());
+
+            phaseStart = System.nanoTime();
+            SkuRecordStore previous = loadPreviousSnapshot(s3Client, s3OutputBucketName, s3OutputFilePrefix);
+            metrics.endPhase("SnapshotLoad", phaseStart);
+            if (previous.includedCount() == 0) {
+                Log.info("No previous output to compare the new SKU list with. The change is picked up by the next scheduled run.");
+                return;
+            }
+
+            // Added: listed now but not in the snapshot. Removed: in the snapshot but no longer listed.
+            Set<String> listed = new HashSet<>(skus);
+            List<String> added = new ArrayList<>();
+            for (String sku : skus) {
+                if (previous.indexOf(sku) < 0) {
+                    added.add(sku);
+                }
+            }
+            List<Integer> removed = new ArrayList<>();
+            for (int record = 0; record < previous.size(); record++) {
+                if (previous.isIncluded(record) && !listed.contains(previous.sku(record))) {
+                    removed.add(record);
+                }
+            }
+            metrics.count("SkusAdded", added.size());
+            metrics.count("SkusRemoved", removed.size());
+            Log.info("SKU list change: " + added.size() + " added, " + removed.size() + " removed (previous snapshot "
+                    + previous.includedCount() + " SKUs, new list " + skus.size() + " SKUs).");
+            if (added.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            SkuRecordStore skuRecords = new SkuRecordStore(added.size() + removed.size());
+            int skippedPages = 0;
+            phaseStart = System.nanoTime();
+            NetoUpdatePipeline netoPipeline = new NetoUpdatePipeline(requestExecutor, skuRecords, executorService,
+                    netoUpdateWorkers, netoUpdateBatchSize, netoUpdateQueueCapacity, deadline);
+            netoPipeline.start();
+            List<Integer> notFoundRecords = Collections.synchronizedList(new ArrayList<>());
+            Set<String> failedNetoSkus;
             try {
-                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                    context.getLogger().log("Executor service did not terminate gracefully within 5 seconds.");
+                for (int record : removed) {
+                    if (previous.isNotFound(record)) {
+                        // No selling price known to keep
+                        notFoundRecords.add(skuRecords.putFrom(previous, record));
+                    } else {
+                        netoPipeline.submit(skuRecords.put(previous.sku(record), 0, previous.costCents(record), previous.priceCents(record)));
+                    }
                 }
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                context.getLogger().log("Executor service termination interrupted.");
+                if (!added.isEmpty()) {
+                    long authStart = System.nanoTime();
+                    if (DropshipzoneTokenManager.get(requestExecutor) == null) {
+                        Log.warn("Failed to extract Dropshipzone token. Added SKUs are left to the next scheduled run.");
+                    } else {
+                        metrics.endPhase("Auth", authStart);
+                        skippedPages = DropshipzoneAPIClient.fetchStock(requestExecutor, added, skuRecords, pricing, dropshipzoneMaxInFlight,
+                                netoPipeline::submit, notFoundRecords::add, deadline, null);
+                    }
+                }
+            } finally {
+                failedNetoSkus = netoPipeline.finish();
+            }
+            metrics.endPhase("FetchAndUpdate", phaseStart);
+            Set<String> unsentSkus = new HashSet<>(failedNetoSkus);
+            unsentSkus.addAll(netoPipeline.getSkippedSkus());
+            if (!notFoundRecords.isEmpty()) {
+                phaseStart = System.nanoTime();
+                Set<String> failedClears = DropshipzoneAPIClient.clearNetoStock(requestExecutor, skuRecords, notFoundRecords, netoUpdateBatchSize);
+                metrics.endPhase("NetoStockClear", phaseStart);
+                unsentSkus.addAll(failedClears);
+                metrics.count("NetoSkusCleared", notFoundRecords.size() - failedClears.size());
+                Log.info("Set the stock of " + (notFoundRecords.size() - failedClears.size())
+                        + " SKUs not found in the Dropshipzone response to 0 in Neto. Failed SKUs: " + failedClears.size());
+            }
+            metrics.count("SkusProcessed", skuRecords.size());
+            metrics.count("SkusNotFound", skuRecords.notFoundCount());
+            metrics.count("NetoSkusSent", netoPipeline.getSubmittedCount());
+            metrics.count("NetoRequests", netoPipeline.getRequestCount());
+            metrics.count("NetoSkusFailed", failedNetoSkus.size());
+            metrics.count("ProductPagesSkipped", skippedPages);
+            metrics.count("NetoUpdatesSkipped", netoPipeline.getSkippedSkus().size());
+            Log.info("Sent " + netoPipeline.getSubmittedCount() + " SKUs to Neto (" + removed.size() + " set to 0) using "
+                    + netoPipeline.getRequestCount() + " UpdateItem batches. Not updated: " + unsentSkus.size());
+
+            // The new output: the previous snapshot without the removed SKUs Neto accepted, plus the added SKUs Neto accepted
+            SkuRecordStore output = new SkuRecordStore(skus.size());
+            for (int record = 0; record < previous.size(); record++) {
+                String sku = previous.sku(record);
+                if (previous.isIncluded(record) && (listed.contains(sku) || unsentSkus.contains(sku))) {
+                    output.putFrom(previous, record);
+                }
+            }
+            for (int record = 0; record < skuRecords.size(); record++) {
+                String sku = skuRecords.sku(record);
+                if (skuRecords.isIncluded(record) && listed.contains(sku) && !unsentSkus.contains(sku)) {
+                    output.putFrom(skuRecords, record);
+                }
+            }
+
+            phaseStart = System.nanoTime();
+            boolean outputGzip = Boolean.parseBoolean(Env.get("OUTPUT_CSV_GZIP", "false"));
+            String outputS3Key = OutputHistory.newOutputKey(s3OutputFilePrefix, outputGzip);
+            uploadCsvToS3(s3Client, s3OutputBucketName, outputS3Key, outputGzip, csv -> csv.writeRecords(output));
+            if (Boolean.parseBoolean(Env.get("COLUMNAR_SNAPSHOT_ENABLED", "true"))) {
+                uploadColumnarSnapshot(s3Client, s3OutputBucketName, OutputHistory.snapshotKeyFor(outputS3Key), output);
+            }
+            metrics.endPhase("CsvUpload", phaseStart);
+            Log.info("Output CSV uploaded to s3://" + s3OutputBucketName + "/" + outputS3Key);
+
+            phaseStart = System.nanoTime();
+            new OutputHistory(s3Client, s3OutputBucketName, s3OutputFilePrefix).applyRetention(
+                    nonNegativeIntFromEnv("S3_OUTPUT_MAX_FILES", 5), nonNegativeIntFromEnv("S3_OUTPUT_MAX_AGE_DAYS", 0));
+            metrics.endPhase("Cleanup", phaseStart);
+        } catch (Exception e) {
+            metrics.count("RunFailed", 1);
+            Log.error("An unhandled error occurred while handling the SKU input change:", e);
+            throw new RuntimeException("Lambda execution failed: " + e.getMessage(), e);
+        } finally {
+            RequestExecutor executor = requestExecutor;
+            if (executor != null) {
+                executor.removeRequestListener(metrics);
             }
+            metrics.emit();
+        }
+    }
+
+    /**
+     * Waits for the retention pass started after the upload, but not into the time Lambda needs to
+     * return: a pass still running then is left to finish (or be redone by the next run).
+     */
+    private static void awaitCleanup(CompletableFuture<Integer> cleanup, Context context) {
+        long waitMillis = Math.max(0, context.getRemainingTimeInMillis() - CLEANUP_WAIT_MARGIN_MS);
+        try {
+            cleanup.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.warn("Warning: S3 cleanup still running at the end of the invocation; it is completed by a later run.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.warn("Warning: S3 cleanup failed: " + e.getCause());
         }
-        return null;
     }
 
+    /**
+     * Runs the SKU list as SHARD_COUNT shards (split by SHARD_STRATEGY, range or hash), one worker
+     * invocation each, then uploads the merged output CSV and cleans up old ones as a single run would.
+     */
+    private void runCoordinator(List<String> skuList, S3Client s3Client, String bucketName, String prefix, int maxFilesToKeep,
+                                int maxAgeDays, boolean gzip, InvocationDeadline deadline, Context context) throws IOException {
+        int shardCount = intFromEnv("SHARD_COUNT", DEFAULT_SHARD_COUNT);
+        ShardTask.Strategy strategy = ShardTask.Strategy.RANGE;
+        try {
+            strategy = ShardTask.Strategy.parse(Env.get("SHARD_STRATEGY", "range"));
+        } catch (IllegalArgumentException e) {
+            Log.warn("Warning: Invalid SHARD_STRATEGY environment variable. Using range.");
+        }
+        Log.info("\n--- Coordinating sharded run: " + skuList.size() + " SKUs in " + shardCount + " shards by " + strategy + " ---");
+
+        // The shard results are merged straight into the output upload
+        ShardCoordinator shardCoordinator = new ShardCoordinator(s3Client, shardInvoker(context), bucketName, prefix);
+        ShardTask.Strategy splitBy = strategy;
+        String outputS3Key = OutputHistory.newOutputKey(prefix, gzip);
+        uploadCsvToS3(s3Client, bucketName, outputS3Key, gzip, csv -> shardCoordinator.run(skuList, shardCount, splitBy, deadline,
+                () -> loadPreviousSnapshot(s3Client, bucketName, prefix), csv));
+        Log.info("Merged output CSV uploaded to s3://" + bucketName + "/" + outputS3Key);
+        new OutputHistory(s3Client, bucketName, prefix).applyRetention(maxFilesToKeep, maxAgeDays);
+    }
+
+    /**
+     * @return The invoker for shard workers: SHARD_INVOKER=lambda (default) invokes WORKER_FUNCTION_NAME
+     * (this function unless set); in-process runs the workers in this JVM.
+     */
+    private ShardInvoker shardInvoker(Context context) {
+        if ("in-process".equalsIgnoreCase(Env.get("SHARD_INVOKER", "lambda").trim())) {
+            InProcessShardInvoker invoker = inProcessShardInvoker;
+            if (invoker == null) {
+                invoker = new InProcessShardInvoker(() -> new LambdaHandler(s3Client()), context);
+                inProcessShardInvoker = invoker;
+            }
+            invoker.setContext(context);
+            return invoker;
+        }
+        LambdaShardInvoker invoker = lambdaShardInvoker;
+        if (invoker == null) {
+            invoker = LambdaShardInvoker.create(Env.get("WORKER_FUNCTION_NAME", context.getFunctionName()));
+            lambdaShardInvoker = invoker;
+        }
+        return invoker;
+    }
+
+    /**
+     * Loads the checkpoint of an unfinished run and returns it if it belongs to the current SKU list
+     * and is recent enough (CHECKPOINT_MAX_AGE_HOURS); otherwise starts a new run.
+     */
+    private RunCheckpoint resumeOrStartRun(S3Client s3Client, String bucketName, String checkpointKey, String fingerprint, Context context) {
+        RunCheckpoint saved = RunCheckpoint.load(s3Client, bucketName, checkpointKey);
+        if (saved != null) {
+            long ageMillis = System.currentTimeMillis() - saved.getStartedAtMillis();
+            long maxAgeMillis = intFromEnv("CHECKPOINT_MAX_AGE_HOURS", DEFAULT_CHECKPOINT_MAX_AGE_HOURS) * 3_600_000L;
+            if (!saved.getFingerprint().equals(fingerprint)) {
+                Log.info("Found a run checkpoint for a different SKU list. Starting a new run.");
+            } else if (ageMillis > maxAgeMillis) {
+                Log.info("Found a run checkpoint from " + (ageMillis / 60000) + " minutes ago, older than the limit. Starting a new run.");
+            } else {
+                Log.info("Resuming run started " + (ageMillis / 60000) + " minutes ago: " + saved.getCompletedBatches().cardinality()
+                        + " SKU batches already fetched, " + saved.getRecords().size() + " SKUs processed, "
+                        + saved.getPendingNetoSkus().size() + " Neto updates pending.");
+                return saved;
+            }
+        }
+        return new RunCheckpoint(fingerprint);
+    }
+
+    /**
+     * Records this invocation's Neto results in the checkpoint and saves it. A failed save is logged;
+     * the next invocation then starts the run over.
+     */
+    private void saveCheckpoint(RunCheckpoint checkpoint, S3Client s3Client, String bucketName, String checkpointKey,
+                                SkuRecordStore skuRecords, Set<String> failedNetoSkus, Set<String> skippedNetoSkus, Context context) {
+        checkpoint.getFailedNetoSkus().addAll(failedNetoSkus);
+        checkpoint.getPendingNetoSkus().clear();
+        checkpoint.getPendingNetoSkus().addAll(skippedNetoSkus);
+        try {
+            checkpoint.save(s3Client, bucketName, checkpointKey, skuRecords);
+        } catch (IOException e) {
+            Log.error("Error: " + e.getMessage() + " The next invocation will start the run over.", e);
+        }
+    }
+
+    // Header of the output CSV (and of checkpoints and shard results, which use the same format)
+    static final String CSV_HEADER = "SKU,Quantity,Cost,Selling Price,Status";
+
     /**
      * Generates CSV content from the processed SKU data.
-     * The CSV will have a header: SKU,Quantity,Cost,Selling Price
-     * @param data The list of maps containing SKU, quantity, cost, and selling price.
+     * The CSV will have a header: SKU,Quantity,Cost,Selling Price,Status
+     * The output CSV itself is streamed with CsvStreamWriter; this is for callers that need a String.
+     * @param skuRecords The store holding SKU, quantity, cost, and selling price. Excluded records are skipped.
      * @return A String containing the CSV content.
      */
-    private String generateCsvContent(List<Map<String, String>> data) {
-        StringBuilder csvBuilder = new StringBuilder();
-        csvBuilder.append("SKU,Quantity,Cost,Selling Price\n");
+    static String generateCsvContent(SkuRecordStore skuRecords) {
+        int size = skuRecords.size();
+        StringBuilder csvBuilder = new StringBuilder(32 + size * 40);
+        csvBuilder.append(CSV_HEADER).append('\n');
 
-        for (Map<String, String> entry : data) {
-            String sku = entry.get("sku");
-            String quantity = entry.get("quantity");
-            String cost = entry.get("cost");
-            String sellingPrice = entry.get("selling_price");
-            csvBuilder.append(String.format("%s,%s,%s,%s\n", escapeCsv(sku), escapeCsv(quantity), escapeCsv(cost), escapeCsv(sellingPrice)));
+        for (int record = 0; record < size; record++) {
+            if (!skuRecords.isIncluded(record)) {
+                continue;
+            }
+            appendCsvRow(csvBuilder, skuRecords.sku(record), skuRecords.quantity(record), skuRecords.costCents(record), skuRecords.priceCents(record),
+                    skuRecords.status(record));
         }
         return csvBuilder.toString();
     }
 
+    /**
+     * Appends one output CSV row (SKU,Quantity,Cost,Selling Price,Status) including its line break.
+     */
+    static void appendCsvRow(StringBuilder csvBuilder, String sku, int quantity, long costCents, long priceCents, String status) {
+        csvBuilder.append(escapeCsv(sku)).append(',')
+                .append(quantity).append(',');
+        SkuRecordStore.appendCents(csvBuilder, costCents);
+        csvBuilder.append(',');
+        SkuRecordStore.appendCents(csvBuilder, priceCents);
+        csvBuilder.append(',').append(status).append('\n');
+    }
+
     /**
      * Escapes a string for CSV output.
      * Doubles inner quotes and wraps the string in quotes if it contains commas or quotes.
      * @param value The string to escape.
      * @return The escaped string.
      */
-    private String escapeCsv(String value) {
+    static String escapeCsv(String value) {
         if (value == null) {
             return "";
         }
@@ -251,92 +1110,92 @@ public class LambdaHandler implements RequestHandler<ScheduledEvent, Void> {
     }
 
     /**
-     * Uploads the generated CSV content to an S3 bucket.
+     * Streams a CSV (header plus the rows written by rows) to an S3 bucket. Rows are encoded straight
+     * into the upload's part buffers and parts upload while later rows are written, so memory use does
+     * not grow with the catalogue.
      * @param s3Client The S3Client instance.
      * @param bucketName The name of the S3 bucket to upload to.
      * @param key The object key (path) for the new CSV file.
-     * @param content The CSV content as a string.
+     * @param gzip Whether to gzip the CSV.
+     * @param rows Writes the CSV rows.
      * @throws IOException If an error occurs during upload.
      */
-    private void uploadCsvToS3(S3Client s3Client, String bucketName, String key, String content) throws IOException {
+    private void uploadCsvToS3(S3Client s3Client, String bucketName, String key, boolean gzip, CsvStreamWriter.Content rows) throws IOException {
         try {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .contentType("text/csv")
-                    .build();
-
-            s3Client.putObject(putObjectRequest, RequestBody.fromString(content));
-            System.out.println("Successfully uploaded CSV to S3: s3://" + bucketName + "/" + key);
+            CsvStreamWriter.upload(s3Client, bucketName, key, "text/csv", gzip, csv -> {
+                csv.writeHeader();
+                rows.writeTo(csv);
+            });
+            Log.info("Successfully uploaded CSV to S3: s3://" + bucketName + "/" + key);
         } catch (Exception e) {
-            System.err.println("Error uploading CSV to S3 bucket '" + bucketName + "' with key '" + key + "': " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error uploading CSV to S3 bucket '" + bucketName + "' with key '" + key + "': " + e.getMessage(), e);
             throw new IOException("Failed to upload CSV to S3.", e);
         }
     }
 
     /**
-     * Cleans up old S3 files in the specified output bucket, retaining only the most recent files
-     * based on the provided prefix and max files count.
-     *
+     * Writes the columnar snapshot of the run's records. The output CSV stays the record of the run, so
+     * a failure here is logged and the next run reads the CSV instead.
      * @param s3Client The S3Client instance.
-     * @param bucketName The name of the S3 bucket to clean.
-     * @param prefix The prefix for the files to consider for cleanup.
-     * @param maxFilesToKeep The maximum number of files to retain.
+     * @param bucketName The name of the S3 bucket to upload to.
+     * @param key The snapshot's object key.
+     * @param skuRecords The records written to the output CSV.
      */
-    private void cleanOldS3Files(S3Client s3Client, String bucketName, String prefix, int maxFilesToKeep) {
-        System.out.println("Starting S3 cleanup for bucket: " + bucketName + ", prefix: " + prefix + ", max files to keep: " + maxFilesToKeep);
-
+    private void uploadColumnarSnapshot(S3Client s3Client, String bucketName, String key, SkuRecordStore skuRecords) {
+        S3MultipartOutputStream upload = new S3MultipartOutputStream(s3Client, bucketName, key, "application/octet-stream", null,
+                S3MultipartOutputStream.MIN_PART_SIZE, 1);
         try {
-            ListObjectsV2Request listObjectsRequest = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .prefix(prefix)
-                    .build();
-
-            ListObjectsV2Response listObjectsResponse;
-            List<S3Object> allMatchingObjects = new ArrayList<>();
-
-            // Paginate through all objects if more than 1000
-            String continuationToken = null;
-            do {
-                listObjectsResponse = s3Client.listObjectsV2(listObjectsRequest.toBuilder().continuationToken(continuationToken).build());
-                allMatchingObjects.addAll(listObjectsResponse.contents());
-                continuationToken = listObjectsResponse.nextContinuationToken();
-            } while (listObjectsResponse.isTruncated());
-
+            long bytes = ColumnarSnapshot.write(skuRecords, upload);
+            upload.close();
+            Log.info("Uploaded columnar snapshot (" + bytes + " bytes) to s3://" + bucketName + "/" + key);
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            Log.warn("Warning: Failed to write columnar snapshot s3://" + bucketName + "/" + key
+                    + " (the next run reads the CSV instead): " + e.getMessage());
+        }
+    }
 
-            // Filter for CSV files and sort by LastModified timestamp (newest first)
-            List<S3Object> csvFiles = new ArrayList<>();
-            for(S3Object s3Object : allMatchingObjects) {
-                if (s3Object.key().endsWith(".csv")) { // Only consider CSV files
-                    csvFiles.add(s3Object);
-                }
+    /**
+     * Loads the most recent output CSV under the given prefix (see OutputHistory), which is the snapshot
+     * of the SKU data pushed to Neto by the previous run.
+     *
+     * @param s3Client The S3Client instance.
+     * @param bucketName The name of the output S3 bucket.
+     * @param prefix The prefix of the output CSV files.
+     * @return The previous snapshot, or an empty store if none exists or it cannot be read.
+     */
+    private SkuRecordStore loadPreviousSnapshot(S3Client s3Client, String bucketName, String prefix) {
+        try {
+            S3Object latest = new OutputHistory(s3Client, bucketName, prefix).findLatestOutput();
+            if (latest == null) {
+                Log.info("No previous snapshot found under prefix: " + prefix + ". All SKUs will be treated as new.");
+                return new SkuRecordStore();
             }
 
-            csvFiles.sort(Comparator.comparing(S3Object::lastModified).reversed()); // Sort newest to oldest
-
-            System.out.println("Found " + csvFiles.size() + " matching CSV files for cleanup under prefix: " + prefix);
-
-            if (csvFiles.size() > maxFilesToKeep) {
-                List<S3Object> filesToDelete = csvFiles.subList(maxFilesToKeep, csvFiles.size());
-                System.out.println("Identified " + filesToDelete.size() + " files for deletion.");
-
-                for (S3Object fileToDelete : filesToDelete) {
-                    DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(fileToDelete.key())
-                            .build();
-                    s3Client.deleteObject(deleteObjectRequest);
-                    System.out.println("Deleted old S3 file: " + fileToDelete.key());
-                }
-            } else {
-                System.out.println("Number of CSV files (" + csvFiles.size() + ") is less than or equal to max files to keep (" + maxFilesToKeep + "). No files deleted.");
+            // The columnar snapshot written with the CSV is smaller to fetch and needs no parsing
+            String snapshotKey = OutputHistory.snapshotKeyFor(latest.key());
+            try {
+                SkuRecordStore snapshot = ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofS3(s3Client, bucketName, snapshotKey));
+                Log.info("Loaded previous snapshot from S3: s3://" + bucketName + "/" + snapshotKey);
+                return snapshot;
+            } catch (NoSuchKeyException e) {
+                // Written by a run without columnar snapshots; use the CSV
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Warning: Ignoring unreadable columnar snapshot s3://" + bucketName + "/" + snapshotKey + ": " + e.getMessage());
             }
 
+            Log.info("Loading previous snapshot from S3: s3://" + bucketName + "/" + latest.key());
+            try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(latest.key())
+                    .build());
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(
+                         latest.key().endsWith(".gz") ? new GZIPInputStream(s3Object, 64 * 1024) : s3Object, StandardCharsets.UTF_8))) {
+                return SnapshotDiff.parseSnapshotCsv(reader);
+            }
         } catch (Exception e) {
-            System.err.println("Error during S3 cleanup: " + e.getMessage());
-            e.printStackTrace();
-            // Don't re-throw as cleanup is a secondary operation, main flow should not fail because of it.
+            Log.error("Error loading previous snapshot from S3 (all SKUs will be sent to Neto): " + e.getMessage(), e);
+            return new SkuRecordStore();
         }
     }
 }
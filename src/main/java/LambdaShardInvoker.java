@@ -0,0 +1,79 @@
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.InvocationType;
+import software.amazon.awssdk.services.lambda.model.InvokeRequest;
+import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Runs each shard as a synchronous (RequestResponse) invocation of a Lambda function, normally this
+ * function itself (WORKER_FUNCTION_NAME, defaulting to the coordinator's own function name).
+ *
+ * The invocations run concurrently, one blocking thread each, and complete when the worker returns.
+ * A worker that throws comes back as a function error, which fails the shard's future.
+ */
+public class LambdaShardInvoker implements ShardInvoker {
+
+    // A worker may run up to the 15 minute Lambda limit, so the call must be allowed to wait that long
+    private static final Duration INVOKE_TIMEOUT = Duration.ofMinutes(16);
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final LambdaClient lambdaClient;
+    private final String functionName;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "shard-invoke");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param lambdaClient The client to invoke with.
+     * @param functionName The worker function's name or ARN.
+     */
+    public LambdaShardInvoker(LambdaClient lambdaClient, String functionName) {
+        this.lambdaClient = lambdaClient;
+        this.functionName = functionName;
+    }
+
+    /**
+     * Builds an invoker with a Lambda client for AWS_REGION (falling back to us-east-1) whose timeouts
+     * allow for a full-length worker invocation.
+     */
+    public static LambdaShardInvoker create(String functionName) {
+        String awsRegion = Env.get("AWS_REGION");
+        LambdaClient lambdaClient = LambdaClient.builder()
+                .region(awsRegion != null && !awsRegion.isEmpty() ? Region.of(awsRegion) : Region.US_EAST_1)
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallTimeout(INVOKE_TIMEOUT)
+                        .apiCallAttemptTimeout(INVOKE_TIMEOUT)
+                        .build())
+                .httpClientBuilder(UrlConnectionHttpClient.builder()
+                        .connectionTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                        .socketTimeout(INVOKE_TIMEOUT))
+                .build();
+        return new LambdaShardInvoker(lambdaClient, functionName);
+    }
+
+    @Override
+    public CompletableFuture<Void> invoke(ShardTask task) {
+        return CompletableFuture.runAsync(() -> {
+            InvokeResponse response = lambdaClient.invoke(InvokeRequest.builder()
+                    .functionName(functionName)
+                    .invocationType(InvocationType.REQUEST_RESPONSE)
+                    .payload(SdkBytes.fromUtf8String(task.toPayload()))
+                    .build());
+            if (response.functionError() != null) {
+                String details = response.payload() != null ? response.payload().asUtf8String() : "";
+                throw new IllegalStateException("Worker for " + task + " failed (" + response.functionError() + "): " + details);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * The log level switch (LOG_LEVEL: ERROR, WARN, INFO or DEBUG, default INFO).
+ *
+ * Run-level progress is logged at INFO. Per-page and per-SKU lines (request URLs, pagination, the
+ * values prepared for each SKU, raw Neto responses) are DEBUG: at INFO they are neither built nor
+ * written, which keeps the log volume of a full run small. Callers build a DEBUG message only after
+ * checking {@link #isDebugEnabled()}.
+ *
+ * WARN keeps warnings (skipped values, retries, ignored caches) and errors; ERROR keeps errors only.
+ * INFO lines go to standard output, WARN and ERROR lines to standard error.
+ */
+public final class Log {
+
+    /**
+     * Levels from least to most verbose.
+     */
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG
+    }
+
+    private static final Level LEVEL = levelFromEnv();
+
+    private Log() {
+    }
+
+    /**
+     * @return Whether lines of the level are written.
+     */
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) <= 0;
+    }
+
+    /**
+     * @return Whether DEBUG lines are written; check it before building an expensive message.
+     */
+    public static boolean isDebugEnabled() {
+        return LEVEL == Level.DEBUG;
+    }
+
+    /**
+     * Writes a line to standard output if DEBUG is enabled.
+     */
+    public static void debug(String message) {
+        if (LEVEL == Level.DEBUG) {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * Writes a line to standard output if INFO is enabled.
+     */
+    public static void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * Writes a line to standard error if WARN is enabled.
+     */
+    public static void warn(String message) {
+        if (isEnabled(Level.WARN)) {
+            System.err.println(message);
+        }
+    }
+
+    /**
+     * Writes a line to standard error.
+     */
+    public static void error(String message) {
+        System.err.println(message);
+    }
+
+    /**
+     * Writes a line and the stack trace of the cause to standard error.
+     */
+    public static void error(String message, Throwable cause) {
+        System.err.println(message);
+        cause.printStackTrace();
+    }
+
+    private static Level levelFromEnv() {
+        String value = Env.get("LOG_LEVEL", "INFO").trim();
+        try {
+            return Level.valueOf(value.toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: Invalid LOG_LEVEL environment variable '" + value + "'. Using INFO.");
+            return Level.INFO;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The live quantity (warehouse 2) and DefaultPrice of Neto's items, read by a paged GetItem export
+ * (see DropshipzoneAPIClient#exportNetoItems), as a sorted in-memory index.
+ *
+ * Items are appended page by page and sorted by SKU once with {@link #sort()}; the index then holds
+ * them in three parallel columns (SKU, quantity, price in cents) rather than one object per item.
+ * {@link #reconcile(SkuRecordStore)} merge-joins it against the Dropshipzone-derived records of a
+ * run, also sorted by SKU, so comparing tens of thousands of items costs two sorts and one linear
+ * pass, and only SKUs whose Neto values differ are pushed.
+ */
+public final class NetoItemIndex {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private String[] skus;
+    private int[] quantities;
+    private long[] priceCents; // -1 if Neto returned no readable DefaultPrice
+    private int size;
+    private boolean sorted = true;
+
+    public NetoItemIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of items expected, to size the columns up front.
+     */
+    public NetoItemIndex(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.skus = new String[capacity];
+        this.quantities = new int[capacity];
+        this.priceCents = new long[capacity];
+    }
+
+    /**
+     * Appends an item; call {@link #sort()} after the last one.
+     *
+     * @param priceCents The DefaultPrice in cents, or -1 if unknown.
+     */
+    public void add(String sku, int quantity, long priceCents) {
+        if (size == skus.length) {
+            int capacity = skus.length * 2;
+            skus = Arrays.copyOf(skus, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            this.priceCents = Arrays.copyOf(this.priceCents, capacity);
+        }
+        if (size > 0 && sorted && skus[size - 1].compareTo(sku) > 0) {
+            sorted = false;
+        }
+        skus[size] = sku;
+        quantities[size] = quantity;
+        this.priceCents[size] = priceCents;
+        size++;
+    }
+
+    /**
+     * Sorts the items by SKU. Of items listed more than once, the first is kept.
+     */
+    public void sort() {
+        if (!sorted) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // Stable, so the first of equal SKUs stays first
+            Arrays.sort(order, (a, b) -> skus[a].compareTo(skus[b]));
+            String[] sortedSkus = new String[skus.length];
+            int[] sortedQuantities = new int[skus.length];
+            long[] sortedPrices = new long[skus.length];
+            for (int i = 0; i < size; i++) {
+                sortedSkus[i] = skus[order[i]];
+                sortedQuantities[i] = quantities[order[i]];
+                sortedPrices[i] = priceCents[order[i]];
+            }
+            skus = sortedSkus;
+            quantities = sortedQuantities;
+            priceCents = sortedPrices;
+            sorted = true;
+        }
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique > 0 && skus[unique - 1].equals(skus[i])) {
+                continue;
+            }
+            skus[unique] = skus[i];
+            quantities[unique] = quantities[i];
+            priceCents[unique] = priceCents[i];
+            unique++;
+        }
+        Arrays.fill(skus, unique, size, null);
+        size = unique;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The position of the SKU, or -1 if Neto has no such item. The index must be sorted.
+     */
+    public int indexOf(String sku) {
+        int position = Arrays.binarySearch(skus, 0, size, sku);
+        return position >= 0 ? position : -1;
+    }
+
+    public String sku(int position) {
+        return skus[position];
+    }
+
+    public int quantity(int position) {
+        return quantities[position];
+    }
+
+    public long priceCents(int position) {
+        return priceCents[position];
+    }
+
+    /**
+     * Compares the included records of a run with Neto's items by merge-joining both in SKU order.
+     *
+     * A record Dropshipzone returned is an update if its quantity or selling price differs from
+     * Neto's. A record Dropshipzone did not return (see SkuRecordStore#putNotFound) only needs its
+     * stock cleared, if Neto still has stock for it. SKUs Neto has no item for cannot be updated and
+     * are only counted, as are Neto items the run does not list. The index must be sorted.
+     *
+     * @param current The store holding the run's records.
+     * @return The records to push.
+     */
+    public Reconciliation reconcile(SkuRecordStore current) {
+        int[] records;
+        String[] recordSkus;
+        synchronized (current) {
+            records = new int[current.includedCount()];
+            int count = 0;
+            for (int record = 0; record < current.size(); record++) {
+                if (current.isIncluded(record)) {
+                    records[count++] = record;
+                }
+            }
+            recordSkus = new String[current.size()];
+            for (int record : records) {
+                recordSkus[record] = current.sku(record);
+            }
+        }
+        Integer[] order = new Integer[records.length];
+        for (int i = 0; i < records.length; i++) {
+            order[i] = records[i];
+        }
+        Arrays.sort(order, (a, b) -> recordSkus[a].compareTo(recordSkus[b]));
+
+        Reconciliation result = new Reconciliation();
+        int position = 0;
+        for (int record : order) {
+            String sku = recordSkus[record];
+            while (position < size && skus[position].compareTo(sku) < 0) {
+                position++;
+                result.netoOnlyCount++;
+            }
+            if (position == size || !skus[position].equals(sku)) {
+                result.missingInNetoCount++;
+                continue;
+            }
+            if (current.isNotFound(record)) {
+                if (quantities[position] != 0) {
+                    result.stockToClear.add(record);
+                } else {
+                    result.matchedCount++;
+                }
+            } else if (quantities[position] != current.quantity(record) || priceCents[position] != current.priceCents(record)) {
+                result.updates.add(record);
+            } else {
+                result.matchedCount++;
+            }
+            position++;
+        }
+        result.netoOnlyCount += size - position;
+        return result;
+    }
+
+    /**
+     * The outcome of {@link #reconcile(SkuRecordStore)}.
+     */
+    public static final class Reconciliation {
+        private final List<Integer> updates = new ArrayList<>();
+        private final List<Integer> stockToClear = new ArrayList<>();
+        private int matchedCount;
+        private int missingInNetoCount;
+        private int netoOnlyCount;
+
+        /**
+         * @return The records whose quantity or selling price differs from Neto's, in SKU order.
+         */
+        public List<Integer> getUpdates() {
+            return updates;
+        }
+
+        /**
+         * @return The records not returned by Dropshipzone that still have stock in Neto, in SKU order.
+         */
+        public List<Integer> getStockToClear() {
+            return stockToClear;
+        }
+
+        public int getMatchedCount() {
+            return matchedCount;
+        }
+
+        public int getMissingInNetoCount() {
+            return missingInNetoCount;
+        }
+
+        public int getNetoOnlyCount() {
+            return netoOnlyCount;
+        }
+
+        @Override
+        public String toString() {
+            return "drifted=" + updates.size() + ", stock to clear=" + stockToClear.size() + ", matching=" + matchedCount
+                    + ", not in Neto=" + missingInNetoCount + ", only in Neto=" + netoOnlyCount;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Streams processed SKU records from the Dropshipzone fetch into Neto UpdateItem batches.
+ *
+ * The fetch side calls {@link #submit(int)} as soon as a page has been parsed. Record numbers go into a
+ * bounded queue that a fixed number of updater workers drain, packing up to batchSize records into
+ * each call to {@link DropshipzoneAPIClient#updateNetoItems(RequestExecutor, SkuRecordStore, List)}. When the queue is
+ * full, submit blocks, which in turn holds the fetch's in-flight request slot and stops the fetch
+ * from running ahead of Neto.
+ *
+ * Batches taken after the invocation deadline are not sent; their SKUs are collected separately from
+ * the failed ones (see {@link #getSkippedSkus()}), so they can be resumed or retried by a later run.
+ *
+ * Usage: {@link #start()}, any number of {@link #submit(int)} calls, then exactly one {@link #finish()}.
+ * A submit after finish() has been called is rejected with an IllegalStateException.
+ */
+public class NetoUpdatePipeline {
+
+    // How long a worker waits for more entries before sending a partially filled batch
+    private static final long BATCH_LINGER_MS = 200;
+
+    // Marker telling a worker that no more records will be submitted (record numbers are never negative)
+    private static final Integer END_OF_STREAM = Integer.valueOf(-1);
+
+    private final RequestExecutor requestExecutor;
+    private final SkuRecordStore skuRecords;
+    private final ExecutorService executorService;
+    private final int workerCount;
+    private final int batchSize;
+    private final BlockingQueue<Integer> queue;
+    private final List<CompletableFuture<Set<String>>> workers = new ArrayList<>();
+    private final AtomicInteger submittedCount = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Set<String> skippedSkus = ConcurrentHashMap.newKeySet();
+    private final InvocationDeadline deadline;
+    private volatile boolean finished;
+
+    /**
+     * @param requestExecutor The shared request executor used for Neto requests.
+     * @param skuRecords The store the submitted record numbers refer to.
+     * @param executorService The executor the updater workers run on (needs at least workerCount free threads).
+     * @param workerCount The number of concurrent updater workers.
+     * @param batchSize The maximum number of items per UpdateItem request.
+     * @param queueCapacity The maximum number of records buffered between fetch and update.
+     * @param deadline No batches are sent after this deadline.
+     */
+    public NetoUpdatePipeline(RequestExecutor requestExecutor, SkuRecordStore skuRecords, ExecutorService executorService, int workerCount, int batchSize, int queueCapacity, InvocationDeadline deadline) {
+        this.requestExecutor = requestExecutor;
+        this.skuRecords = skuRecords;
+        this.executorService = executorService;
+        this.workerCount = Math.max(1, workerCount);
+        this.batchSize = Math.max(1, batchSize);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, queueCapacity));
+        this.deadline = deadline;
+    }
+
+    /**
+     * Starts the updater workers.
+     */
+    public void start() {
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(CompletableFuture.supplyAsync(this::runWorker, executorService));
+        }
+    }
+
+    /**
+     * Queues one record for update, blocking while the queue is full.
+     *
+     * @param record The record number of the processed SKU in the store.
+     * @throws InterruptedException If interrupted while waiting for queue space.
+     * @throws IllegalStateException If {@link #finish()} has already been called.
+     */
+    public void submit(int record) throws InterruptedException {
+        // Wait in slices, so a submit that races with finish() cannot block on a queue nobody drains
+        while (!finished) {
+            if (queue.offer(record, BATCH_LINGER_MS, TimeUnit.MILLISECONDS)) {
+                submittedCount.incrementAndGet();
+                return;
+            }
+        }
+        throw new IllegalStateException("Neto update pipeline already finished; SKU " + skuRecords.sku(record) + " was not queued.");
+    }
+
+    /**
+     * Signals the end of the stream and waits for the workers to send everything still queued.
+     *
+     * @return The SKUs that could not be updated in Neto.
+     */
+    public Set<String> finish() {
+        finished = true;
+        for (int i = 0; i < workers.size(); i++) {
+            try {
+                queue.put(END_OF_STREAM);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Set<String> failedSkus = new HashSet<>();
+        for (CompletableFuture<Set<String>> worker : workers) {
+            failedSkus.addAll(worker.join());
+        }
+        // Records a racing submit queued behind the end-of-stream markers were never sent
+        List<Integer> unsent = new ArrayList<>();
+        queue.drainTo(unsent);
+        unsent.removeIf(record -> record == END_OF_STREAM);
+        if (!unsent.isEmpty()) {
+            Log.warn("Neto update pipeline finished with " + unsent.size() + " SKUs queued after the end of the stream; counting them as failed.");
+            for (int record : unsent) {
+                failedSkus.add(skuRecords.sku(record));
+            }
+        }
+        return failedSkus;
+    }
+
+    public int getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return The SKUs not sent because the invocation deadline had passed. Complete once {@link #finish()} returned.
+     */
+    public Set<String> getSkippedSkus() {
+        return skippedSkus;
+    }
+
+    /**
+     * Worker loop: blocks for the first record of a batch, then fills the batch with whatever else
+     * arrives within BATCH_LINGER_MS before sending it.
+     */
+    private Set<String> runWorker() {
+        Set<String> failedSkus = new HashSet<>();
+        List<Integer> batch = new ArrayList<>(batchSize);
+        boolean endOfStream = false;
+        try {
+            while (!endOfStream) {
+                Integer first = queue.take();
+                if (first == END_OF_STREAM) {
+                    break;
+                }
+                batch.add(first);
+                while (batch.size() < batchSize) {
+                    Integer next = queue.poll(BATCH_LINGER_MS, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == END_OF_STREAM) {
+                        endOfStream = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                sendBatch(batch, failedSkus);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.warn("Neto updater worker interrupted with " + batch.size() + " unsent SKUs.");
+            for (int record : batch) {
+                failedSkus.add(skuRecords.sku(record));
+            }
+        }
+        return failedSkus;
+    }
+
+    private void sendBatch(List<Integer> batch, Set<String> failedSkus) {
+        if (deadline.isExpired()) {
+            for (int record : batch) {
+                skippedSkus.add(skuRecords.sku(record));
+            }
+            batch.clear();
+            return;
+        }
+        requestCount.incrementAndGet();
+        try {
+            failedSkus.addAll(DropshipzoneAPIClient.updateNetoItems(requestExecutor, skuRecords, new ArrayList<>(batch)));
+        } catch (RuntimeException e) {
+            Log.error("Unexpected error updating Neto batch of " + batch.size() + " SKUs: " + e.getMessage(), e);
+            for (int record : batch) {
+                failedSkus.add(skuRecords.sku(record));
+            }
+        }
+        batch.clear();
+    }
+}
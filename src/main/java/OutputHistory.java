@@ -0,0 +1,295 @@
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * The output CSVs (with their columnar snapshots) kept under S3_OUTPUT_FILE_PREFIX: how their keys are
+ * laid out, finding the latest one, and retention.
+ *
+ * OUTPUT_KEY_LAYOUT=flat (default) writes prefix_yyyyMMdd_HHmmss.csv as before. daily writes
+ * prefix/yyyy-MM-dd/name_yyyyMMdd_HHmmss.csv (name being the last segment of the prefix), so finding the
+ * latest output and applying retention list only the day partitions that still hold files, however long
+ * the history of the bucket. Outputs of both layouts are found and retained, so the layout can be
+ * changed at any time.
+ *
+ * Retention keeps the newest S3_OUTPUT_MAX_FILES outputs that are not older than S3_OUTPUT_MAX_AGE_DAYS
+ * (0, the default, for no age limit); the newest output is always kept. A columnar snapshot goes with
+ * its CSV. Deletes are sent as DeleteObjects batches of up to 1000 keys, several batches at a time.
+ */
+final class OutputHistory {
+
+    private static final int DELETE_BATCH_SIZE = 1000; // The most keys DeleteObjects accepts
+    private static final int MAX_PARALLEL_DELETES = 4;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String prefix;
+
+    OutputHistory(S3Client s3Client, String bucketName, String prefix) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return The key of a new output CSV for the current UTC time in the OUTPUT_KEY_LAYOUT, ending in
+     * .csv.gz when gzipped.
+     */
+    static String newOutputKey(String prefix, boolean gzip) {
+        Instant now = Instant.now();
+        String extension = gzip ? ".csv.gz" : ".csv";
+        if ("daily".equalsIgnoreCase(Env.get("OUTPUT_KEY_LAYOUT", "flat").trim())) {
+            String name = prefix.substring(prefix.lastIndexOf('/') + 1);
+            return prefix + "/" + PARTITION_FORMAT.format(now) + "/" + name + "_" + TIMESTAMP_FORMAT.format(now) + extension;
+        }
+        return prefix + "_" + TIMESTAMP_FORMAT.format(now) + extension;
+    }
+
+    /**
+     * @return The key of the columnar snapshot written next to an output CSV.
+     */
+    static String snapshotKeyFor(String outputCsvKey) {
+        String base = outputCsvKey.endsWith(".gz") ? outputCsvKey.substring(0, outputCsvKey.length() - 3) : outputCsvKey;
+        return base.substring(0, base.length() - ".csv".length()) + ColumnarSnapshot.FILE_SUFFIX;
+    }
+
+    /**
+     * @return true for the key of an output CSV, plain or gzipped.
+     */
+    static boolean isOutputCsv(String key) {
+        return key.endsWith(".csv") || key.endsWith(".csv.gz");
+    }
+
+    /**
+     * @return The most recent output CSV, or null if there is none. Lists the flat outputs and the day
+     * partitions newest first, up to the first partition holding a CSV.
+     */
+    S3Object findLatestOutput() {
+        S3Object latest = newest(listFlat(), null);
+        for (String partition : listPartitions()) {
+            S3Object inPartition = newest(listAll(partition, null), null);
+            if (inPartition != null) {
+                return newest(List.of(inPartition), latest);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Applies retention: keeps the newest maxFilesToKeep outputs within maxAgeDays (the newest one in
+     * any case) and deletes the others with their columnar snapshots, as well as snapshots left without
+     * their CSV. Failures are logged; retention is retried in full by the next run.
+     *
+     * @param maxFilesToKeep The number of outputs to keep.
+     * @param maxAgeDays The age in days after which outputs are deleted, 0 for no limit.
+     * @return The number of objects deleted.
+     */
+    int applyRetention(int maxFilesToKeep, int maxAgeDays) {
+        long startNanos = System.nanoTime();
+        Log.info("Starting S3 retention for bucket: " + bucketName + ", prefix: " + prefix + ", max files to keep: "
+                + maxFilesToKeep + (maxAgeDays > 0 ? ", max age: " + maxAgeDays + " days" : ""));
+        try {
+            Instant cutoff = maxAgeDays > 0 ? Instant.now().minus(Duration.ofDays(maxAgeDays)) : null;
+            List<S3Object> objects = new ArrayList<>(listFlat());
+            List<String> partitions = listPartitions();
+            for (String partition : partitions) {
+                objects.addAll(listAll(partition, null));
+            }
+
+            List<S3Object> csvFiles = new ArrayList<>();
+            List<String> snapshotKeys = new ArrayList<>();
+            for (S3Object s3Object : objects) {
+                if (isOutputCsv(s3Object.key())) {
+                    csvFiles.add(s3Object);
+                } else if (s3Object.key().endsWith(ColumnarSnapshot.FILE_SUFFIX)) {
+                    snapshotKeys.add(s3Object.key());
+                }
+            }
+            csvFiles.sort(Comparator.comparing(S3Object::lastModified).thenComparing(S3Object::key).reversed()); // Newest first
+
+            List<String> toDelete = new ArrayList<>();
+            Set<String> keptSnapshotKeys = new HashSet<>();
+            for (int i = 0; i < csvFiles.size(); i++) {
+                S3Object csvFile = csvFiles.get(i);
+                boolean keep = i == 0 || (i < maxFilesToKeep && (cutoff == null || !csvFile.lastModified().isBefore(cutoff)));
+                if (keep) {
+                    keptSnapshotKeys.add(snapshotKeyFor(csvFile.key()));
+                } else {
+                    toDelete.add(csvFile.key());
+                }
+            }
+            // Columnar snapshots are kept exactly as long as their CSV
+            for (String snapshotKey : snapshotKeys) {
+                if (!keptSnapshotKeys.contains(snapshotKey)) {
+                    toDelete.add(snapshotKey);
+                }
+            }
+
+            int deleted = delete(toDelete);
+            Log.info("S3 retention: kept " + keptSnapshotKeys.size() + " of " + csvFiles.size() + " output CSVs ("
+                    + partitions.size() + " day partitions), deleted " + deleted + " objects in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + " ms.");
+            return deleted;
+        } catch (Exception e) {
+            Log.error("Error during S3 cleanup: " + e.getMessage(), e);
+            // Don't re-throw as cleanup is a secondary operation, main flow should not fail because of it.
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes keys in DeleteObjects batches, up to MAX_PARALLEL_DELETES batches at a time.
+     *
+     * @return The number of keys deleted.
+     */
+    private int delete(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += DELETE_BATCH_SIZE) {
+            batches.add(keys.subList(i, Math.min(i + DELETE_BATCH_SIZE, keys.size())));
+        }
+        if (batches.size() == 1) {
+            return deleteBatch(batches.get(0));
+        }
+        ExecutorService deleters = Executors.newFixedThreadPool(Math.min(batches.size(), MAX_PARALLEL_DELETES), runnable -> {
+            Thread thread = new Thread(runnable, "s3-retention-delete");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            for (List<String> batch : batches) {
+                results.add(CompletableFuture.supplyAsync(() -> deleteBatch(batch), deleters));
+            }
+            int deleted = 0;
+            for (CompletableFuture<Integer> result : results) {
+                deleted += result.join();
+            }
+            return deleted;
+        } finally {
+            deleters.shutdown();
+        }
+    }
+
+    private int deleteBatch(List<String> keys) {
+        List<ObjectIdentifier> objects = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            objects.add(ObjectIdentifier.builder().key(key).build());
+        }
+        try {
+            DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(objects).quiet(true).build())
+                    .build());
+            List<S3Error> errors = response.errors() != null ? response.errors() : List.of();
+            for (S3Error error : errors) {
+                Log.warn("Warning: Failed to delete old S3 file " + error.key() + ": " + error.code() + " " + error.message());
+            }
+            if (Log.isDebugEnabled()) {
+                for (String key : keys) {
+                    Log.debug("Deleted old S3 file: " + key);
+                }
+            }
+            return keys.size() - errors.size();
+        } catch (RuntimeException e) {
+            Log.warn("Warning: Failed to delete " + keys.size() + " old S3 files (retried by the next run): " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * @return The newest output CSV among the objects and current (which may be null).
+     */
+    private static S3Object newest(List<S3Object> objects, S3Object current) {
+        S3Object latest = current;
+        for (S3Object s3Object : objects) {
+            if (isOutputCsv(s3Object.key()) && (latest == null || s3Object.lastModified().isAfter(latest.lastModified()))) {
+                latest = s3Object;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return The flat-layout objects (prefix_...), without descending into prefix_shards/ and the like.
+     */
+    private List<S3Object> listFlat() {
+        return listAll(prefix + "_", null);
+    }
+
+    /**
+     * @return The day partitions (prefix/yyyy-MM-dd/) that hold any object, newest first.
+     */
+    private List<String> listPartitions() {
+        List<String> partitions = new ArrayList<>();
+        listAll(prefix + "/", partitions);
+        partitions.removeIf(partition -> !isPartition(partition));
+        partitions.sort(Comparator.reverseOrder());
+        return partitions;
+    }
+
+    private boolean isPartition(String partition) {
+        String day = partition.substring(prefix.length() + 1, partition.length() - 1);
+        try {
+            LocalDate.parse(day);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lists one level below listPrefix (with "/" as delimiter).
+     *
+     * @param commonPrefixes Receives the sub-prefixes found (may be null).
+     * @return The objects directly under listPrefix.
+     */
+    private List<S3Object> listAll(String listPrefix, List<String> commonPrefixes) {
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(listPrefix)
+                .delimiter("/")
+                .build();
+        List<S3Object> objects = new ArrayList<>();
+        ListObjectsV2Response listResponse;
+        String continuationToken = null;
+        do {
+            listResponse = s3Client.listObjectsV2(listRequest.toBuilder().continuationToken(continuationToken).build());
+            objects.addAll(listResponse.contents());
+            if (commonPrefixes != null && listResponse.commonPrefixes() != null) {
+                for (CommonPrefix commonPrefix : listResponse.commonPrefixes()) {
+                    commonPrefixes.add(commonPrefix.prefix());
+                }
+            }
+            continuationToken = listResponse.nextContinuationToken();
+        } while (listResponse.isTruncated());
+        return objects;
+    }
+}
@@ -0,0 +1,257 @@
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Computes selling prices in integer cents from the Dropshipzone price.
+ *
+ * The multiplier and the price are held as fixed-point longs (millionths), so price * multiplier is
+ * exact integer arithmetic and never goes through a double or String.format. The default rule
+ * reproduces the original behaviour: price * PRICE_MULTIPLIER, kept as is when it lands on a whole
+ * dollar, otherwise rounded down to the dollar and given a .95 ending. Prices with more than two
+ * decimals are priced from their full value, as before, not from their value rounded to the cent.
+ *
+ * Per-brand and per-category rules can override the multiplier, add a price floor or change the
+ * ending. They are given as a JSON array (PRICING_RULES environment variable), e.g.
+ *
+ *   [{"brand": "Everfit", "multiplier": "1.5"},
+ *    {"category": "Home &amp; Garden", "multiplier": "1.3", "floor": "9.95", "ending": 99},
+ *    {"floor": "4.95"}]
+ *
+ * A brand rule matches the brand case-insensitively; a category rule matches the start of the
+ * Category path ("Home &amp; Garden" matches "Home &amp; Garden &gt; Lighting &gt; "). The first matching brand
+ * rule wins, then the first matching category rule, then the default. A rule with neither brand nor
+ * category changes the default. Fields a rule leaves out are taken from the default. An ending of -1
+ * rounds to the nearest cent instead.
+ *
+ * The table is compiled once per run. Looking up a rule compares the parsed CharSequences in place,
+ * so pricing a SKU allocates nothing.
+ */
+public final class PricingEngine {
+
+    public static final int NO_ENDING = -1;
+    public static final int DEFAULT_ENDING_CENTS = 95;
+
+    // Multipliers and prices (in dollars) are fixed-point with this many decimals
+    private static final int MULTIPLIER_DECIMALS = 6;
+    private static final int PRICE_DECIMALS = 6;
+    private static final long MICROS_PER_CENT = 10_000L;
+    // price * multiplier is in millionths of millionths of a dollar
+    private static final long CENT_SCALED = MICROS_PER_CENT * 1_000_000L;
+    private static final long DOLLAR_SCALED = 100L * CENT_SCALED;
+
+    // A result within 0.00001 of a whole dollar counts as whole (the old epsilon)
+    private static final long WHOLE_DOLLAR_TOLERANCE = DOLLAR_SCALED / 100_000;
+
+    /**
+     * One compiled row of the rule table.
+     */
+    static final class Rule {
+        final String match;
+        final long multiplierMicros;
+        final long floorCents;
+        final int endingCents;
+
+        Rule(String match, long multiplierMicros, long floorCents, int endingCents) {
+            this.match = match;
+            this.multiplierMicros = multiplierMicros;
+            this.floorCents = floorCents;
+            this.endingCents = endingCents;
+        }
+    }
+
+    private final Rule defaultRule;
+    private final Rule[] brandRules;
+    private final Rule[] categoryRules;
+
+    private PricingEngine(Rule defaultRule, Rule[] brandRules, Rule[] categoryRules) {
+        this.defaultRule = defaultRule;
+        this.brandRules = brandRules;
+        this.categoryRules = categoryRules;
+    }
+
+    /**
+     * @param multiplier The default price multiplier, as in PRICE_MULTIPLIER (e.g. "1.4").
+     * @return An engine applying only the default rule.
+     * @throws IllegalArgumentException If the multiplier is not a positive decimal number.
+     */
+    public static PricingEngine compile(String multiplier) {
+        return compile(multiplier, null);
+    }
+
+    /**
+     * Compiles the rule table.
+     *
+     * @param multiplier The default price multiplier, as in PRICE_MULTIPLIER (e.g. "1.4").
+     * @param rulesJson The rule table as a JSON array, or null/empty for the default rule only.
+     * @return The compiled engine.
+     * @throws IllegalArgumentException If the multiplier or a rule is invalid.
+     */
+    public static PricingEngine compile(String multiplier, String rulesJson) {
+        Rule defaultRule = new Rule(null, parseMultiplier(multiplier, "PRICE_MULTIPLIER"), 0, DEFAULT_ENDING_CENTS);
+        List<Rule> brandRules = new ArrayList<>();
+        List<Rule> categoryRules = new ArrayList<>();
+
+        if (rulesJson != null && !rulesJson.trim().isEmpty()) {
+            JSONArray rules;
+            try {
+                rules = new JSONArray(rulesJson);
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("Pricing rules are not a valid JSON array: " + e.getMessage(), e);
+            }
+            // Default overrides first, so brand and category rules inherit from the final default
+            for (int i = 0; i < rules.length(); i++) {
+                JSONObject rule = rules.optJSONObject(i);
+                if (rule == null) {
+                    throw new IllegalArgumentException("Pricing rule #" + (i + 1) + " is not a JSON object.");
+                }
+                if (!rule.has("brand") && !rule.has("category")) {
+                    defaultRule = compileRule(rule, null, defaultRule, i);
+                }
+            }
+            for (int i = 0; i < rules.length(); i++) {
+                JSONObject rule = rules.getJSONObject(i);
+                if (rule.has("brand") && rule.has("category")) {
+                    throw new IllegalArgumentException("Pricing rule #" + (i + 1) + " sets both brand and category.");
+                } else if (rule.has("brand")) {
+                    brandRules.add(compileRule(rule, matchText(rule, "brand", i), defaultRule, i));
+                } else if (rule.has("category")) {
+                    categoryRules.add(compileRule(rule, matchText(rule, "category", i), defaultRule, i));
+                }
+            }
+        }
+        return new PricingEngine(defaultRule, brandRules.toArray(new Rule[0]), categoryRules.toArray(new Rule[0]));
+    }
+
+    private static Rule compileRule(JSONObject rule, String match, Rule defaults, int index) {
+        String name = "pricing rule #" + (index + 1);
+        long multiplierMicros = rule.has("multiplier")
+                ? parseMultiplier(rule.optString("multiplier"), name + " multiplier")
+                : defaults.multiplierMicros;
+        long floorCents = defaults.floorCents;
+        if (rule.has("floor")) {
+            try {
+                floorCents = SkuRecordStore.parseCents(rule.optString("floor").trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + name + " floor: '" + rule.optString("floor") + "'", e);
+            }
+        }
+        int endingCents = rule.has("ending") ? rule.optInt("ending", Integer.MIN_VALUE) : defaults.endingCents;
+        if (endingCents != NO_ENDING && (endingCents < 0 || endingCents > 99)) {
+            throw new IllegalArgumentException("Invalid " + name + " ending: must be 0-99 cents, or -1 for none.");
+        }
+        return new Rule(match, multiplierMicros, floorCents, endingCents);
+    }
+
+    private static String matchText(JSONObject rule, String key, int index) {
+        String text = rule.optString(key, "").trim();
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Pricing rule #" + (index + 1) + " has an empty " + key + ".");
+        }
+        return text;
+    }
+
+    private static long parseMultiplier(String text, String name) {
+        try {
+            long micros = SkuRecordStore.parseFixedPoint(text == null ? "" : text.trim(), MULTIPLIER_DECIMALS);
+            if (micros <= 0) {
+                throw new IllegalArgumentException("Invalid " + name + ": must be greater than zero.");
+            }
+            return micros;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": '" + text + "'", e);
+        }
+    }
+
+    /**
+     * Prices a SKU with the default rule.
+     *
+     * @param priceCents The Dropshipzone price in cents.
+     * @return The selling price in cents.
+     */
+    public long sellingPriceCents(long priceCents) {
+        return apply(defaultRule, Math.multiplyExact(priceCents, MICROS_PER_CENT));
+    }
+
+    /**
+     * Prices a SKU with the first rule matching its brand or category.
+     *
+     * @param priceCents The Dropshipzone price in cents.
+     * @param brand The product's brand, may be empty.
+     * @param category The product's category path, may be empty.
+     * @return The selling price in cents.
+     */
+    public long sellingPriceCents(long priceCents, CharSequence brand, CharSequence category) {
+        return apply(ruleFor(brand, category), Math.multiplyExact(priceCents, MICROS_PER_CENT));
+    }
+
+    /**
+     * Prices a SKU from the price text of the API, with up to six decimals taken into account.
+     *
+     * @param price The Dropshipzone price, a plain decimal number of dollars (e.g. "82.41").
+     * @param brand The product's brand, may be empty.
+     * @param category The product's category path, may be empty.
+     * @return The selling price in cents.
+     * @throws NumberFormatException If the price is not a plain decimal number.
+     * @throws ArithmeticException If the selling price does not fit.
+     */
+    public long sellingPriceCents(CharSequence price, CharSequence brand, CharSequence category) {
+        return apply(ruleFor(brand, category), SkuRecordStore.parseFixedPoint(price, PRICE_DECIMALS));
+    }
+
+    private Rule ruleFor(CharSequence brand, CharSequence category) {
+        for (Rule rule : brandRules) {
+            if (regionMatches(brand, rule.match, true)) {
+                return rule;
+            }
+        }
+        for (Rule rule : categoryRules) {
+            if (regionMatches(category, rule.match, false)) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+
+    /**
+     * Case-insensitive comparison of the whole text (exact) or its start (prefix) against a rule's match.
+     */
+    private static boolean regionMatches(CharSequence text, String match, boolean exact) {
+        int length = match.length();
+        if (text.length() < length || (exact && text.length() != length)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char a = text.charAt(i);
+            char b = match.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long apply(Rule rule, long priceMicros) {
+        // Selling price in millionths of millionths of a dollar
+        long scaled = Math.multiplyExact(priceMicros, rule.multiplierMicros);
+        long sellingPriceCents;
+        if (rule.endingCents == NO_ENDING) {
+            sellingPriceCents = Math.floorDiv(scaled + CENT_SCALED / 2, CENT_SCALED);
+        } else {
+            long dollars = Math.floorDiv(scaled, DOLLAR_SCALED);
+            long remainder = Math.floorMod(scaled, DOLLAR_SCALED);
+            if (remainder < WHOLE_DOLLAR_TOLERANCE) {
+                sellingPriceCents = dollars * 100; // Keep as whole number if it is (e.g., 14.00)
+            } else if (remainder > DOLLAR_SCALED - WHOLE_DOLLAR_TOLERANCE) {
+                sellingPriceCents = (dollars + 1) * 100;
+            } else {
+                sellingPriceCents = dollars * 100 + rule.endingCents; // Any decimal part becomes X.95
+            }
+        }
+        return Math.max(sellingPriceCents, rule.floorCents);
+    }
+}
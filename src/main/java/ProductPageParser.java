@@ -0,0 +1,485 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Token-level streaming parser for Dropshipzone /v2/products pages.
+ *
+ * Reads the UTF-8 response bytes straight off the InputStream and extracts only what the integrator
+ * needs: `sku`, `stock_qty`, `cost`, `price`, `brand` and `Category` of each entry in `result`, plus the
+ * page's `total_pages`.
+ * Every other value (the `desc` HTML, `zone_rates`, `gallery`, ...) is skipped byte by byte without
+ * building strings or JSON objects. Field values are written into one reusable {@link Product} per
+ * parse, so apart from the SKU string a page costs no per-item allocation.
+ *
+ * Only keys directly inside a product object are matched, so nested keys such as `zone_rates.sku`
+ * are ignored.
+ */
+public final class ProductPageParser {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] KEY_RESULT = ascii("result");
+    private static final byte[] KEY_TOTAL_PAGES = ascii("total_pages");
+    private static final byte[] KEY_SKU = ascii("sku");
+    private static final byte[] KEY_STOCK_QTY = ascii("stock_qty");
+    private static final byte[] KEY_COST = ascii("cost");
+    private static final byte[] KEY_PRICE = ascii("price");
+    private static final byte[] KEY_BRAND = ascii("brand");
+    private static final byte[] KEY_CATEGORY = ascii("Category");
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    // Scratch space for the key currently being read (keys we match are short ASCII)
+    private byte[] keyBuffer = new byte[32];
+    private int keyLength;
+
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    /**
+     * Receives each product of the page as soon as its closing brace has been read.
+     */
+    @FunctionalInterface
+    public interface ProductHandler {
+        /**
+         * @param product The reusable product holder. Its contents are only valid during the call.
+         */
+        void onProduct(Product product);
+    }
+
+    /**
+     * Reusable holder for the fields extracted from one product. Numeric fields hold the raw JSON
+     * text (quotes removed), so both "82.41" and 82.41 come through as the same characters.
+     */
+    public static final class Product {
+        String sku;
+        final StringBuilder stockQty = new StringBuilder(16);
+        final StringBuilder cost = new StringBuilder(16);
+        final StringBuilder price = new StringBuilder(16);
+        final StringBuilder brand = new StringBuilder(32);
+        final StringBuilder category = new StringBuilder(96);
+
+        void reset() {
+            sku = null;
+            stockQty.setLength(0);
+            cost.setLength(0);
+            price.setLength(0);
+            brand.setLength(0);
+            category.setLength(0);
+        }
+
+        /** @return The SKU, or null if the product had no (string) sku. */
+        public String getSku() {
+            return sku;
+        }
+
+        /** @return The raw stock_qty text, empty if absent or null. */
+        public CharSequence getStockQty() {
+            return stockQty;
+        }
+
+        /** @return The raw cost text, empty if absent or null. */
+        public CharSequence getCost() {
+            return cost;
+        }
+
+        /** @return The raw price text, empty if absent or null. */
+        public CharSequence getPrice() {
+            return price;
+        }
+
+        /** @return The brand, empty if absent or null. */
+        public CharSequence getBrand() {
+            return brand;
+        }
+
+        /** @return The category path (e.g. "Home &amp; Garden &gt; Lighting &gt; "), empty if absent or null. */
+        public CharSequence getCategory() {
+            return category;
+        }
+    }
+
+    /**
+     * Thrown when the response is not the JSON shape we expect.
+     */
+    public static final class MalformedPageException extends IOException {
+        MalformedPageException(String message) {
+            super(message);
+        }
+    }
+
+    private ProductPageParser(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Parses one products page.
+     *
+     * @param in The response body. It is read to the end of the top-level object but not closed.
+     * @param handler Called once per entry in `result`.
+     * @return The page's `total_pages`, or -1 if the page did not report it.
+     * @throws IOException If reading fails or the JSON is malformed.
+     */
+    public static int parse(InputStream in, ProductHandler handler) throws IOException {
+        return new ProductPageParser(in).parsePage(handler);
+    }
+
+    private int parsePage(ProductHandler handler) throws IOException {
+        int totalPages = -1;
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            position++;
+            return totalPages;
+        }
+        Product product = new Product();
+        while (true) {
+            readKey();
+            expect(':');
+            if (keyEquals(KEY_RESULT)) {
+                parseResult(product, handler);
+            } else if (keyEquals(KEY_TOTAL_PAGES)) {
+                scratch.setLength(0);
+                readScalar(scratch);
+                totalPages = parseIntOrDefault(scratch, -1);
+            } else {
+                skipValue();
+            }
+            if (!nextMember('}')) {
+                return totalPages;
+            }
+        }
+    }
+
+    private void parseResult(Product product, ProductHandler handler) throws IOException {
+        int c = peekNonWhitespace();
+        if (c != '[') {
+            skipValue(); // e.g. "result": null
+            return;
+        }
+        position++;
+        if (peekNonWhitespace() == ']') {
+            position++;
+            return;
+        }
+        do {
+            if (peekNonWhitespace() == '{') {
+                parseProduct(product);
+                handler.onProduct(product);
+            } else {
+                skipValue();
+            }
+        } while (nextMember(']'));
+    }
+
+    private void parseProduct(Product product) throws IOException {
+        product.reset();
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            position++;
+            return;
+        }
+        do {
+            readKey();
+            expect(':');
+            if (keyEquals(KEY_SKU)) {
+                if (peekNonWhitespace() == '"') {
+                    scratch.setLength(0);
+                    readString(scratch);
+                    product.sku = scratch.toString();
+                } else {
+                    skipValue();
+                }
+            } else if (keyEquals(KEY_STOCK_QTY)) {
+                readScalar(product.stockQty);
+            } else if (keyEquals(KEY_COST)) {
+                readScalar(product.cost);
+            } else if (keyEquals(KEY_PRICE)) {
+                readScalar(product.price);
+            } else if (keyEquals(KEY_BRAND)) {
+                readScalar(product.brand);
+            } else if (keyEquals(KEY_CATEGORY)) {
+                readScalar(product.category);
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    /**
+     * Consumes the separator after an object member or array element.
+     *
+     * @return true if another member follows, false if the closing bracket was consumed.
+     */
+    private boolean nextMember(char closing) throws IOException {
+        int c = readNonWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == closing) {
+            return false;
+        }
+        throw malformed("expected ',' or '" + closing + "'", c);
+    }
+
+    /**
+     * Reads an object key into keyBuffer. Escapes are kept raw, which is fine for the ASCII keys we match.
+     */
+    private void readKey() throws IOException {
+        expect('"');
+        keyLength = 0;
+        while (true) {
+            int b = read();
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                appendKeyByte(b);
+                b = read();
+            }
+            if (b < 0) {
+                throw malformed("unterminated key", b);
+            }
+            appendKeyByte(b);
+        }
+    }
+
+    private void appendKeyByte(int b) {
+        if (keyLength == keyBuffer.length) {
+            byte[] grown = new byte[keyBuffer.length * 2];
+            System.arraycopy(keyBuffer, 0, grown, 0, keyLength);
+            keyBuffer = grown;
+        }
+        keyBuffer[keyLength++] = (byte) b;
+    }
+
+    private boolean keyEquals(byte[] key) {
+        if (keyLength != key.length) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (keyBuffer[i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a string or bare literal value into target, without quotes. JSON null leaves target unchanged;
+     * nested objects and arrays are skipped.
+     */
+    private void readScalar(StringBuilder target) throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '"') {
+            readString(target);
+        } else if (c == '{' || c == '[') {
+            skipValue();
+        } else {
+            int start = target.length();
+            readLiteral(target);
+            // A four-character literal starting with 'n' can only be null
+            if (target.length() - start == 4 && target.charAt(start) == 'n') {
+                target.setLength(start);
+            }
+        }
+    }
+
+    private void readLiteral(StringBuilder target) throws IOException {
+        while (true) {
+            int c = peek();
+            if (c < 0 || c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                return;
+            }
+            position++;
+            if (target != null) {
+                target.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads a JSON string (opening quote next) into target, decoding escapes and UTF-8.
+     */
+    private void readString(StringBuilder target) throws IOException {
+        expect('"');
+        while (true) {
+            int b = read();
+            if (b == '"') {
+                return;
+            }
+            if (b < 0) {
+                throw malformed("unterminated string", b);
+            }
+            if (b == '\\') {
+                int e = read();
+                switch (e) {
+                    case '"': case '\\': case '/': target.append((char) e); break;
+                    case 'b': target.append('\b'); break;
+                    case 'f': target.append('\f'); break;
+                    case 'n': target.append('\n'); break;
+                    case 'r': target.append('\r'); break;
+                    case 't': target.append('\t'); break;
+                    case 'u': target.append((char) readHex4()); break;
+                    default: throw malformed("invalid escape", e);
+                }
+            } else if (b < 0x80) {
+                target.append((char) b);
+            } else if ((b & 0xE0) == 0xC0) {
+                target.append((char) (((b & 0x1F) << 6) | continuation()));
+            } else if ((b & 0xF0) == 0xE0) {
+                target.append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                target.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    private int continuation() throws IOException {
+        int b = read();
+        if (b < 0 || (b & 0xC0) != 0x80) {
+            throw malformed("invalid UTF-8 sequence", b);
+        }
+        return b & 0x3F;
+    }
+
+    private int readHex4() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int d = Character.digit(read(), 16);
+            if (d < 0) {
+                throw malformed("invalid \\u escape", d);
+            }
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+
+    /**
+     * Skips any JSON value without materialising it.
+     */
+    private void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '"') {
+            position++;
+            skipStringBody();
+        } else if (c == '{' || c == '[') {
+            position++;
+            int depth = 1;
+            while (depth > 0) {
+                int b = read();
+                if (b < 0) {
+                    throw malformed("unterminated container", b);
+                }
+                if (b == '"') {
+                    skipStringBody();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            }
+        } else if (c < 0) {
+            throw malformed("unexpected end of input", c);
+        } else {
+            readLiteral(null);
+        }
+    }
+
+    /**
+     * Skips the rest of a string whose opening quote was already consumed. Multi-byte UTF-8
+     * sequences never contain '"' or '\\' bytes, so a plain byte scan is safe.
+     */
+    private void skipStringBody() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                throw malformed("unterminated string", -1);
+            }
+            byte b = buffer[position++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                if (read() < 0) {
+                    throw malformed("unterminated string", -1);
+                }
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = readNonWhitespace();
+        if (c != expected) {
+            throw malformed("expected '" + expected + "'", c);
+        }
+    }
+
+    private int readNonWhitespace() throws IOException {
+        int c = peekNonWhitespace();
+        if (c >= 0) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c < 0 || !isWhitespace(c)) {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static int parseIntOrDefault(CharSequence text, int defaultValue) {
+        if (text.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return (int) Double.parseDouble(text.toString());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private MalformedPageException malformed(String what, int found) {
+        String foundText = found < 0 ? "end of input" : "'" + (char) found + "'";
+        return new MalformedPageException("Malformed products page: " + what + ", found " + foundText);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,336 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * Dropshipzone /v2/products page responses of earlier runs, keyed by the page's query (SKU batch, page
+ * size and page number), kept in memory and in files under PRODUCT_CACHE_DIR (default a directory in
+ * java.io.tmpdir, /tmp on Lambda) so they survive for the life of the execution environment.
+ *
+ * A cached page younger than PRODUCT_CACHE_TTL_SECONDS (default 0) is used without a request. An older
+ * one is revalidated: fetchStock sends its ETag as If-None-Match and its Last-Modified as
+ * If-Modified-Since, and a 304 Not Modified answer, which has no body, replays the cached page. Pages are
+ * only cached once they have parsed, and only if they can be reused (the response has a validator or a
+ * TTL is set).
+ *
+ * Bodies are kept deflated. Memory and disk are each bounded in bytes (PRODUCT_CACHE_MEMORY_MB, default
+ * 64, and PRODUCT_CACHE_DISK_MB, default 256) and evict the least recently used pages first. Safe for
+ * use from the HttpClient's executor threads.
+ */
+final class ProductResponseCache {
+
+    private static final String FILE_HEADER = "product-page-cache v1";
+    private static final String FILE_SUFFIX = ".page";
+    // Rough per-entry overhead on top of the body and key, for the memory bound
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final boolean ENABLED = Boolean.parseBoolean(Env.get("PRODUCT_CACHE_ENABLED", "true"));
+    private static final long TTL_MILLIS = LambdaHandler.nonNegativeIntFromEnv("PRODUCT_CACHE_TTL_SECONDS", 0) * 1000L;
+    private static final long MEMORY_LIMIT = LambdaHandler.intFromEnv("PRODUCT_CACHE_MEMORY_MB", 64) * 1024L * 1024L;
+    private static final long DISK_LIMIT = LambdaHandler.intFromEnv("PRODUCT_CACHE_DISK_MB", 256) * 1024L * 1024L;
+    private static final Path DIRECTORY = Paths.get(Env.get("PRODUCT_CACHE_DIR",
+            Paths.get(System.getProperty("java.io.tmpdir"), "dropshipzone-products").toString()));
+
+    /**
+     * A cached page and the validators it was served with.
+     */
+    static final class Entry {
+        final String key;
+        final String eTag; // null if the response had none
+        final String lastModified; // null if the response had none
+        final long fetchedAtMillis; // When the page was last fetched or revalidated
+        private final byte[] deflatedBody;
+
+        private Entry(String key, String eTag, String lastModified, long fetchedAtMillis, byte[] deflatedBody) {
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.fetchedAtMillis = fetchedAtMillis;
+            this.deflatedBody = deflatedBody;
+        }
+
+        /**
+         * @return The page body as it was received.
+         */
+        InputStream openBody() {
+            return new InflaterInputStream(new ByteArrayInputStream(deflatedBody));
+        }
+
+        int size() {
+            return deflatedBody.length + 2 * key.length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    // Least recently used first
+    private static final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private static long memoryBytes;
+    // Cache file name -> size, least recently used first; read from the directory on first use
+    private static LinkedHashMap<String, Long> diskIndex;
+    private static long diskBytes;
+
+    private ProductResponseCache() {
+    }
+
+    /**
+     * @return Whether PRODUCT_CACHE_ENABLED is set (default true).
+     */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @return Whether the page is within PRODUCT_CACHE_TTL_SECONDS and can be used without revalidating it.
+     */
+    static boolean isFresh(Entry entry) {
+        return TTL_MILLIS > 0 && System.currentTimeMillis() - entry.fetchedAtMillis < TTL_MILLIS;
+    }
+
+    /**
+     * @return The cached page for the query, from memory or its cache file, or null if there is none.
+     */
+    static Entry get(String key) {
+        synchronized (ProductResponseCache.class) {
+            Entry cached = memory.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Path file = DIRECTORY.resolve(fileName(key));
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (!FILE_HEADER.equals(in.readUTF()) || !key.equals(readString(in))) {
+                return null;
+            }
+            String eTag = in.readUTF();
+            String lastModified = in.readUTF();
+            long fetchedAtMillis = in.readLong();
+            byte[] deflatedBody = new byte[checkedLength(in)];
+            in.readFully(deflatedBody);
+            Entry entry = new Entry(key, eTag.isEmpty() ? null : eTag, lastModified.isEmpty() ? null : lastModified,
+                    fetchedAtMillis, deflatedBody);
+            remember(entry);
+            touch(file);
+            return entry;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Log.warn("Warning: Ignoring unreadable product page cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Caches a page that has just been fetched and parsed. A failure to write the cache file is logged;
+     * the page is still kept in memory.
+     *
+     * @return The cached entry, or null if the page cannot be reused and was not cached.
+     */
+    static Entry put(String key, String eTag, String lastModified, byte[] body) {
+        if (eTag == null && lastModified == null && TTL_MILLIS <= 0) {
+            return null; // Nothing to revalidate with
+        }
+        Entry entry = new Entry(key, eTag, lastModified, System.currentTimeMillis(), deflate(body));
+        store(entry);
+        return entry;
+    }
+
+    /**
+     * Records that the API confirmed a cached page (304 Not Modified), restarting its TTL.
+     */
+    static void revalidated(Entry cached) {
+        if (TTL_MILLIS > 0) {
+            store(new Entry(cached.key, cached.eTag, cached.lastModified, System.currentTimeMillis(), cached.deflatedBody));
+        }
+    }
+
+    private static void store(Entry entry) {
+        remember(entry);
+
+        Path file = DIRECTORY.resolve(fileName(entry.key));
+        Path temporary = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.deflatedBody.length + 256);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeUTF(FILE_HEADER);
+                writeString(out, entry.key);
+                out.writeUTF(entry.eTag != null ? entry.eTag : "");
+                out.writeUTF(entry.lastModified != null ? entry.lastModified : "");
+                out.writeLong(entry.fetchedAtMillis);
+                out.writeInt(entry.deflatedBody.length);
+                out.write(entry.deflatedBody);
+            }
+            Files.createDirectories(DIRECTORY);
+            Files.write(temporary, bytes.toByteArray());
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            evictFromDisk(file.getFileName().toString(), bytes.size());
+        } catch (IOException e) {
+            Log.warn("Warning: Failed to write product page cache " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Left for the next write of the same page to replace
+            }
+        }
+    }
+
+    /**
+     * Adds an entry to memory, evicting the least recently used entries beyond PRODUCT_CACHE_MEMORY_MB.
+     */
+    private static synchronized void remember(Entry entry) {
+        Entry replaced = memory.put(entry.key, entry);
+        memoryBytes += entry.size() - (replaced != null ? replaced.size() : 0);
+        Iterator<Entry> eldest = memory.values().iterator();
+        while (memoryBytes > MEMORY_LIMIT && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            if (evicted != entry) {
+                memoryBytes -= evicted.size();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Records a written cache file and deletes the least recently used files beyond PRODUCT_CACHE_DISK_MB.
+     */
+    private static void evictFromDisk(String written, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (ProductResponseCache.class) {
+            loadDiskIndex();
+            Long replaced = diskIndex.put(written, size);
+            diskBytes += size - (replaced != null ? replaced : 0);
+            Iterator<Map.Entry<String, Long>> eldest = diskIndex.entrySet().iterator();
+            while (diskBytes > DISK_LIMIT && eldest.hasNext()) {
+                Map.Entry<String, Long> file = eldest.next();
+                if (!file.getKey().equals(written)) {
+                    diskBytes -= file.getValue();
+                    evicted.add(file.getKey());
+                    eldest.remove();
+                }
+            }
+        }
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(DIRECTORY.resolve(name));
+            } catch (IOException e) {
+                Log.warn("Warning: Failed to evict product page cache file " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Marks a cache file as used, in the index and through its modification time (which orders the
+     * index when it is next read from the directory).
+     */
+    private static void touch(Path file) {
+        synchronized (ProductResponseCache.class) {
+            loadDiskIndex();
+            diskIndex.get(file.getFileName().toString());
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects eviction order
+        }
+    }
+
+    private static void loadDiskIndex() {
+        if (diskIndex != null) {
+            return;
+        }
+        diskIndex = new LinkedHashMap<>(256, 0.75f, true);
+        diskBytes = 0;
+        List<Map.Entry<Path, FileTime>> files = new ArrayList<>();
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(DIRECTORY, "*" + FILE_SUFFIX)) {
+            for (Path file : directory) {
+                files.add(Map.entry(file, Files.getLastModifiedTime(file)));
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            Log.warn("Warning: Failed to list product page cache " + DIRECTORY + ": " + e.getMessage());
+            return;
+        }
+        files.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Path, FileTime> file : files) {
+            try {
+                long size = Files.size(file.getKey());
+                diskIndex.put(file.getKey().getFileName().toString(), size);
+                diskBytes += size;
+            } catch (IOException e) {
+                // Removed since it was listed
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater, 8192)) {
+                out.write(body);
+            }
+            return deflated.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Deflating to memory failed", e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // The key is written with an int length: a batch query can exceed writeUTF's 64 KB limit
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[checkedLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checkedLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("truncated cache file");
+        }
+        return length;
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16) + FILE_SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Shared request-execution layer for the Dropshipzone and Neto APIs.
+ *
+ * Every request goes through a per-host policy made of:
+ * - a token bucket that caps the request rate (requests/second with a small burst),
+ * - an adaptive concurrency limit (AIMD): the limit grows by 1/limit per fast success and is cut
+ *   multiplicatively when the host throttles (429/503), an attempt fails with an I/O error, or
+ *   latency rises well above its baseline,
+ * - retries for 429, 5xx and I/O errors, honouring Retry-After and otherwise using exponential
+ *   backoff with full jitter.
+ *
+ * A Retry-After from a host also drains that host's token bucket, so the pause applies to every
+ * request in flight to it, not only the one that was throttled.
+ */
+public class RequestExecutor {
+
+    // Defaults for hosts without an explicit policy
+    private static final double DEFAULT_RATE_PER_SECOND = 20.0;
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    // Retry settings
+    public static final int DEFAULT_MAX_RETRIES = 4;
+    private static final long BASE_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 20000;
+
+    private final HttpClient httpClient;
+    private final int maxRetries;
+    private final Map<String, HostPolicy> hostPolicies = new ConcurrentHashMap<>();
+    private final List<RequestListener> requestListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Notified once per call when its final response (or error) arrives, after any retries.
+     * Called on an HttpClient thread, so implementations must be thread-safe and quick.
+     */
+    @FunctionalInterface
+    public interface RequestListener {
+        /**
+         * @param request The request as sent.
+         * @param statusCode The final status code, or -1 if the call failed with an I/O error.
+         * @param elapsedNanos Time from sendAsync to completion, including rate-limit waits and retries.
+         */
+        void onComplete(HttpRequest request, int statusCode, long elapsedNanos);
+    }
+
+    /**
+     * @param httpClient The shared HttpClient used to send requests.
+     * @param maxRetries The number of retries after the first attempt for retryable failures.
+     */
+    public RequestExecutor(HttpClient httpClient, int maxRetries) {
+        this.httpClient = httpClient;
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @param requestListener Receives every completed call until removed.
+     */
+    public void addRequestListener(RequestListener requestListener) {
+        requestListeners.add(requestListener);
+    }
+
+    public void removeRequestListener(RequestListener requestListener) {
+        requestListeners.remove(requestListener);
+    }
+
+    /**
+     * Sets the rate and concurrency policy for a host. Replaces any existing policy for it.
+     *
+     * @param host The host name (as in URI.getHost()).
+     * @param ratePerSecond The sustained request rate allowed.
+     * @param maxConcurrency The upper bound for the adaptive concurrency limit.
+     */
+    public void configureHost(String host, double ratePerSecond, int maxConcurrency) {
+        hostPolicies.put(host, new HostPolicy(ratePerSecond, maxConcurrency));
+        Log.info("Request policy for host " + host + ": rate=" + ratePerSecond + "/s, maxConcurrency=" + maxConcurrency);
+    }
+
+    /**
+     * Sends a request, blocking until it succeeds, fails with a non-retryable status, or runs out of retries.
+     * A response is returned for any status code; only I/O failures are thrown.
+     *
+     * @throws IOException If the request failed with an I/O error on the last attempt.
+     * @throws InterruptedException If the calling thread was interrupted while waiting.
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, bodyHandler).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sends a request asynchronously through the host's rate limiter and concurrency limiter, retrying
+     * retryable failures. The returned future completes with the final response, or exceptionally
+     * with the last I/O error.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        HostPolicy policy = policyFor(request);
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        if (!requestListeners.isEmpty()) {
+            long startNanos = System.nanoTime();
+            result.whenComplete((response, error) -> {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                for (RequestListener listener : requestListeners) {
+                    listener.onComplete(request, response != null ? response.statusCode() : -1, elapsedNanos);
+                }
+            });
+        }
+        attempt(request, bodyHandler, policy, 0, result);
+        return result;
+    }
+
+    private <T> void attempt(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, HostPolicy policy, int retry, CompletableFuture<HttpResponse<T>> result) {
+        // Set while this attempt holds a concurrency slot, so every path returns it exactly once
+        AtomicBoolean holdsSlot = new AtomicBoolean();
+        policy.limiter.acquire().thenCompose(ignored -> {
+            holdsSlot.set(true);
+            long waitNanos = policy.bucket.reserve();
+            CompletableFuture<Void> ready = waitNanos <= 0
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+            return ready.thenCompose(rateLimited -> {
+                long startNanos = System.nanoTime();
+                return httpClient.sendAsync(request, bodyHandler).handle((response, error) -> {
+                    long latencyNanos = System.nanoTime() - startNanos;
+                    boolean throttled = response != null && (response.statusCode() == 429 || response.statusCode() == 503);
+                    if (holdsSlot.compareAndSet(true, false)) {
+                        policy.limiter.release(throttled, error == null ? latencyNanos : -1);
+                    }
+                    onAttemptComplete(request, bodyHandler, policy, retry, result, response, error);
+                    return null;
+                });
+            });
+        }).exceptionally(t -> {
+            // Reached if scheduling failed or sendAsync threw before sending; never leave the caller hanging
+            if (holdsSlot.compareAndSet(true, false)) {
+                policy.limiter.releaseUnused();
+            }
+            result.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            return null;
+        });
+    }
+
+    private <T> void onAttemptComplete(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, HostPolicy policy, int retry,
+                                       CompletableFuture<HttpResponse<T>> result, HttpResponse<T> response, Throwable error) {
+        boolean retryable = error != null || isRetryableStatus(response.statusCode());
+        if (!retryable || retry >= maxRetries) {
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                result.complete(response);
+            }
+            return;
+        }
+
+        long delayMs = backoffMillis(retry);
+        if (response != null) {
+            long retryAfterMs = parseRetryAfterMillis(response);
+            if (retryAfterMs >= 0) {
+                delayMs = Math.min(retryAfterMs, MAX_BACKOFF_MS * 3);
+                policy.bucket.pause(TimeUnit.MILLISECONDS.toNanos(delayMs));
+            }
+            discardBody(response.body());
+        }
+
+        Log.warn("Retrying " + request.method() + " " + request.uri().getHost() + request.uri().getPath()
+                + " after " + (error != null ? "error: " + error.getMessage() : "status " + response.statusCode())
+                + " (retry " + (retry + 1) + " of " + maxRetries + ", in " + delayMs + " ms).");
+
+        CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
+                .execute(() -> attempt(request, bodyHandler, policy, retry + 1, result));
+    }
+
+    private HostPolicy policyFor(HttpRequest request) {
+        String host = request.uri().getHost();
+        return hostPolicies.computeIfAbsent(host == null ? "" : host, h -> new HostPolicy(DEFAULT_RATE_PER_SECOND, DEFAULT_MAX_CONCURRENCY));
+    }
+
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Exponential backoff with full jitter: a random delay in [0, min(MAX, BASE * 2^retry)].
+     */
+    private static long backoffMillis(int retry) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(retry, 16));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Reads Retry-After as either delta-seconds or an HTTP-date.
+     *
+     * @return The delay in milliseconds, or -1 if the header is absent or invalid.
+     */
+    private static long parseRetryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toMillis());
+            } catch (RuntimeException parseE) {
+                return -1;
+            }
+        }
+    }
+
+    private static void discardBody(Object body) {
+        if (body instanceof InputStream) {
+            try {
+                ((InputStream) body).close();
+            } catch (IOException ignored) {
+                // Nothing useful to do; the response is being thrown away
+            }
+        }
+    }
+
+    /**
+     * Rate limiter and concurrency limiter for one host.
+     */
+    private static final class HostPolicy {
+        final TokenBucket bucket;
+        final AdaptiveConcurrencyLimiter limiter;
+
+        HostPolicy(double ratePerSecond, int maxConcurrency) {
+            this.bucket = new TokenBucket(ratePerSecond, Math.max(1.0, ratePerSecond));
+            this.limiter = new AdaptiveConcurrencyLimiter(1, Math.max(1, maxConcurrency));
+        }
+    }
+
+    /**
+     * Token bucket that hands out reservations: a caller takes a token immediately and is told how
+     * long to wait before using it, which keeps the bucket non-blocking and fair in arrival order.
+     */
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.tokensPerNano = Math.max(0.001, ratePerSecond) / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * @return Nanoseconds the caller must wait before sending (0 if a token was available).
+         */
+        synchronized long reserve() {
+            refill();
+            tokens -= 1.0;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+
+        /**
+         * Pushes the bucket into debt so no request is released for at least pauseNanos.
+         */
+        synchronized void pause(long pauseNanos) {
+            refill();
+            tokens = Math.min(tokens, -pauseNanos * tokensPerNano);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    /**
+     * AIMD concurrency limiter. Waiters are queued as futures so acquiring never blocks a thread.
+     */
+    private static final class AdaptiveConcurrencyLimiter {
+        // Latency above this multiple of the baseline counts as congestion
+        private static final double LATENCY_TOLERANCE = 2.0;
+        private static final double THROTTLE_DECREASE = 0.5;
+        private static final double LATENCY_DECREASE = 0.9;
+
+        private final int minLimit;
+        private final int maxLimit;
+        private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private double limit;
+        private int inFlight;
+        private double baselineLatencyNanos;
+
+        AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = Math.max(minLimit, maxLimit);
+            this.limit = Math.max(minLimit, (maxLimit + 1) / 2);
+        }
+
+        synchronized CompletableFuture<Void> acquire() {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+
+        /**
+         * @param throttled Whether the host answered 429/503.
+         * @param latencyNanos The observed latency, or a negative value if the attempt failed with an I/O error.
+         */
+        void release(boolean throttled, long latencyNanos) {
+            List<CompletableFuture<Void>> granted;
+            synchronized (this) {
+                inFlight--;
+                if (throttled || latencyNanos < 0) {
+                    limit = Math.max(minLimit, limit * THROTTLE_DECREASE);
+                } else {
+                    if (baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos) {
+                        baselineLatencyNanos = latencyNanos;
+                    } else {
+                        // Let the baseline drift up slowly so a one-off fast response does not pin it
+                        baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) * 0.01;
+                    }
+                    if (latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+                        limit = Math.max(minLimit, limit * LATENCY_DECREASE);
+                    } else {
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                }
+                granted = grantWaiters();
+            }
+            complete(granted);
+        }
+
+        /**
+         * Returns a slot whose request was never sent, without adjusting the limit.
+         */
+        void releaseUnused() {
+            List<CompletableFuture<Void>> granted;
+            synchronized (this) {
+                inFlight--;
+                granted = grantWaiters();
+            }
+            complete(granted);
+        }
+
+        private List<CompletableFuture<Void>> grantWaiters() {
+            List<CompletableFuture<Void>> granted = new ArrayList<>();
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                inFlight++;
+                granted.add(waiters.poll());
+            }
+            return granted;
+        }
+
+        private static void complete(List<CompletableFuture<Void>> granted) {
+            // Complete outside the lock; dependants start the next request inline
+            for (CompletableFuture<Void> waiter : granted) {
+                waiter.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Progress of a run that did not finish within one invocation, saved to S3 so the next invocation
+ * can resume it instead of starting over.
+ *
+ * A checkpoint holds:
+ * - the fingerprint of the SKU list it was made for (a changed list invalidates it),
+ * - the SKU batches (of DROPSHIPZONE_API_SKU_LIMIT SKUs, in input order) whose pages were all fetched,
+ * - the records processed so far, so the final output CSV covers every batch,
+ * - the SKUs still to be sent to Neto (skipped at the deadline) and those Neto rejected.
+ *
+ * It is stored as one line of JSON with the above, followed by the records in the snapshot CSV format.
+ */
+public final class RunCheckpoint {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final String fingerprint;
+    private final long startedAtMillis;
+    private final BitSet completedBatches;
+    private final Set<String> pendingNetoSkus;
+    private final Set<String> failedNetoSkus;
+    private final SkuRecordStore records;
+
+    /**
+     * Starts the progress of a new run.
+     *
+     * @param fingerprint The fingerprint of the run's SKU list, see {@link #fingerprint(List)}.
+     */
+    public RunCheckpoint(String fingerprint) {
+        this(fingerprint, System.currentTimeMillis(), new BitSet(), new HashSet<>(), new HashSet<>(), new SkuRecordStore());
+    }
+
+    private RunCheckpoint(String fingerprint, long startedAtMillis, BitSet completedBatches,
+                          Set<String> pendingNetoSkus, Set<String> failedNetoSkus, SkuRecordStore records) {
+        this.fingerprint = fingerprint;
+        this.startedAtMillis = startedAtMillis;
+        this.completedBatches = completedBatches;
+        this.pendingNetoSkus = pendingNetoSkus;
+        this.failedNetoSkus = failedNetoSkus;
+        this.records = records;
+    }
+
+    /**
+     * @return A fingerprint of the SKU list (count and SHA-256 of the SKUs in order).
+     */
+    public static String fingerprint(List<String> skus) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String sku : skus) {
+                digest.update(sku.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return skus.size() + ":" + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return When the run this checkpoint belongs to started (epoch millis).
+     */
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    /**
+     * @return The indices of the SKU batches fetched completely. Updated in place by the fetch.
+     */
+    public BitSet getCompletedBatches() {
+        return completedBatches;
+    }
+
+    /**
+     * @return The SKUs that still have to be sent to Neto.
+     */
+    public Set<String> getPendingNetoSkus() {
+        return pendingNetoSkus;
+    }
+
+    /**
+     * @return The SKUs Neto failed to update in earlier invocations of the run.
+     */
+    public Set<String> getFailedNetoSkus() {
+        return failedNetoSkus;
+    }
+
+    /**
+     * @return The records processed by earlier invocations of the run.
+     */
+    public SkuRecordStore getRecords() {
+        return records;
+    }
+
+    /**
+     * Writes the checkpoint with the records processed so far.
+     *
+     * @param s3Client The S3Client instance.
+     * @param bucketName The bucket to write to.
+     * @param key The checkpoint's object key.
+     * @param currentRecords All records processed by the run so far.
+     * @throws IOException If the upload fails.
+     */
+    public void save(S3Client s3Client, String bucketName, String key, SkuRecordStore currentRecords) throws IOException {
+        JSONArray batches = new JSONArray();
+        synchronized (completedBatches) {
+            for (int batch = completedBatches.nextSetBit(0); batch >= 0; batch = completedBatches.nextSetBit(batch + 1)) {
+                batches.put(batch);
+            }
+        }
+        JSONObject header = new JSONObject()
+                .put("version", FORMAT_VERSION)
+                .put("fingerprint", fingerprint)
+                .put("startedAt", startedAtMillis)
+                .put("completedBatches", batches)
+                .put("pendingNetoSkus", new JSONArray(pendingNetoSkus))
+                .put("failedNetoSkus", new JSONArray(failedNetoSkus));
+
+        try {
+            CsvStreamWriter.upload(s3Client, bucketName, key, "text/plain", false, csv -> {
+                csv.writeLine(header.toString());
+                csv.writeHeader();
+                csv.writeRecords(currentRecords);
+            });
+            Log.info("Saved run checkpoint to s3://" + bucketName + "/" + key + ": " + batches.length() + " SKU batches done, "
+                    + pendingNetoSkus.size() + " Neto updates pending.");
+        } catch (Exception e) {
+            throw new IOException("Failed to save run checkpoint to S3.", e);
+        }
+    }
+
+    /**
+     * Reads the checkpoint, if there is one.
+     *
+     * @param s3Client The S3Client instance.
+     * @param bucketName The bucket to read from.
+     * @param key The checkpoint's object key.
+     * @return The checkpoint, or null if none exists or it cannot be read.
+     */
+    public static RunCheckpoint load(S3Client s3Client, String bucketName, String key) {
+        try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s3Object, StandardCharsets.UTF_8))) {
+            JSONObject header = new JSONObject(reader.readLine());
+            if (header.optInt("version") != FORMAT_VERSION) {
+                Log.warn("Warning: Ignoring run checkpoint with unknown version " + header.opt("version") + ".");
+                return null;
+            }
+            BitSet completedBatches = new BitSet();
+            JSONArray batches = header.getJSONArray("completedBatches");
+            for (int i = 0; i < batches.length(); i++) {
+                completedBatches.set(batches.getInt(i));
+            }
+            return new RunCheckpoint(header.getString("fingerprint"), header.getLong("startedAt"), completedBatches,
+                    skuSet(header.optJSONArray("pendingNetoSkus")), skuSet(header.optJSONArray("failedNetoSkus")),
+                    SnapshotDiff.parseSnapshotCsv(reader));
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Warning: Ignoring unreadable run checkpoint s3://" + bucketName + "/" + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes the checkpoint once its run has completed. Failures are logged, not thrown.
+     */
+    public static void delete(S3Client s3Client, String bucketName, String key) {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+        } catch (Exception e) {
+            Log.warn("Warning: Failed to delete run checkpoint s3://" + bucketName + "/" + key + ": " + e.getMessage());
+        }
+    }
+
+    private static Set<String> skuSet(JSONArray skus) {
+        Set<String> set = new HashSet<>();
+        if (skus != null) {
+            for (int i = 0; i < skus.length(); i++) {
+                set.add(skus.getString(i));
+            }
+        }
+        return set;
+    }
+}
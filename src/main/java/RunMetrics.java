@@ -0,0 +1,174 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.http.HttpRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The metrics of one run: how long each phase took, counts (SKUs, Neto batches, failures, skipped
+ * pages) and a latency histogram and error count per call type, taken from every Dropshipzone and
+ * Neto call as a RequestExecutor listener.
+ *
+ * {@link #emit()} writes them to standard output as one line of CloudWatch Embedded Metric Format
+ * (EMF), which CloudWatch Logs turns into metrics under METRICS_NAMESPACE (default NetoStockUpdate)
+ * with the function name as dimension; no PutMetricData calls are made. Histograms are written as
+ * EMF value/count pairs, one per latency bucket, so CloudWatch can compute percentiles across runs.
+ * METRICS_ENABLED=false turns the line off.
+ */
+final class RunMetrics implements RequestExecutor.RequestListener {
+
+    private static final String DEFAULT_NAMESPACE = "NetoStockUpdate";
+
+    // Upper bounds of the latency buckets in milliseconds; slower calls go to a last, open bucket
+    private static final long[] BUCKET_BOUNDS_MS = {5, 10, 25, 50, 75, 100, 150, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000, 10000, 20000, 60000};
+
+    /**
+     * Call latencies in fixed buckets; each bucket reports the mean of its calls.
+     */
+    private static final class Histogram {
+        private final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+        private final double[] sumsMs = new double[BUCKET_BOUNDS_MS.length + 1];
+
+        synchronized void record(long elapsedNanos) {
+            double millis = elapsedNanos / 1_000_000.0;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && millis > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            sumsMs[bucket] += millis;
+        }
+
+        synchronized JSONObject toEmf() {
+            JSONArray values = new JSONArray();
+            JSONArray bucketCounts = new JSONArray();
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                if (counts[bucket] > 0) {
+                    values.put(Math.round(sumsMs[bucket] / counts[bucket] * 10) / 10.0);
+                    bucketCounts.put(counts[bucket]);
+                }
+            }
+            return new JSONObject().put("Values", values).put("Counts", bucketCounts);
+        }
+    }
+
+    private final String functionName;
+    private final String runMode;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>(); // Guarded by itself
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param functionName The Lambda function name, used as the metrics' dimension.
+     * @param runMode single, coordinator or worker; written as a property of the line.
+     */
+    RunMetrics(String functionName, String runMode) {
+        this.functionName = functionName != null ? functionName : "unknown";
+        this.runMode = runMode;
+    }
+
+    /**
+     * @return Whether METRICS_ENABLED is set (default true).
+     */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(Env.get("METRICS_ENABLED", "true"));
+    }
+
+    /**
+     * Records a phase that started at phaseStartNanos (from System.nanoTime()) and has just ended.
+     * A phase recorded more than once adds up.
+     */
+    void endPhase(String phase, long phaseStartNanos) {
+        long millis = (System.nanoTime() - phaseStartNanos) / 1_000_000;
+        synchronized (phaseMillis) {
+            phaseMillis.merge(phase, millis, Long::sum);
+        }
+    }
+
+    /**
+     * Adds to a count.
+     */
+    void count(String name, long amount) {
+        counts.computeIfAbsent(name, n -> new AtomicLong()).addAndGet(amount);
+    }
+
+    @Override
+    public void onComplete(HttpRequest request, int statusCode, long elapsedNanos) {
+        String type = callType(request);
+        latencies.computeIfAbsent(type, t -> new Histogram()).record(elapsedNanos);
+        count(type + "Calls", 1);
+        if (statusCode < 0 || statusCode >= 400) {
+            count(type + "Errors", 1);
+        } else if (statusCode == 304) {
+            count(type + "NotModified", 1);
+        }
+    }
+
+    private static String callType(HttpRequest request) {
+        String action = request.headers().firstValue("NETOAPI_ACTION").orElse(null);
+        if (action != null) {
+            return "Neto" + action;
+        }
+        return request.uri().getPath().endsWith("/auth") ? "DropshipzoneAuth" : "DropshipzoneProducts";
+    }
+
+    /**
+     * @return The run's metrics as an EMF line. SkusPerSecond is SkusProcessed over the run time so far.
+     */
+    String toEmf() {
+        long runMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        JSONObject line = new JSONObject();
+        JSONArray metrics = new JSONArray();
+
+        line.put("FunctionName", functionName);
+        line.put("RunMode", runMode);
+        line.put("RunTime", runMillis);
+        metrics.put(metric("RunTime", "Milliseconds"));
+        synchronized (phaseMillis) {
+            for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+                line.put(phase.getKey() + "Time", phase.getValue());
+                metrics.put(metric(phase.getKey() + "Time", "Milliseconds"));
+            }
+        }
+        for (Map.Entry<String, AtomicLong> count : counts.entrySet()) {
+            line.put(count.getKey(), count.getValue().get());
+            metrics.put(metric(count.getKey(), "Count"));
+        }
+        AtomicLong processed = counts.get("SkusProcessed");
+        if (processed != null && runMillis > 0) {
+            line.put("SkusPerSecond", Math.round(processed.get() * 1000.0 / runMillis * 10) / 10.0);
+            metrics.put(metric("SkusPerSecond", "Count/Second"));
+        }
+        for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+            line.put(latency.getKey() + "Latency", latency.getValue().toEmf());
+            metrics.put(metric(latency.getKey() + "Latency", "Milliseconds"));
+        }
+
+        JSONObject directive = new JSONObject()
+                .put("Namespace", Env.get("METRICS_NAMESPACE", DEFAULT_NAMESPACE))
+                .put("Dimensions", new JSONArray().put(new JSONArray().put("FunctionName")))
+                .put("Metrics", metrics);
+        line.put("_aws", new JSONObject()
+                .put("Timestamp", System.currentTimeMillis())
+                .put("CloudWatchMetrics", new JSONArray().put(directive)));
+        return line.toString();
+    }
+
+    /**
+     * Writes the EMF line to standard output, unless METRICS_ENABLED is false.
+     */
+    void emit() {
+        if (isEnabled()) {
+            System.out.println(toEmf());
+        }
+    }
+
+    private static JSONObject metric(String name, String unit) {
+        return new JSONObject().put("Name", name).put("Unit", unit);
+    }
+}
@@ -0,0 +1,58 @@
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+
+/**
+ * Lambda entry point for S3 object-created events of the SKU input file, next to the scheduled
+ * LambdaHandler. Configure the input bucket to notify a function with the handler
+ * S3InputEventHandler::handleRequest (and the same environment as the scheduled function); a new
+ * input file then takes effect in seconds instead of at the next scheduled run.
+ *
+ * Only records for S3_INPUT_BUCKET_NAME / S3_INPUT_FILE_KEY are handled, each object once per
+ * event; see LambdaHandler#handleInputChange for what is done with them.
+ */
+public class S3InputEventHandler implements RequestHandler<S3Event, Void> {
+
+    private final LambdaHandler handler;
+
+    public S3InputEventHandler() {
+        this(new LambdaHandler());
+    }
+
+    /**
+     * @param handler The handler whose clients and updater workers are used (local runs share one).
+     */
+    S3InputEventHandler(LambdaHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public Void handleRequest(S3Event event, Context context) {
+        String inputBucketName = Env.get("S3_INPUT_BUCKET_NAME");
+        String inputFileKey = Env.get("S3_INPUT_FILE_KEY");
+
+        // An event may carry several records for the same object; the current version is read once
+        Set<String> changedKeys = new LinkedHashSet<>();
+        for (S3EventNotification.S3EventNotificationRecord record : event.getRecords()) {
+            String eventName = record.getEventName();
+            String bucketName = record.getS3().getBucket().getName();
+            String key = record.getS3().getObject().getUrlDecodedKey();
+            if (eventName == null || !eventName.startsWith("ObjectCreated")) {
+                Log.info("Ignoring " + eventName + " event for s3://" + bucketName + "/" + key + ".");
+            } else if (!bucketName.equals(inputBucketName) || !key.equals(inputFileKey)) {
+                Log.info("Ignoring event for s3://" + bucketName + "/" + key + ", which is not the SKU input file (S3_INPUT_BUCKET_NAME, S3_INPUT_FILE_KEY).");
+            } else {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : changedKeys) {
+            handler.handleInputChange(inputBucketName, key, context);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,299 @@
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Writes an S3 object as it is produced, through a multipart upload.
+ *
+ * Bytes are collected into a part buffer; each full part is uploaded in the background while the
+ * next one is filled, with at most maxPartsInFlight parts uploading at a time. Memory use is
+ * therefore bounded by (maxPartsInFlight + 1) part buffers, whatever the size of the object.
+ * An object that never fills a part is written with a single PutObject instead.
+ *
+ * {@link #close()} completes the upload and throws if any part failed. A writer that fails before
+ * it is done must call {@link #abort()} instead, so no partial object is created.
+ */
+public final class S3MultipartOutputStream extends OutputStream {
+
+    /** The smallest part S3 accepts (except for the last part of an upload). */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String contentType;
+    private final String contentEncoding;
+    private final int partSize;
+    private final int maxPartsInFlight;
+
+    // Bounds the part buffers held by uploads still running; their buffers are reused once done
+    private final Semaphore partsInFlight;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+    private ExecutorService uploader; // Started with the multipart upload
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int count;
+    private long totalBytes;
+    private String uploadId;
+    private boolean closed;
+
+    /**
+     * @param s3Client The S3Client instance.
+     * @param bucketName The bucket to write to.
+     * @param key The object key.
+     * @param contentType The object's Content-Type.
+     * @param contentEncoding The object's Content-Encoding, or null.
+     * @param partSize The size of each part in bytes, at least {@link #MIN_PART_SIZE}.
+     * @param maxPartsInFlight How many parts may upload at the same time.
+     */
+    public S3MultipartOutputStream(S3Client s3Client, String bucketName, String key, String contentType, String contentEncoding,
+                                   int partSize, int maxPartsInFlight) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+        this.maxPartsInFlight = Math.max(1, maxPartsInFlight);
+        this.partsInFlight = new Semaphore(this.maxPartsInFlight);
+        this.freeBuffers = new ArrayBlockingQueue<>(this.maxPartsInFlight);
+    }
+
+    /**
+     * @return The number of bytes written so far.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The number of parts uploaded or uploading, 0 if the object has not reached one part.
+     */
+    public int getPartCount() {
+        return parts.size();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            makeRoom(1);
+        }
+        buffer[count++] = (byte) b;
+        totalBytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == buffer.length) {
+                makeRoom(len);
+            }
+            int chunk = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, chunk);
+            count += chunk;
+            totalBytes += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * Grows the buffer up to the part size, and once it holds a full part hands it to an upload.
+     */
+    private void makeRoom(int wanted) throws IOException {
+        if (buffer.length < partSize) {
+            long grown = Math.max((long) buffer.length * 2, (long) count + wanted);
+            buffer = Arrays.copyOf(buffer, (int) Math.min(partSize, grown));
+        } else {
+            uploadBufferedPart();
+        }
+    }
+
+    private void uploadBufferedPart() throws IOException {
+        if (uploadId == null) {
+            startMultipartUpload();
+        }
+        rethrowFailedPart();
+        try {
+            partsInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload slot.", e);
+        }
+
+        byte[] part = buffer;
+        int length = count;
+        int partNumber = parts.size() + 1;
+        parts.add(CompletableFuture.supplyAsync(() -> uploadPart(partNumber, part, length), uploader)
+                .whenComplete((completed, error) -> {
+                    freeBuffers.offer(part);
+                    partsInFlight.release();
+                }));
+
+        byte[] free = freeBuffers.poll();
+        buffer = free != null ? free : new byte[partSize];
+        count = 0;
+    }
+
+    private void startMultipartUpload() throws IOException {
+        try {
+            uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .contentEncoding(contentEncoding)
+                    .build()).uploadId();
+        } catch (Exception e) {
+            throw new IOException("Failed to start multipart upload to s3://" + bucketName + "/" + key + ".", e);
+        }
+        uploader = Executors.newFixedThreadPool(maxPartsInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "s3-part-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private CompletedPart uploadPart(int partNumber, byte[] part, int length) {
+        String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) length)
+                .build(), RequestBody.fromInputStream(new ByteArrayInputStream(part, 0, length), length)).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    }
+
+    /**
+     * Fails fast when an earlier part has already failed, rather than only at close.
+     */
+    private void rethrowFailedPart() throws IOException {
+        for (CompletableFuture<CompletedPart> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                try {
+                    part.join();
+                } catch (CompletionException e) {
+                    throw new IOException("Failed to upload a part to s3://" + bucketName + "/" + key + ".", e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads what is left and completes the object. If anything fails the multipart upload is
+     * aborted and the exception thrown.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (uploadId == null) {
+                s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentEncoding(contentEncoding)
+                        .build(), RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, count), count));
+                return;
+            }
+            if (count > 0) {
+                uploadBufferedPart();
+            }
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+        } catch (Exception e) {
+            abortUpload();
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Failed to upload s3://" + bucketName + "/" + key + ": " + cause.getMessage(), cause);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Discards everything written: no object is created. Safe to call after close.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        abortUpload();
+        release();
+    }
+
+    private void abortUpload() {
+        if (uploadId == null) {
+            return;
+        }
+        // Let running parts finish first, or S3 may keep their storage after the abort
+        for (CompletableFuture<CompletedPart> part : parts) {
+            try {
+                part.join();
+            } catch (CompletionException e) {
+                // Already reported by the caller
+            }
+        }
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            Log.warn("Warning: Failed to abort multipart upload to s3://" + bucketName + "/" + key
+                    + " (a bucket lifecycle rule for incomplete uploads will remove it): " + e.getMessage());
+        }
+    }
+
+    private void release() {
+        if (uploader != null) {
+            uploader.shutdown();
+        }
+        buffer = null;
+        freeBuffers.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload to s3://" + bucketName + "/" + key + " is already closed.");
+        }
+    }
+}
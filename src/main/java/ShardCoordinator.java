@@ -0,0 +1,187 @@
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+
+/**
+ * Coordinator side of a sharded run (RUN_MODE=coordinator).
+ *
+ * Splits the SKU list into shards, starts one worker per shard through a {@link ShardInvoker} and
+ * waits for them. Each worker fetches, prices and updates its shard and writes its part of the output
+ * CSV to S3 ({@link ShardTask#resultKey(String)}). The parts are then streamed, one after the other,
+ * into the single output CSV. For a shard whose worker failed, the previous snapshot's rows for its SKUs are used instead, so
+ * the next run's delta sync retries exactly those SKUs.
+ */
+public class ShardCoordinator {
+
+    private final S3Client s3Client;
+    private final ShardInvoker invoker;
+    private final String bucketName;
+    private final String outputFilePrefix;
+
+    /**
+     * @param s3Client The S3Client instance.
+     * @param invoker Starts the workers.
+     * @param bucketName The output bucket the workers write their parts to.
+     * @param outputFilePrefix S3_OUTPUT_FILE_PREFIX.
+     */
+    public ShardCoordinator(S3Client s3Client, ShardInvoker invoker, String bucketName, String outputFilePrefix) {
+        this.s3Client = s3Client;
+        this.invoker = invoker;
+        this.bucketName = bucketName;
+        this.outputFilePrefix = outputFilePrefix;
+    }
+
+    /**
+     * Runs all shards and merges their results.
+     *
+     * @param skuList The full SKU list, as the workers will load it.
+     * @param shardCount The number of shards (workers).
+     * @param strategy How the SKU list is split.
+     * @param deadline The coordinator stops waiting for workers at this deadline.
+     * @param previousSnapshot Supplies the previous snapshot, only called if a shard failed.
+     * @param output Receives the merged rows (the caller writes the header).
+     * @throws IOException If writing to the output fails.
+     */
+    public void run(List<String> skuList, int shardCount, ShardTask.Strategy strategy, InvocationDeadline deadline,
+                    Supplier<SkuRecordStore> previousSnapshot, CsvStreamWriter output) throws IOException {
+        String runId = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").withZone(ZoneOffset.UTC).format(Instant.now())
+                + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000));
+        String fingerprint = RunCheckpoint.fingerprint(skuList);
+
+        List<ShardTask> tasks = new ArrayList<>(shardCount);
+        List<CompletableFuture<Void>> workers = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            ShardTask task = new ShardTask(runId, shard, shardCount, strategy, fingerprint);
+            tasks.add(task);
+            Log.info("Starting worker for " + task);
+            workers.add(invoker.invoke(task));
+        }
+
+        try {
+            SkuRecordStore previous = null;
+            int failedShards = 0;
+            for (int shard = 0; shard < shardCount; shard++) {
+                ShardTask task = tasks.get(shard);
+                if (awaitWorker(task, workers.get(shard), deadline) && appendShardResult(task, output)) {
+                    continue;
+                }
+                failedShards++;
+                if (previous == null) {
+                    previous = previousSnapshot.get();
+                }
+                int restored = appendPreviousRows(task.select(skuList), previous, output);
+                Log.warn("Shard " + (shard + 1) + " of " + shardCount + " has no result; kept the previous snapshot's values for "
+                        + restored + " of its SKUs.");
+            }
+            Log.info("Sharded run " + runId + ": " + (shardCount - failedShards) + " of " + shardCount + " shards completed.");
+        } finally {
+            deleteShardResults(runId);
+        }
+    }
+
+    private boolean awaitWorker(ShardTask task, CompletableFuture<Void> worker, InvocationDeadline deadline) {
+        try {
+            worker.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            Log.error("Worker for " + task + " did not finish before the coordinator's deadline.");
+        } catch (ExecutionException e) {
+            Log.error("Worker for " + task + " failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.warn("Interrupted while waiting for the worker for " + task + ".");
+        }
+        return false;
+    }
+
+    /**
+     * Appends a shard's CSV part without its header line. The part is read in full before anything is
+     * written, so a read failure leaves no partial rows behind for the fallback to duplicate.
+     *
+     * @return false if the part could not be read.
+     * @throws IOException If writing to the output fails.
+     */
+    private boolean appendShardResult(ShardTask task, CsvStreamWriter output) throws IOException {
+        String key = task.resultKey(outputFilePrefix);
+        List<String> lines = new ArrayList<>();
+        try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s3Object, StandardCharsets.UTF_8))) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.error("Error reading result of " + task + " from s3://" + bucketName + "/" + key + ": " + e.getMessage());
+            return false;
+        }
+        for (String line : lines) {
+            output.writeRawRow(line);
+        }
+        return true;
+    }
+
+    private static int appendPreviousRows(List<String> shardSkus, SkuRecordStore previous, CsvStreamWriter output) throws IOException {
+        int restored = 0;
+        for (String sku : shardSkus) {
+            int record = previous.indexOf(sku);
+            if (record >= 0) {
+                output.writeRow(sku, previous.quantity(record), previous.costCents(record), previous.priceCents(record), previous.isNotFound(record));
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    private void deleteShardResults(String runId) {
+        String prefix = ShardTask.resultPrefix(outputFilePrefix, runId);
+        try {
+            ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                    .bucket(bucketName)
+                    .prefix(prefix)
+                    .build();
+            ListObjectsV2Response listResponse;
+            String continuationToken = null;
+            do {
+                listResponse = s3Client.listObjectsV2(listRequest.toBuilder().continuationToken(continuationToken).build());
+                for (S3Object part : listResponse.contents()) {
+                    s3Client.deleteObject(DeleteObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(part.key())
+                            .build());
+                }
+                continuationToken = listResponse.nextContinuationToken();
+            } while (listResponse.isTruncated());
+        } catch (Exception e) {
+            // Leftover parts are harmless: they are never read again
+            Log.warn("Warning: Failed to delete shard results under s3://" + bucketName + "/" + prefix + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Starts a worker invocation for one shard of a sharded run.
+ *
+ * Implementations: {@link LambdaShardInvoker} invokes the function itself through the Lambda API;
+ * {@link InProcessShardInvoker} runs the worker in the same JVM, for local runs and the load-test harness.
+ */
+@FunctionalInterface
+public interface ShardInvoker {
+
+    /**
+     * Runs the worker for a shard.
+     *
+     * @param task The shard to process.
+     * @return A future completing when the worker has finished, exceptionally if it failed.
+     */
+    CompletableFuture<Void> invoke(ShardTask task);
+}
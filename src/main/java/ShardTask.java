@@ -0,0 +1,179 @@
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * One shard of a sharded run: which part of the SKU list a worker invocation handles, and where it
+ * writes its result for the coordinator to merge.
+ *
+ * A worker receives its task as a ScheduledEvent with detail-type {@link #DETAIL_TYPE} and the task's
+ * fields in the detail map, so workers run through the same handler as scheduled runs. Workers load
+ * the SKU list themselves and select their shard from it; the fingerprint of the list makes sure the
+ * coordinator and every worker split the same list.
+ */
+public final class ShardTask {
+
+    public static final String DETAIL_TYPE = "Neto Stock Update Shard";
+
+    /**
+     * How the SKU list is split into shards.
+     */
+    public enum Strategy {
+        /** Contiguous ranges of the list, in input order. */
+        RANGE,
+        /** By hash of the SKU, so a SKU stays in the same shard when the list grows or shrinks. */
+        HASH;
+
+        /**
+         * @throws IllegalArgumentException If the name is not a strategy.
+         */
+        public static Strategy parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final String runId;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Strategy strategy;
+    private final String skuFingerprint;
+
+    /**
+     * @param runId Identifies the coordinator's run; shard results are grouped under it.
+     * @param shardIndex This shard, from 0 to shardCount - 1.
+     * @param shardCount The number of shards.
+     * @param strategy How the SKU list is split.
+     * @param skuFingerprint The fingerprint of the SKU list the coordinator split (see RunCheckpoint.fingerprint).
+     */
+    public ShardTask(String runId, int shardIndex, int shardCount, Strategy strategy, String skuFingerprint) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+        }
+        this.runId = runId;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.strategy = strategy;
+        this.skuFingerprint = skuFingerprint;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public String getSkuFingerprint() {
+        return skuFingerprint;
+    }
+
+    /**
+     * Selects this shard's SKUs from the full list, keeping their input order.
+     */
+    public List<String> select(List<String> allSkus) {
+        if (strategy == Strategy.RANGE) {
+            int size = allSkus.size();
+            int from = (int) ((long) size * shardIndex / shardCount);
+            int to = (int) ((long) size * (shardIndex + 1) / shardCount);
+            return new ArrayList<>(allSkus.subList(from, to));
+        }
+        List<String> shardSkus = new ArrayList<>(allSkus.size() / shardCount + 16);
+        for (String sku : allSkus) {
+            // String.hashCode is specified, so every JVM puts a SKU in the same shard
+            if (Math.floorMod(sku.hashCode(), shardCount) == shardIndex) {
+                shardSkus.add(sku);
+            }
+        }
+        return shardSkus;
+    }
+
+    /**
+     * @param outputFilePrefix S3_OUTPUT_FILE_PREFIX.
+     * @return The key the shard's result is written to. It does not end in .csv, so the output
+     *         retention and the previous-snapshot lookup never take it for an output CSV.
+     */
+    public String resultKey(String outputFilePrefix) {
+        return String.format("%s_shards/%s/shard-%04d.part", outputFilePrefix, runId, shardIndex);
+    }
+
+    /**
+     * @return The prefix under which all shard results of the run are written.
+     */
+    public static String resultPrefix(String outputFilePrefix, String runId) {
+        return outputFilePrefix + "_shards/" + runId + "/";
+    }
+
+    /**
+     * @return The task as the event a worker invocation receives.
+     */
+    public ScheduledEvent toEvent() {
+        ScheduledEvent event = new ScheduledEvent();
+        event.setDetailType(DETAIL_TYPE);
+        event.setSource("neto-stock-update.coordinator");
+        event.setDetail(detail());
+        return event;
+    }
+
+    /**
+     * @return The task as the JSON payload of a Lambda invoke, in the shape of a ScheduledEvent.
+     */
+    public String toPayload() {
+        return new JSONObject()
+                .put("detail-type", DETAIL_TYPE)
+                .put("source", "neto-stock-update.coordinator")
+                .put("detail", new JSONObject(detail()))
+                .toString();
+    }
+
+    private Map<String, Object> detail() {
+        Map<String, Object> detail = new HashMap<>();
+        detail.put("runId", runId);
+        detail.put("shardIndex", shardIndex);
+        detail.put("shardCount", shardCount);
+        detail.put("strategy", strategy.name());
+        detail.put("skuFingerprint", skuFingerprint);
+        return detail;
+    }
+
+    /**
+     * @param event The invocation's event.
+     * @return The shard task carried by the event, or null if it is not a worker invocation.
+     * @throws IllegalArgumentException If the event is a shard task with missing or invalid fields.
+     */
+    public static ShardTask fromEvent(ScheduledEvent event) {
+        if (event == null || !DETAIL_TYPE.equals(event.getDetailType()) || event.getDetail() == null) {
+            return null;
+        }
+        Map<String, Object> detail = event.getDetail();
+        try {
+            return new ShardTask(String.valueOf(detail.get("runId")),
+                    Integer.parseInt(String.valueOf(detail.get("shardIndex"))),
+                    Integer.parseInt(String.valueOf(detail.get("shardCount"))),
+                    Strategy.parse(String.valueOf(detail.get("strategy"))),
+                    String.valueOf(detail.get("skuFingerprint")));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard task: " + detail, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + (shardIndex + 1) + " of " + shardCount + " (" + strategy.name().toLowerCase(Locale.ROOT) + ", run " + runId + ")";
+    }
+}
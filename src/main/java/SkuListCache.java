@@ -0,0 +1,150 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+
+/**
+ * The parsed SKU input list of the last load, with the ETag of the S3 object it came from, kept in
+ * memory and in a file under SKU_CACHE_DIR (default java.io.tmpdir, /tmp on Lambda) so it survives for
+ * the life of the execution environment.
+ *
+ * loadSkusFromCSV sends the cached ETag as If-None-Match; while the input file is unchanged S3 answers
+ * 304 Not Modified with no body and the cached list is used as it is. Warm invocations take it from
+ * memory; the file serves a fresh handler instance in the same environment (e.g. after a SnapStart
+ * restore, whose memory snapshot predates the last load).
+ */
+final class SkuListCache {
+
+    private static final String FILE_HEADER = "sku-list-cache v1";
+
+    /**
+     * A cached SKU list and the ETag of the object it was parsed from.
+     */
+    static final class Entry {
+        final String bucketName;
+        final String key;
+        final String eTag;
+        final List<String> skus;
+
+        Entry(String bucketName, String key, String eTag, List<String> skus) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.eTag = eTag;
+            this.skus = Collections.unmodifiableList(skus);
+        }
+
+        boolean isFor(String bucketName, String key) {
+            return this.bucketName.equals(bucketName) && this.key.equals(key);
+        }
+    }
+
+    private static volatile Entry memory;
+
+    private SkuListCache() {
+    }
+
+    /**
+     * @return Whether SKU_CACHE_ENABLED is set (default true).
+     */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(Env.get("SKU_CACHE_ENABLED", "true"));
+    }
+
+    /**
+     * @return The cached list of the object, from memory or the cache file, or null if there is none.
+     */
+    static Entry get(String bucketName, String key) {
+        Entry cached = memory;
+        if (cached != null && cached.isFor(bucketName, key)) {
+            return cached;
+        }
+        Path file = cacheFile(bucketName, key);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            String source = reader.readLine();
+            String eTag = reader.readLine();
+            if (!FILE_HEADER.equals(header) || !(bucketName + "/" + key).equals(source) || eTag == null || eTag.isEmpty()) {
+                return null;
+            }
+            List<String> skus = new ArrayList<>();
+            String sku;
+            while ((sku = reader.readLine()) != null) {
+                skus.add(sku);
+            }
+            cached = new Entry(bucketName, key, eTag, skus);
+            memory = cached;
+            return cached;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Log.warn("Warning: Ignoring unreadable SKU cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Caches a freshly parsed list. A failure to write the cache file is logged; the list is still
+     * kept in memory.
+     *
+     * @return The cached entry.
+     */
+    static Entry put(String bucketName, String key, String eTag, List<String> skus) {
+        Entry entry = new Entry(bucketName, key, eTag, skus);
+        if (eTag == null || eTag.isEmpty()) {
+            return entry; // Nothing to revalidate with
+        }
+        memory = entry;
+
+        Path file = cacheFile(bucketName, key);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(FILE_HEADER);
+                writer.write('\n');
+                writer.write(bucketName + "/" + key);
+                writer.write('\n');
+                writer.write(eTag);
+                writer.write('\n');
+                for (String sku : skus) {
+                    writer.write(sku);
+                    writer.write('\n');
+                }
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Log.warn("Warning: Failed to write SKU cache " + file + ": " + e.getMessage());
+        }
+        return entry;
+    }
+
+    private static Path cacheFile(String bucketName, String key) {
+        String directory = Env.get("SKU_CACHE_DIR", System.getProperty("java.io.tmpdir"));
+        return Paths.get(directory, "sku-list-" + hash(bucketName + "/" + key) + ".cache");
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Compact, typed store for the per-SKU data of one run.
+ *
+ * Each SKU is held once in a single index (SKU -> record number) and its values live in primitive
+ * columns: int quantity, and cost and selling price as long cents. This replaces one
+ * HashMap&lt;String,String&gt; per SKU with a handful of array slots, and lets the Neto updater and the
+ * CSV writer read numbers directly instead of parsing strings back.
+ *
+ * Records are addressed by the int returned from {@link #put}. All methods are synchronized, since
+ * pages are merged from several threads while the Neto workers read.
+ *
+ * A SKU that was requested but not returned by Dropshipzone is held with quantity 0 and flagged
+ * (see {@link #putNotFound}); the flag is written as the Status column of the output CSV.
+ */
+public final class SkuRecordStore {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    // parseFixedPoint keeps at most this many decimals, and bounds the whole part so the result cannot overflow
+    private static final int MAX_FIXED_POINT_DECIMALS = 6;
+    private static final long MAX_FIXED_POINT_WHOLE = 9_000_000_000L;
+
+    private final Map<String, Integer> index;
+    private String[] skus;
+    private int[] quantities;
+    private long[] costCents;
+    private long[] priceCents;
+    private final BitSet excluded = new BitSet();
+    private final BitSet notFound = new BitSet();
+    private int size;
+
+    // Values of the output CSV's Status column
+    public static final String STATUS_IN_STOCK = "In Stock";
+    public static final String STATUS_OUT_OF_STOCK = "Out of Stock";
+    public static final String STATUS_NOT_FOUND = "Not Found in API Response";
+
+    public SkuRecordStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of SKUs expected, to size the columns up front.
+     */
+    public SkuRecordStore(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.index = new HashMap<>(capacity * 4 / 3 + 1);
+        this.skus = new String[capacity];
+        this.quantities = new int[capacity];
+        this.costCents = new long[capacity];
+        this.priceCents = new long[capacity];
+    }
+
+    /**
+     * Adds a SKU or overwrites the values of an existing one. An overwritten record is included again
+     * if it had been excluded, and is no longer flagged as not found.
+     *
+     * @return The record number of the SKU.
+     */
+    public synchronized int put(String sku, int quantity, long cost, long price) {
+        int record = putValues(sku, quantity, cost, price);
+        notFound.clear(record);
+        return record;
+    }
+
+    /**
+     * Adds or overwrites a SKU that Dropshipzone did not return, with quantity 0 and the given cost
+     * and selling price (those last known, or 0).
+     *
+     * @return The record number of the SKU.
+     */
+    public synchronized int putNotFound(String sku, long cost, long price) {
+        int record = putValues(sku, 0, cost, price);
+        notFound.set(record);
+        return record;
+    }
+
+    /**
+     * Copies a record of another store, not-found flag included.
+     *
+     * @return The record number of the SKU in this store.
+     */
+    public int putFrom(SkuRecordStore other, int otherRecord) {
+        String sku;
+        int quantity;
+        long cost;
+        long price;
+        boolean otherNotFound;
+        synchronized (other) {
+            sku = other.skus[otherRecord];
+            quantity = other.quantities[otherRecord];
+            cost = other.costCents[otherRecord];
+            price = other.priceCents[otherRecord];
+            otherNotFound = other.notFound.get(otherRecord);
+        }
+        return otherNotFound ? putNotFound(sku, cost, price) : put(sku, quantity, cost, price);
+    }
+
+    private int putValues(String sku, int quantity, long cost, long price) {
+        Integer existing = index.get(sku);
+        int record;
+        if (existing != null) {
+            record = existing;
+            excluded.clear(record);
+        } else {
+            if (size == skus.length) {
+                grow();
+            }
+            record = size++;
+            skus[record] = sku;
+            index.put(sku, record);
+        }
+        quantities[record] = quantity;
+        costCents[record] = cost;
+        priceCents[record] = price;
+        return record;
+    }
+
+    /**
+     * @return The record number of the SKU, or -1 if it is not in the store.
+     */
+    public synchronized int indexOf(String sku) {
+        Integer record = index.get(sku);
+        return record == null ? -1 : record;
+    }
+
+    /**
+     * Drops a record from {@link #isIncluded} iteration (e.g. a new SKU that failed to reach Neto)
+     * without renumbering the other records.
+     */
+    public synchronized void exclude(int record) {
+        excluded.set(record);
+    }
+
+    public synchronized boolean isIncluded(int record) {
+        return !excluded.get(record);
+    }
+
+    /**
+     * @return Whether the record is a SKU Dropshipzone did not return.
+     */
+    public synchronized boolean isNotFound(int record) {
+        return notFound.get(record);
+    }
+
+    /**
+     * @return The record's Status column value: not found, in stock (quantity above 0) or out of stock.
+     */
+    public synchronized String status(int record) {
+        return statusOf(quantities[record], notFound.get(record));
+    }
+
+    public static String statusOf(int quantity, boolean notFound) {
+        return notFound ? STATUS_NOT_FOUND : quantity > 0 ? STATUS_IN_STOCK : STATUS_OUT_OF_STOCK;
+    }
+
+    /**
+     * @return The number of records, including excluded ones. Valid record numbers are 0..size()-1.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of records of SKUs Dropshipzone did not return.
+     */
+    public synchronized int notFoundCount() {
+        return notFound.cardinality();
+    }
+
+    /**
+     * @return The number of records not excluded.
+     */
+    public synchronized int includedCount() {
+        return size - excluded.cardinality();
+    }
+
+    public synchronized String sku(int record) {
+        return skus[record];
+    }
+
+    public synchronized int quantity(int record) {
+        return quantities[record];
+    }
+
+    public synchronized long costCents(int record) {
+        return costCents[record];
+    }
+
+    public synchronized long priceCents(int record) {
+        return priceCents[record];
+    }
+
+    private void grow() {
+        int capacity = skus.length * 2;
+        skus = Arrays.copyOf(skus, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        costCents = Arrays.copyOf(costCents, capacity);
+        priceCents = Arrays.copyOf(priceCents, capacity);
+    }
+
+    /**
+     * Parses a plain decimal amount (e.g. "82.41", "14", "-3.5") into cents, rounding half up beyond two decimals.
+     *
+     * @throws NumberFormatException If the text is not a plain decimal number.
+     */
+    public static long parseCents(CharSequence text) {
+        return parseFixedPoint(text, 2);
+    }
+
+    /**
+     * Parses a plain decimal number into a fixed-point long with the given number of decimals
+     * (e.g. "1.4" with 6 decimals -> 1400000), rounding half up beyond them. Reads the characters
+     * in place, so unlike Double.parseDouble it allocates nothing.
+     *
+     * @param decimals The number of decimals kept, at most 6.
+     * @throws NumberFormatException If the text is not a plain decimal number or does not fit.
+     */
+    public static long parseFixedPoint(CharSequence text, int decimals) {
+        if (decimals < 0 || decimals > MAX_FIXED_POINT_DECIMALS) {
+            throw new IllegalArgumentException("decimals must be between 0 and " + MAX_FIXED_POINT_DECIMALS);
+        }
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            if (value > MAX_FIXED_POINT_WHOLE) {
+                throw new NumberFormatException("Decimal amount out of range: '" + text + "'");
+            }
+            value = value * 10 + (text.charAt(i++) - '0');
+            digits++;
+        }
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                int d = text.charAt(i++) - '0';
+                if (fractionDigits < decimals) {
+                    value = value * 10 + d;
+                } else if (fractionDigits == decimals) {
+                    roundUp = d >= 5;
+                }
+                fractionDigits++;
+                digits++;
+            }
+        }
+        if (digits == 0 || i != length) {
+            throw new NumberFormatException("Not a plain decimal amount: '" + text + "'");
+        }
+        for (int missing = fractionDigits; missing < decimals; missing++) {
+            value *= 10;
+        }
+        if (roundUp) {
+            value++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Formats a cents amount as a plain two-decimal string (e.g. 1995 -> "19.95"), as sent to Neto and written to the CSV.
+     */
+    public static String formatCents(long cents) {
+        StringBuilder sb = new StringBuilder(12);
+        appendCents(sb, cents);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a cents amount as a plain two-decimal string without going through String.format.
+     */
+    public static void appendCents(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        sb.append(cents / 100).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Compares the SKU data of the current run with the snapshot written by the previous run
+ * (the output CSV uploaded to S3) so that only SKUs whose quantity or selling price changed
+ * need to be pushed to Neto.
+ *
+ * A SKU is "new" if it does not appear in the previous snapshot, "changed" if its quantity
+ * or selling price differs, and "unchanged" otherwise. Cost is reported in the CSV but is not
+ * sent to Neto, so it is ignored by the comparison. Records are classified one at a time as
+ * they stream out of the fetch, so {@link #needsUpdate(SkuRecordStore, int)} is safe to call concurrently.
+ * SKUs Dropshipzone did not return are classified by {@link #needsStockCleared(SkuRecordStore, int)},
+ * and SKUs no longer in the input list found by {@link #putRemoved(SkuRecordStore, Set)}.
+ */
+public class SnapshotDiff {
+
+    private final SkuRecordStore previous;
+    private final AtomicInteger changedCount = new AtomicInteger();
+    private final AtomicInteger newCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private final AtomicInteger notFoundCount = new AtomicInteger();
+    private final AtomicInteger removedCount = new AtomicInteger();
+
+    /**
+     * @param previous The previous snapshot, may be empty.
+     */
+    public SnapshotDiff(SkuRecordStore previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Classifies one record of the current run against the previous snapshot and counts it.
+     *
+     * @param current The store holding the current run's records.
+     * @param record The record number in the current store.
+     * @return true if the SKU is new or changed and must be sent to Neto.
+     */
+    public boolean needsUpdate(SkuRecordStore current, int record) {
+        int previousRecord = previous.indexOf(current.sku(record));
+        if (previousRecord < 0) {
+            newCount.incrementAndGet();
+            return true;
+        }
+        if (previous.quantity(previousRecord) != current.quantity(record)
+                || previous.priceCents(previousRecord) != current.priceCents(record)) {
+            changedCount.incrementAndGet();
+            return true;
+        }
+        unchangedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Classifies a record of the current run for a SKU Dropshipzone did not return. Its cost and
+     * selling price are taken over from the previous snapshot, if it has the SKU.
+     *
+     * @param current The store holding the current run's records.
+     * @param record The not-found record in the current store.
+     * @return true if the SKU's Neto quantity must be set to 0, i.e. unless the previous snapshot
+     *         already had it at 0.
+     */
+    public boolean needsStockCleared(SkuRecordStore current, int record) {
+        String sku = current.sku(record);
+        int previousRecord = previous.indexOf(sku);
+        if (previousRecord >= 0) {
+            current.putNotFound(sku, previous.costCents(previousRecord), previous.priceCents(previousRecord));
+            if (previous.quantity(previousRecord) == 0) {
+                unchangedCount.incrementAndGet();
+                return false;
+            }
+        }
+        notFoundCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Finds the SKUs of the previous snapshot that are no longer listed but may still have stock in
+     * Neto (e.g. kept there after their removal by an input change failed to reach Neto), and puts
+     * them into the current store with quantity 0 and their previous cost and selling price. SKUs the
+     * snapshot already had at 0 are left out.
+     *
+     * @param current The store holding the current run's records.
+     * @param listed The SKUs of the current input list.
+     * @return The record numbers of the removed SKUs in the current store.
+     */
+    public List<Integer> putRemoved(SkuRecordStore current, Set<String> listed) {
+        List<Integer> removed = new ArrayList<>();
+        for (int record = 0; record < previous.size(); record++) {
+            if (previous.isIncluded(record) && previous.quantity(record) > 0 && !listed.contains(previous.sku(record))) {
+                removed.add(current.put(previous.sku(record), 0, previous.costCents(record), previous.priceCents(record)));
+            }
+        }
+        removedCount.addAndGet(removed.size());
+        return removed;
+    }
+
+    /**
+     * Puts the previous snapshot's values for a SKU back into the current store, or excludes the SKU
+     * from it if the previous snapshot did not have it.
+     *
+     * @param current The store holding the current run's records.
+     * @param sku The SKU to restore.
+     */
+    public void restorePrevious(SkuRecordStore current, String sku) {
+        int previousRecord = previous.indexOf(sku);
+        if (previousRecord >= 0) {
+            current.putFrom(previous, previousRecord);
+        } else {
+            int record = current.indexOf(sku);
+            if (record >= 0) {
+                current.exclude(record);
+            }
+        }
+    }
+
+    public int getPreviousSize() {
+        return previous.size();
+    }
+
+    public int getChangedCount() {
+        return changedCount.get();
+    }
+
+    public int getNewCount() {
+        return newCount.get();
+    }
+
+    public int getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    public int getNotFoundCount() {
+        return notFoundCount.get();
+    }
+
+    public int getRemovedCount() {
+        return removedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "changed=" + changedCount.get() + ", new=" + newCount.get() + ", unchanged=" + unchangedCount.get() + ", not found=" + notFoundCount.get() + ", removed=" + removedCount.get();
+    }
+
+    /**
+     * Parses a snapshot CSV as written by LambdaHandler.generateCsvContent
+     * (header: SKU,Quantity,Cost,Selling Price,Status). CSVs written before the Status column existed
+     * are read as well.
+     *
+     * @param reader The reader positioned at the start of the CSV (header line included).
+     * @return The snapshot as a record store.
+     * @throws IOException If the CSV cannot be read.
+     */
+    public static SkuRecordStore parseSnapshotCsv(BufferedReader reader) throws IOException {
+        SkuRecordStore snapshot = new SkuRecordStore();
+        String line;
+        boolean isFirstLine = true;
+        while ((line = reader.readLine()) != null) {
+            if (isFirstLine) {
+                isFirstLine = false;
+                continue;
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            List<String> fields = splitCsvLine(line);
+            if (fields.size() < 4) {
+                Log.warn("Warning: Skipping malformed snapshot CSV line: " + line);
+                continue;
+            }
+            try {
+                int quantity = Integer.parseInt(fields.get(1).trim());
+                long cost = SkuRecordStore.parseCents(fields.get(2).trim());
+                long price = SkuRecordStore.parseCents(fields.get(3).trim());
+                if (fields.size() > 4 && SkuRecordStore.STATUS_NOT_FOUND.equals(fields.get(4))) {
+                    snapshot.putNotFound(fields.get(0), cost, price);
+                } else {
+                    snapshot.put(fields.get(0), quantity, cost, price);
+                }
+            } catch (NumberFormatException e) {
+                // Leaving the SKU out makes it "new", so it is pushed to Neto again
+                Log.warn("Warning: Skipping snapshot CSV line with invalid numbers: " + line);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Splits one CSV line, honouring the quoting applied by LambdaHandler.escapeCsv.
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
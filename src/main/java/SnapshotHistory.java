@@ -0,0 +1,154 @@
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Queries over the columnar snapshots (.dsnap) kept under S3_OUTPUT_FILE_PREFIX in S3_OUTPUT_BUCKET_NAME:
+ * one SKU's values across the kept runs, and what changed between two runs.
+ *
+ * A history lookup costs two small ranged GETs per run (tail and one block) rather than a download
+ * of every output CSV. Run from the shaded jar:
+ *
+ *   java -cp target/dropshipzone-neto-integrator-1.0-SNAPSHOT.jar SnapshotHistory history SKU
+ *   java -cp target/dropshipzone-neto-integrator-1.0-SNAPSHOT.jar SnapshotHistory diff [olderKey newerKey]
+ *
+ * diff without keys compares the two most recent snapshots.
+ */
+public final class SnapshotHistory {
+
+    private static final int MAX_LISTED_CHANGES = 50;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String prefix;
+
+    public SnapshotHistory(S3Client s3Client, String bucketName, String prefix) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return The keys of the kept snapshots, newest first.
+     */
+    public List<String> snapshotKeys() {
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .build();
+        List<S3Object> snapshots = new ArrayList<>();
+        ListObjectsV2Response listResponse;
+        String continuationToken = null;
+        do {
+            listResponse = s3Client.listObjectsV2(listRequest.toBuilder().continuationToken(continuationToken).build());
+            for (S3Object s3Object : listResponse.contents()) {
+                if (s3Object.key().endsWith(ColumnarSnapshot.FILE_SUFFIX)) {
+                    snapshots.add(s3Object);
+                }
+            }
+            continuationToken = listResponse.nextContinuationToken();
+        } while (listResponse.isTruncated());
+
+        snapshots.sort(Comparator.comparing(S3Object::lastModified).reversed());
+        List<String> keys = new ArrayList<>(snapshots.size());
+        for (S3Object snapshot : snapshots) {
+            keys.add(snapshot.key());
+        }
+        return keys;
+    }
+
+    /**
+     * Prints a SKU's values in every kept snapshot, newest first.
+     */
+    public void printHistory(String sku) throws IOException {
+        for (String key : snapshotKeys()) {
+            ColumnarSnapshot.Entry entry = ColumnarSnapshot.lookup(ColumnarSnapshot.RangeSource.ofS3(s3Client, bucketName, key), sku);
+            System.out.println(key + ": " + (entry != null ? entry : "not present"));
+        }
+    }
+
+    /**
+     * Compares two snapshots in one pass over both (both are sorted by SKU) and prints the counts and
+     * the first changed SKUs.
+     */
+    public void printDiff(String olderKey, String newerKey) throws IOException {
+        Iterator<ColumnarSnapshot.Entry> older = new ColumnarSnapshot.Reader(
+                ColumnarSnapshot.RangeSource.ofS3(s3Client, bucketName, olderKey).readAll()).entries();
+        Iterator<ColumnarSnapshot.Entry> newer = new ColumnarSnapshot.Reader(
+                ColumnarSnapshot.RangeSource.ofS3(s3Client, bucketName, newerKey).readAll()).entries();
+
+        int changed = 0;
+        int added = 0;
+        int removed = 0;
+        int unchanged = 0;
+        int listed = 0;
+        ColumnarSnapshot.Entry before = older.hasNext() ? older.next() : null;
+        ColumnarSnapshot.Entry after = newer.hasNext() ? newer.next() : null;
+        while (before != null || after != null) {
+            int order = before == null ? 1 : after == null ? -1 : before.sku.compareTo(after.sku);
+            if (order < 0) {
+                removed++;
+                if (listed++ < MAX_LISTED_CHANGES) {
+                    System.out.println("- " + before);
+                }
+                before = older.hasNext() ? older.next() : null;
+            } else if (order > 0) {
+                added++;
+                if (listed++ < MAX_LISTED_CHANGES) {
+                    System.out.println("+ " + after);
+                }
+                after = newer.hasNext() ? newer.next() : null;
+            } else {
+                if (before.quantity != after.quantity || before.costCents != after.costCents || before.priceCents != after.priceCents) {
+                    changed++;
+                    if (listed++ < MAX_LISTED_CHANGES) {
+                        System.out.println("~ " + before + " -> qty=" + after.quantity + " cost=" + SkuRecordStore.formatCents(after.costCents)
+                                + " price=" + SkuRecordStore.formatCents(after.priceCents));
+                    }
+                } else {
+                    unchanged++;
+                }
+                before = older.hasNext() ? older.next() : null;
+                after = newer.hasNext() ? newer.next() : null;
+            }
+        }
+        System.out.println(olderKey + " -> " + newerKey + ": changed=" + changed + ", added=" + added + ", removed=" + removed
+                + ", unchanged=" + unchanged);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String bucketName = Env.get("S3_OUTPUT_BUCKET_NAME");
+        String prefix = Env.get("S3_OUTPUT_FILE_PREFIX");
+        if (args.length == 0 || bucketName == null || prefix == null) {
+            System.err.println("Usage: SnapshotHistory history SKU | diff [olderKey newerKey]"
+                    + " (with S3_OUTPUT_BUCKET_NAME and S3_OUTPUT_FILE_PREFIX set)");
+            System.exit(2);
+        }
+        try (S3Client s3Client = LambdaHandler.buildS3Client()) {
+            SnapshotHistory history = new SnapshotHistory(s3Client, bucketName, prefix);
+            if ("history".equals(args[0]) && args.length == 2) {
+                history.printHistory(args[1]);
+            } else if ("diff".equals(args[0]) && args.length == 3) {
+                history.printDiff(args[1], args[2]);
+            } else if ("diff".equals(args[0]) && args.length == 1) {
+                List<String> keys = history.snapshotKeys();
+                if (keys.size() < 2) {
+                    System.err.println("Fewer than two snapshots under s3://" + bucketName + "/" + prefix);
+                    System.exit(1);
+                }
+                history.printDiff(keys.get(1), keys.get(0));
+            } else {
+                System.err.println("Usage: SnapshotHistory history SKU | diff [olderKey newerKey]");
+                System.exit(2);
+            }
+        }
+    }
+}
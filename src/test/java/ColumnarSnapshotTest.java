@@ -0,0 +1,178 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that a columnar snapshot reads back the records it was written from, and that damaged
+ * snapshots are rejected.
+ */
+class ColumnarSnapshotTest {
+
+    /**
+     * A store spanning several blocks, with SKUs that share prefixes, values that go up and down,
+     * not-found and excluded records, and a multi-byte SKU.
+     */
+    private static SkuRecordStore sampleStore() {
+        Random random = new Random(20240611L);
+        SkuRecordStore skuRecords = new SkuRecordStore();
+        for (int i = 0; i < 2 * ColumnarSnapshot.BLOCK_RECORDS + 100; i++) {
+            String sku = (i % 3 == 0 ? "V" : "ABC-") + String.format(Locale.ROOT, "%06d", random.nextInt(1_000_000));
+            if (i % 50 == 0) {
+                skuRecords.putNotFound(sku, random.nextInt(100_000), random.nextInt(150_000));
+            } else {
+                skuRecords.put(sku, random.nextInt(200) - 5, random.nextInt(100_000), random.nextInt(150_000));
+            }
+        }
+        skuRecords.put("CAF\u00c9-\u6c34", 7, 1234, 1995);
+        for (int record = 0; record < skuRecords.size(); record += 97) {
+            skuRecords.exclude(record);
+        }
+        return skuRecords;
+    }
+
+    private static byte[] write(SkuRecordStore skuRecords) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = ColumnarSnapshot.write(skuRecords, out);
+        assertEquals(out.size(), written);
+        return out.toByteArray();
+    }
+
+    private static void assertSameIncludedRecords(SkuRecordStore expected, SkuRecordStore actual) {
+        assertEquals(expected.includedCount(), actual.size());
+        for (int record = 0; record < expected.size(); record++) {
+            String sku = expected.sku(record);
+            int read = actual.indexOf(sku);
+            if (!expected.isIncluded(record)) {
+                assertEquals(-1, read);
+                continue;
+            }
+            assertTrue(read >= 0, sku);
+            assertEquals(expected.quantity(record), actual.quantity(read), sku + " quantity");
+            assertEquals(expected.costCents(record), actual.costCents(read), sku + " cost");
+            assertEquals(expected.priceCents(record), actual.priceCents(read), sku + " price");
+            assertEquals(expected.isNotFound(record), actual.isNotFound(read), sku + " not found");
+        }
+    }
+
+    @Test
+    void readsBackTheIncludedRecords() throws IOException {
+        SkuRecordStore skuRecords = sampleStore();
+        byte[] snapshot = write(skuRecords);
+        assertSameIncludedRecords(skuRecords, ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(snapshot)));
+        assertEquals(skuRecords.includedCount(), new ColumnarSnapshot.Reader(snapshot).getRecordCount());
+    }
+
+    @Test
+    void returnsEntriesInSkuOrder() throws IOException {
+        SkuRecordStore read = ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(write(sampleStore())));
+        for (int record = 1; record < read.size(); record++) {
+            assertTrue(read.sku(record - 1).compareTo(read.sku(record)) < 0, read.sku(record));
+        }
+    }
+
+    @Test
+    void looksUpSingleSkus() throws IOException {
+        SkuRecordStore skuRecords = sampleStore();
+        ColumnarSnapshot.RangeSource source = ColumnarSnapshot.RangeSource.ofBytes(write(skuRecords));
+        for (int record = 0; record < skuRecords.size(); record++) {
+            ColumnarSnapshot.Entry entry = ColumnarSnapshot.lookup(source, skuRecords.sku(record));
+            if (!skuRecords.isIncluded(record)) {
+                assertNull(entry, skuRecords.sku(record));
+                continue;
+            }
+            assertEquals(skuRecords.sku(record), entry.sku);
+            assertEquals(skuRecords.quantity(record), entry.quantity);
+            assertEquals(skuRecords.costCents(record), entry.costCents);
+            assertEquals(skuRecords.priceCents(record), entry.priceCents);
+            assertEquals(skuRecords.isNotFound(record), entry.notFound);
+        }
+        // Before the first SKU, between two SKUs, and after the last
+        assertNull(ColumnarSnapshot.lookup(source, "0"));
+        assertNull(ColumnarSnapshot.lookup(source, "ABC-0000005"));
+        assertNull(ColumnarSnapshot.lookup(source, "ZZZ"));
+    }
+
+    @Test
+    void readsASnapshotFile() throws IOException {
+        SkuRecordStore skuRecords = sampleStore();
+        Path file = Files.createTempFile("snapshot", ColumnarSnapshot.FILE_SUFFIX);
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                ColumnarSnapshot.write(skuRecords, out);
+            }
+            ColumnarSnapshot.RangeSource source = ColumnarSnapshot.RangeSource.ofFile(file);
+            assertSameIncludedRecords(skuRecords, ColumnarSnapshot.readAll(source));
+            assertEquals(7, ColumnarSnapshot.lookup(source, "CAF\u00c9-\u6c34").quantity);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void roundTripsAnEmptyStore() throws IOException {
+        SkuRecordStore excludedOnly = new SkuRecordStore();
+        excludedOnly.exclude(excludedOnly.put("A", 1, 100, 200));
+        for (SkuRecordStore skuRecords : new SkuRecordStore[]{new SkuRecordStore(), excludedOnly}) {
+            ColumnarSnapshot.RangeSource source = ColumnarSnapshot.RangeSource.ofBytes(write(skuRecords));
+            assertEquals(0, ColumnarSnapshot.readAll(source).size());
+            assertNull(ColumnarSnapshot.lookup(source, "A"));
+            assertFalse(new ColumnarSnapshot.Reader(source.readAll()).entries().hasNext());
+        }
+    }
+
+    @Test
+    void rejectsOtherFilesAndVersions() throws IOException {
+        byte[] snapshot = write(sampleStore());
+
+        byte[] badMagic = snapshot.clone();
+        badMagic[0] = 'X';
+        IOException notSnapshot = assertThrows(IOException.class, () -> new ColumnarSnapshot.Reader(badMagic));
+        assertEquals("Not a columnar snapshot.", notSnapshot.getMessage());
+
+        byte[] nextVersion = snapshot.clone();
+        ByteBuffer.wrap(nextVersion).putInt(4, 2);
+        IOException unsupported = assertThrows(IOException.class, () -> ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(nextVersion)));
+        assertEquals("Unsupported columnar snapshot version 2.", unsupported.getMessage());
+
+        assertThrows(IOException.class, () -> new ColumnarSnapshot.Reader("SKU,Quantity,Cost,Selling Price,Status\n".getBytes()));
+        assertThrows(IOException.class, () -> new ColumnarSnapshot.Reader(new byte[0]));
+    }
+
+    @Test
+    void rejectsDamagedSnapshots() throws IOException {
+        byte[] snapshot = write(sampleStore());
+
+        byte[] badTrailer = snapshot.clone();
+        badTrailer[badTrailer.length - 1] ^= 1;
+        assertThrows(IOException.class, () -> new ColumnarSnapshot.Reader(badTrailer));
+        assertThrows(IOException.class, () -> ColumnarSnapshot.lookup(ColumnarSnapshot.RangeSource.ofBytes(badTrailer), "A"));
+
+        for (int length : new int[]{snapshot.length - 1, snapshot.length - 16, snapshot.length / 2, 24}) {
+            byte[] truncated = Arrays.copyOf(snapshot, length);
+            assertThrows(IOException.class, () -> ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(truncated)), "truncated to " + length);
+        }
+
+        // A flipped bit in the first block fails its checksum, whichever way it is read
+        byte[] badBlock = snapshot.clone();
+        badBlock[20] ^= 1;
+        IOException mismatch = assertThrows(IOException.class, () -> ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(badBlock)));
+        assertEquals("Snapshot block checksum mismatch.", mismatch.getMessage());
+        String firstSku = ColumnarSnapshot.readAll(ColumnarSnapshot.RangeSource.ofBytes(snapshot)).sku(0);
+        assertThrows(IOException.class, () -> ColumnarSnapshot.lookup(ColumnarSnapshot.RangeSource.ofBytes(badBlock), firstSku));
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Checks the byte-scanning SKU CSV parser against the readLine and split(",") parser it replaced.
+ */
+class DropshipzoneAPIClientTest {
+
+    private static final String[] LINE_BREAKS = {"\n", "\r\n", "\r"};
+
+    /**
+     * The SKUs as the code before parseSkuCsv read them.
+     */
+    private static List<String> legacySkus(String csv) throws IOException {
+        List<String> skus = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        String line;
+        boolean isFirstLine = true;
+        while ((line = reader.readLine()) != null) {
+            if (isFirstLine) {
+                isFirstLine = false;
+                continue;
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                skus.add(line.split(",")[0]);
+            }
+        }
+        return skus;
+    }
+
+    private static List<String> skus(String csv) throws IOException {
+        return DropshipzoneAPIClient.parseSkuCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void readsTheFirstColumnAfterTheHeader() throws IOException {
+        String csv = "SKU,Name\nAB-1,Chair\n  CD-2 , Table \n\n   \nEF-3\r\nGH-4,x,y\rIJ-5";
+        assertEquals(Arrays.asList("AB-1", "CD-2 ", "EF-3", "GH-4", "IJ-5"), skus(csv));
+        assertEquals(legacySkus(csv), skus(csv));
+    }
+
+    @Test
+    void readsAnEmptyOrHeaderOnlyFile() throws IOException {
+        assertEquals(List.of(), skus(""));
+        assertEquals(List.of(), skus("SKU"));
+        assertEquals(List.of(), skus("SKU\n"));
+        assertEquals(List.of("A"), skus("SKU\nA"));
+    }
+
+    @Test
+    void keepsMultiByteCharacters() throws IOException {
+        String csv = "SKU\nCAF\u00C9-1,x\n\u6905\u5B50-2\n";
+        assertEquals(Arrays.asList("CAF\u00C9-1", "\u6905\u5B50-2"), skus(csv));
+        assertEquals(legacySkus(csv), skus(csv));
+    }
+
+    @Test
+    void readsLinesLongerThanTheReadBuffer() throws IOException {
+        char[] longSku = new char[200_000];
+        Arrays.fill(longSku, 'Z');
+        String csv = "SKU\nA\n" + new String(longSku) + ",x\nB";
+        assertEquals(legacySkus(csv), skus(csv));
+    }
+
+    @Test
+    void skipsLinesWithAnEmptyFirstField() throws IOException {
+        // The old parser added "" for ",x" and threw ArrayIndexOutOfBoundsException for ","
+        assertEquals(Arrays.asList("A", "B"), skus("SKU\nA\n,x\n ,\nB\n"));
+    }
+
+    @Test
+    void matchesLegacyOnRandomFiles() throws IOException {
+        Random random = new Random(20240611L);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcxyz0123456789-_./ \u00E9\u4E2D";
+        for (int file = 0; file < 500; file++) {
+            StringBuilder csv = new StringBuilder("SKU,Quantity");
+            int lines = random.nextInt(300);
+            for (int i = 0; i < lines; i++) {
+                csv.append(LINE_BREAKS[random.nextInt(LINE_BREAKS.length)]);
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    continue; // Blank line
+                }
+                if (kind == 1) {
+                    csv.append(" \t ");
+                    continue;
+                }
+                if (random.nextBoolean()) {
+                    csv.append(random.nextBoolean() ? " " : "\t");
+                }
+                csv.append((char) ('A' + random.nextInt(26))); // A SKU does not start with a separator
+                int length = random.nextInt(20);
+                for (int c = 0; c < length; c++) {
+                    csv.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                int columns = random.nextInt(4);
+                for (int c = 0; c < columns; c++) {
+                    csv.append(',').append(random.nextInt(1000));
+                }
+                if (random.nextBoolean()) {
+                    csv.append("  ");
+                }
+            }
+            if (random.nextBoolean()) {
+                csv.append('\n');
+            }
+            assertEquals(legacySkus(csv.toString()), skus(csv.toString()), "file " + file);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Checks the fixed-point default rule against the double-based .95 rule it replaced.
+ */
+class PricingEngineTest {
+
+    private static final String[] MULTIPLIERS = {"1.4", "1.25", "1.15", "2", "1.333333", "1.49", "1.05"};
+
+    /**
+     * The selling price as the code before PricingEngine computed it, as "%.2f" text.
+     */
+    private static String legacySellingPrice(String price, String multiplier) {
+        double calculatedSellingPrice = Double.parseDouble(price) * Double.parseDouble(multiplier);
+        double sellingPriceValue;
+        if (Math.abs(calculatedSellingPrice - Math.round(calculatedSellingPrice)) < 0.00001) {
+            sellingPriceValue = calculatedSellingPrice;
+        } else {
+            sellingPriceValue = Math.floor(calculatedSellingPrice) + 0.95;
+        }
+        return String.format(Locale.ROOT, "%.2f", sellingPriceValue);
+    }
+
+    private static String sellingPrice(String price, String multiplier) {
+        return SkuRecordStore.formatCents(PricingEngine.compile(multiplier).sellingPriceCents(price, "", ""));
+    }
+
+    private static void assertMatchesLegacy(String price, String multiplier) {
+        assertEquals(legacySellingPrice(price, multiplier), sellingPrice(price, multiplier), "price " + price + " x " + multiplier);
+    }
+
+    @Test
+    void keepsWholeDollarResults() {
+        assertEquals("14.00", sellingPrice("10.00", "1.4"));
+        assertEquals("15.00", sellingPrice("12.50", "1.2"));
+        assertEquals("3.00", sellingPrice("2.40", "1.25"));
+        assertMatchesLegacy("10.00", "1.4");
+        assertMatchesLegacy("12.50", "1.2");
+        assertMatchesLegacy("2.40", "1.25");
+    }
+
+    @Test
+    void givesOtherResultsANinetyFiveEnding() {
+        assertEquals("14.95", sellingPrice("10.50", "1.4"));
+        assertEquals("0.95", sellingPrice("0.10", "1.4"));
+        assertEquals("139.95", sellingPrice("99.99", "1.4"));
+        assertMatchesLegacy("10.50", "1.4");
+        assertMatchesLegacy("0.10", "1.4");
+        assertMatchesLegacy("99.99", "1.4");
+    }
+
+    @Test
+    void treatsResultsWithinTheEpsilonOfAWholeDollarAsWhole() {
+        assertEquals("10.00", sellingPrice("10.000009", "1"));
+        assertEquals("10.00", sellingPrice("9.999991", "1"));
+        assertEquals("10.95", sellingPrice("10.000011", "1"));
+        assertEquals("9.95", sellingPrice("9.999989", "1"));
+        for (String price : new String[]{"10.000009", "9.999991", "10.000011", "9.999989"}) {
+            assertMatchesLegacy(price, "1");
+        }
+    }
+
+    @Test
+    void pricesValuesWithMoreThanTwoDecimalsFromTheirFullValue() {
+        // Rounded to the cent first, these would land on a whole dollar
+        assertEquals("9.95", sellingPrice("9.999", "1"));
+        assertEquals("9.95", sellingPrice("7.1425", "1.4"));
+        assertEquals("15.00", sellingPrice("10.714286", "1.4"));
+        for (String price : new String[]{"9.999", "7.1425", "10.714286", "3.3333", "0.005", "25.0001"}) {
+            assertMatchesLegacy(price, "1.4");
+            assertMatchesLegacy(price, "1");
+        }
+    }
+
+    @Test
+    void matchesLegacyOnRandomPrices() {
+        Random random = new Random(20240611L);
+        for (int i = 0; i < 200_000; i++) {
+            int decimals = 2 + random.nextInt(3);
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(2000 * (int) Math.pow(10, decimals)), decimals);
+            String multiplier = MULTIPLIERS[random.nextInt(MULTIPLIERS.length)];
+            // Results exactly at the epsilon are decided by floating-point noise in the old code
+            BigDecimal exact = price.multiply(new BigDecimal(multiplier));
+            BigDecimal distance = exact.subtract(exact.setScale(0, RoundingMode.HALF_UP)).abs();
+            if (distance.subtract(new BigDecimal("0.00001")).abs().compareTo(new BigDecimal("0.000000001")) < 0) {
+                continue;
+            }
+            assertMatchesLegacy(price.toPlainString(), multiplier);
+        }
+    }
+
+    @Test
+    void pricesFromCentsLikeFromText() {
+        PricingEngine pricing = PricingEngine.compile("1.4");
+        for (long cents = 0; cents < 100_000; cents += 7) {
+            assertEquals(pricing.sellingPriceCents(SkuRecordStore.formatCents(cents), "", ""), pricing.sellingPriceCents(cents));
+        }
+    }
+}
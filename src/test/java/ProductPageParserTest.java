@@ -0,0 +1,158 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Checks the streaming page parser against the org.json extraction it replaced.
+ */
+class ProductPageParserTest {
+
+    private static final String[] FIELDS = {"sku", "stock_qty", "cost", "price", "brand", "Category"};
+
+    /**
+     * The fields of each product as the code before ProductPageParser read them, with the same
+     * defaults for absent or null values.
+     */
+    private static List<List<String>> legacyProducts(byte[] page) {
+        JSONObject pageJson = new JSONObject(new String(page, StandardCharsets.UTF_8));
+        List<List<String>> products = new ArrayList<>();
+        JSONArray result = pageJson.optJSONArray("result");
+        for (int i = 0; result != null && i < result.length(); i++) {
+            JSONObject item = result.getJSONObject(i);
+            products.add(Arrays.asList(
+                    item.optString("sku", "INVALID_SKU"),
+                    item.optString("stock_qty", "0"),
+                    item.optString("cost", "0.00"),
+                    item.optString("price", "0.00"),
+                    item.optString("brand", ""),
+                    item.optString("Category", "")));
+        }
+        return products;
+    }
+
+    private static List<List<String>> parsedProducts(byte[] page) throws IOException {
+        List<List<String>> products = new ArrayList<>();
+        ProductPageParser.parse(new ByteArrayInputStream(page), product -> products.add(Arrays.asList(
+                product.getSku() != null ? product.getSku() : "INVALID_SKU",
+                orDefault(product.getStockQty(), "0"),
+                orDefault(product.getCost(), "0.00"),
+                orDefault(product.getPrice(), "0.00"),
+                product.getBrand().toString(),
+                product.getCategory().toString())));
+        return products;
+    }
+
+    private static String orDefault(CharSequence text, String defaultValue) {
+        return text.length() > 0 ? text.toString() : defaultValue;
+    }
+
+    private static void assertMatchesLegacy(byte[] page) throws IOException {
+        List<List<String>> expected = legacyProducts(page);
+        List<List<String>> actual = parsedProducts(page);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int field = 0; field < FIELDS.length; field++) {
+                assertEquals(expected.get(i).get(field), actual.get(i).get(field), "product " + i + " " + FIELDS[field]);
+            }
+        }
+    }
+
+    private static void assertMatchesLegacy(String page) throws IOException {
+        assertMatchesLegacy(page.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] fixture() throws IOException {
+        return Files.readAllBytes(Paths.get("products.json"));
+    }
+
+    @Test
+    void matchesOrgJsonOnTheProductsFixture() throws IOException {
+        byte[] page = fixture();
+        assertMatchesLegacy(page);
+        assertEquals(40, parsedProducts(page).size());
+        assertEquals(new JSONObject(new String(page, StandardCharsets.UTF_8)).optInt("total_pages", -1),
+                ProductPageParser.parse(new ByteArrayInputStream(page), product -> { }));
+    }
+
+    @Test
+    void treatsNullAndAbsentFieldsAsEmpty() throws IOException {
+        assertMatchesLegacy("{\"result\":[{\"sku\":\"A\",\"stock_qty\":null,\"cost\":null,\"price\":null,\"brand\":null,\"Category\":null},"
+                + "{\"stock_qty\":30,\"price\":\"1.00\"},"
+                + "{\"sku\":null,\"cost\":\"2.5\"},"
+                + "{}],\"total_pages\":1}");
+        assertMatchesLegacy("{\"result\":[],\"total_pages\":0}");
+        assertMatchesLegacy("{\"result\":null}");
+        assertEquals(-1, ProductPageParser.parse(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), product -> { }));
+    }
+
+    @Test
+    void ignoresKeysOfNestedObjects() throws IOException {
+        String page = "{\"result\":[{\"zone_rates\":{\"sku\":\"WRONG\",\"price\":\"9.99\"},\"sku\":\"RIGHT\","
+                + "\"gallery\":[{\"sku\":\"ALSO-WRONG\",\"cost\":\"1\"}],\"price\":\"2.50\","
+                + "\"RRP\":{\"Standard\":\"4.00\",\"brand\":\"Nope\"},\"brand\":\"Yes\"},"
+                + "{\"sku\":\"SECOND\",\"zone_rates\":{\"sku\":\"WRONG\"}}]}";
+        assertMatchesLegacy(page);
+        List<List<String>> products = parsedProducts(page.getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("RIGHT", "0", "0.00", "2.50", "Yes", ""), products.get(0));
+        assertEquals("SECOND", products.get(1).get(0));
+    }
+
+    @Test
+    void decodesEscapesAndMultiByteUtf8() throws IOException {
+        // Raw two-, three- and four-byte UTF-8 in values, and the same characters as escapes
+        String raw = "Caf\u00e9 \u6c34 \ud83d\ude00";
+        String page = "{\"result\":[{\"sku\":\"A\\\"B\\\\C\\/D\\u00e9\\n\",\"brand\":\"" + raw + "\","
+                + "\"Category\":\"Home &amp; Garden \\u003e Caf\\u00e9 \\ud83d\\ude00 > \","
+                + "\"desc\":\"<p>\\\"quoted\\\" " + raw + " }]{[</p>\",\"price\":\"12.50\"}]}";
+        assertMatchesLegacy(page);
+        List<String> product = parsedProducts(page.getBytes(StandardCharsets.UTF_8)).get(0);
+        assertEquals("A\"B\\C/D\u00e9\n", product.get(0));
+        assertEquals(raw, product.get(4));
+        assertEquals("Home &amp; Garden > Caf\u00e9 \ud83d\ude00 > ", product.get(5));
+        assertEquals("12.50", product.get(3));
+    }
+
+    @Test
+    void rejectsTruncatedPages() throws IOException {
+        byte[] page = fixture();
+        for (int length = 0; length < page.length; length += 101) {
+            byte[] truncated = Arrays.copyOf(page, length);
+            assertThrows(ProductPageParser.MalformedPageException.class,
+                    () -> ProductPageParser.parse(new ByteArrayInputStream(truncated), product -> { }), "truncated to " + length);
+        }
+    }
+
+    @Test
+    void rejectsMalformedPages() {
+        String[] pages = {
+                "[]",
+                "{\"result\":[{\"sku\" \"A\"}]}",
+                "{\"result\":[{\"sku\":\"A\"}}",
+                "{\"result\":[{\"sku\":\"A\\q\"}]}",
+                "{\"result\":[{\"sku\":\"A\\u00g1\"}]}",
+                "{\"result\":[{\"sku\":\"A\",}]}",
+                "{\"result\":[{\"sku\":\"A\" \"price\":\"1\"}]}",
+        };
+        for (String page : pages) {
+            assertThrows(ProductPageParser.MalformedPageException.class,
+                    () -> ProductPageParser.parse(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), product -> { }), page);
+        }
+        // A lead byte of a multi-byte sequence followed by a non-continuation byte
+        byte[] invalidUtf8 = {'{', '"', 'r', 'e', 's', 'u', 'l', 't', '"', ':', '[', '{', '"', 's', 'k', 'u', '"', ':', '"', (byte) 0xC3, 'A', '"', '}', ']', '}'};
+        assertThrows(ProductPageParser.MalformedPageException.class,
+                () -> ProductPageParser.parse(new ByteArrayInputStream(invalidUtf8), product -> { }));
+    }
+}
@@ -0,0 +1,227 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that a run checkpoint survives the trip through S3, and that a fetch resumed from it only
+ * requests the SKU batches it does not list as done.
+ */
+class RunCheckpointTest {
+
+    private static final String BUCKET = "checkpoint-test";
+    private static final String KEY = "stock/neto_stock_checkpoint";
+
+    /**
+     * Answers /auth with a token and /v2/products with one page holding every requested SKU, except
+     * that batches containing an unavailable SKU are answered 404. Records the SKU batches requested.
+     */
+    private static final class FakeDropshipzone extends HttpClient {
+        private final Set<String> unavailable;
+        final ConcurrentLinkedQueue<List<String>> requestedBatches = new ConcurrentLinkedQueue<>();
+
+        FakeDropshipzone(String... unavailable) {
+            this.unavailable = new HashSet<>(Arrays.asList(unavailable));
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+            if (request.uri().getPath().endsWith("/auth")) {
+                return CompletableFuture.completedFuture(respond(request, 200, "{\"token\":\"test-token\"}", handler));
+            }
+            String skus = "";
+            for (String param : request.uri().getRawQuery().split("&")) {
+                if (param.startsWith("skus=")) {
+                    skus = URLDecoder.decode(param.substring(5), StandardCharsets.UTF_8);
+                }
+            }
+            List<String> batch = Arrays.asList(skus.split(","));
+            requestedBatches.add(batch);
+            if (batch.stream().anyMatch(unavailable::contains)) {
+                return CompletableFuture.completedFuture(respond(request, 404, "{\"message\":\"unavailable\"}", handler));
+            }
+            StringBuilder page = new StringBuilder("{\"result\":[");
+            for (int i = 0; i < batch.size(); i++) {
+                page.append(i > 0 ? "," : "").append("{\"sku\":\"").append(batch.get(i))
+                        .append("\",\"stock_qty\":\"").append(i + 1).append("\",\"price\":\"10.00\"}");
+            }
+            page.append("],\"total_pages\":1}");
+            return CompletableFuture.completedFuture(respond(request, 200, page.toString(), handler));
+        }
+
+        private static <T> HttpResponse<T> respond(HttpRequest request, int statusCode, String body, HttpResponse.BodyHandler<T> handler) {
+            HttpHeaders headers = HttpHeaders.of(Map.of(), (name, value) -> true);
+            HttpResponse.BodySubscriber<T> subscriber = handler.apply(new HttpResponse.ResponseInfo() {
+                @Override public int statusCode() { return statusCode; }
+                @Override public HttpHeaders headers() { return headers; }
+                @Override public Version version() { return Version.HTTP_1_1; }
+            });
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onNext(List.of(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8))));
+            subscriber.onComplete();
+            T value = subscriber.getBody().toCompletableFuture().join();
+            return new HttpResponse<>() {
+                @Override public int statusCode() { return statusCode; }
+                @Override public HttpRequest request() { return request; }
+                @Override public Optional<HttpResponse<T>> previousResponse() { return Optional.empty(); }
+                @Override public HttpHeaders headers() { return headers; }
+                @Override public T body() { return value; }
+                @Override public Optional<SSLSession> sslSession() { return Optional.empty(); }
+                @Override public java.net.URI uri() { return request.uri(); }
+                @Override public Version version() { return Version.HTTP_1_1; }
+            };
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                                HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+            return sendAsync(request, handler);
+        }
+
+        @Override
+        public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+            return sendAsync(request, handler).join();
+        }
+
+        @Override public Optional<CookieHandler> cookieHandler() { return Optional.empty(); }
+        @Override public Optional<Duration> connectTimeout() { return Optional.empty(); }
+        @Override public Redirect followRedirects() { return Redirect.NEVER; }
+        @Override public Optional<ProxySelector> proxy() { return Optional.empty(); }
+        @Override public SSLContext sslContext() { return null; }
+        @Override public SSLParameters sslParameters() { return null; }
+        @Override public Optional<Authenticator> authenticator() { return Optional.empty(); }
+        @Override public Version version() { return Version.HTTP_1_1; }
+        @Override public Optional<Executor> executor() { return Optional.empty(); }
+    }
+
+    private static List<String> skus(int count) {
+        List<String> skus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            skus.add(String.format(Locale.ROOT, "RC-%05d", i));
+        }
+        return skus;
+    }
+
+    @Test
+    void savesAndLoadsProgress() throws IOException {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        List<String> skus = skus(10);
+        RunCheckpoint checkpoint = new RunCheckpoint(RunCheckpoint.fingerprint(skus));
+        checkpoint.getCompletedBatches().set(0);
+        checkpoint.getCompletedBatches().set(2);
+        checkpoint.getCompletedBatches().set(130);
+        checkpoint.getPendingNetoSkus().addAll(Arrays.asList("RC-00001", "RC-00002"));
+        checkpoint.getFailedNetoSkus().add("RC-00003, \"quoted\"");
+        SkuRecordStore records = new SkuRecordStore();
+        records.put("RC-00001", 4, 1000, 1495);
+        records.put("RC-00002, \"quoted\"", 0, 250, 395);
+        records.putNotFound("RC-00003", 100, 195);
+        records.exclude(records.put("RC-00004", 9, 100, 195));
+        checkpoint.save(s3, BUCKET, KEY, records);
+
+        RunCheckpoint loaded = RunCheckpoint.load(s3, BUCKET, KEY);
+        assertEquals(checkpoint.getFingerprint(), loaded.getFingerprint());
+        assertEquals(checkpoint.getStartedAtMillis(), loaded.getStartedAtMillis());
+        assertEquals(checkpoint.getCompletedBatches(), loaded.getCompletedBatches());
+        assertEquals(checkpoint.getPendingNetoSkus(), loaded.getPendingNetoSkus());
+        assertEquals(checkpoint.getFailedNetoSkus(), loaded.getFailedNetoSkus());
+
+        SkuRecordStore loadedRecords = loaded.getRecords();
+        assertEquals(3, loadedRecords.size());
+        int quoted = loadedRecords.indexOf("RC-00002, \"quoted\"");
+        assertEquals(250, loadedRecords.costCents(quoted));
+        assertEquals(395, loadedRecords.priceCents(quoted));
+        assertEquals(4, loadedRecords.quantity(loadedRecords.indexOf("RC-00001")));
+        assertTrue(loadedRecords.isNotFound(loadedRecords.indexOf("RC-00003")));
+        assertEquals(-1, loadedRecords.indexOf("RC-00004"));
+    }
+
+    @Test
+    void ignoresMissingAndUnreadableCheckpoints() {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        assertNull(RunCheckpoint.load(s3, BUCKET, KEY));
+        s3.putObject(BUCKET, KEY, "SKU,Quantity,Cost,Selling Price,Status\n");
+        assertNull(RunCheckpoint.load(s3, BUCKET, KEY));
+        s3.putObject(BUCKET, KEY, "{\"version\":2,\"fingerprint\":\"1:00\",\"startedAt\":0,\"completedBatches\":[]}\n");
+        assertNull(RunCheckpoint.load(s3, BUCKET, KEY));
+    }
+
+    @Test
+    void resumedFetchSkipsCompletedBatches() throws IOException, InterruptedException {
+        System.setProperty("DROPSHIPZONE_EMAIL", "checkpoint-test@example.com");
+        System.setProperty("DROPSHIPZONE_PASSWORD", "checkpoint-test");
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        PricingEngine pricing = PricingEngine.compile("1.4");
+        // Five batches of 50; the API fails to answer the fourth in the first invocation
+        List<String> skus = skus(250);
+
+        RunCheckpoint checkpoint = new RunCheckpoint(RunCheckpoint.fingerprint(skus));
+        SkuRecordStore firstRecords = new SkuRecordStore();
+        FakeDropshipzone firstApi = new FakeDropshipzone("RC-00170");
+        DropshipzoneAPIClient.fetchStock(new RequestExecutor(firstApi, 0), skus, firstRecords, pricing, 4, null, null,
+                InvocationDeadline.NONE, checkpoint.getCompletedBatches());
+        assertEquals(5, firstApi.requestedBatches.size());
+        BitSet done = new BitSet();
+        done.set(0, 3);
+        done.set(4);
+        assertEquals(done, checkpoint.getCompletedBatches());
+        checkpoint.save(s3, BUCKET, KEY, firstRecords);
+
+        RunCheckpoint resumed = RunCheckpoint.load(s3, BUCKET, KEY);
+        assertEquals(RunCheckpoint.fingerprint(skus), resumed.getFingerprint());
+        SkuRecordStore records = resumed.getRecords();
+        assertEquals(200, records.size());
+        FakeDropshipzone resumedApi = new FakeDropshipzone();
+        DropshipzoneAPIClient.fetchStock(new RequestExecutor(resumedApi, 0), skus, records, pricing, 4, null, null,
+                InvocationDeadline.NONE, resumed.getCompletedBatches());
+
+        assertEquals(1, resumedApi.requestedBatches.size());
+        assertEquals(skus.subList(150, 200), resumedApi.requestedBatches.peek());
+        assertEquals(5, resumed.getCompletedBatches().cardinality());
+        assertEquals(250, records.size());
+        for (String sku : skus) {
+            assertTrue(records.indexOf(sku) >= 0, sku);
+        }
+
+        // Nothing is left to fetch once every batch is done
+        FakeDropshipzone finishedApi = new FakeDropshipzone();
+        assertEquals(0, DropshipzoneAPIClient.fetchStock(new RequestExecutor(finishedApi, 0), skus, records, pricing, 4, null, null,
+                InvocationDeadline.NONE, resumed.getCompletedBatches()));
+        assertTrue(finishedApi.requestedBatches.isEmpty());
+    }
+}
@@ -0,0 +1,156 @@
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that a sharded run merges the workers' results, and keeps the previous snapshot's values for
+ * the SKUs of a shard whose worker failed.
+ */
+class ShardCoordinatorTest {
+
+    private static final String BUCKET = "shard-test";
+    private static final String PREFIX = "stock/neto_stock";
+
+    /**
+     * Stands in for a worker's handler: writes its shard's SKUs with the shard number as quantity, as
+     * a real worker writes its part, or fails if it is the failing shard.
+     */
+    private static final class FakeWorker extends LambdaHandler {
+        private final InMemoryS3Client s3;
+        private final List<String> skus;
+        private final int failingShard;
+
+        FakeWorker(InMemoryS3Client s3, List<String> skus, int failingShard) {
+            super(s3);
+            this.s3 = s3;
+            this.skus = skus;
+            this.failingShard = failingShard;
+        }
+
+        @Override
+        public Void handleRequest(ScheduledEvent event, Context context) {
+            ShardTask task = ShardTask.fromEvent(event);
+            if (task.getShardIndex() == failingShard) {
+                throw new IllegalStateException("worker failed");
+            }
+            try {
+                CsvStreamWriter.upload(s3, BUCKET, task.resultKey(PREFIX), "text/csv", false, csv -> {
+                    csv.writeHeader();
+                    for (String sku : task.select(skus)) {
+                        csv.writeRow(sku, task.getShardIndex() + 1, 1000, 1495);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+    }
+
+    private static List<String> skus(int count) {
+        List<String> skus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            skus.add(String.format(Locale.ROOT, "SC-%05d", i));
+        }
+        return skus;
+    }
+
+    /**
+     * Runs the coordinator and returns the merged output.
+     */
+    private static SkuRecordStore runCoordinator(ShardCoordinator coordinator, List<String> skus, int shardCount, ShardTask.Strategy strategy,
+                                                 SkuRecordStore previous, AtomicInteger previousLoads) throws IOException {
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        try (CsvStreamWriter output = new CsvStreamWriter(merged)) {
+            output.writeHeader();
+            coordinator.run(skus, shardCount, strategy, InvocationDeadline.NONE, () -> {
+                previousLoads.incrementAndGet();
+                return previous;
+            }, output);
+        }
+        return SnapshotDiff.parseSnapshotCsv(new BufferedReader(new StringReader(merged.toString(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void mergesEveryShardInOrder() throws IOException {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        List<String> skus = skus(1000);
+        AtomicInteger workersCreated = new AtomicInteger();
+        InProcessShardInvoker invoker = new InProcessShardInvoker(() -> {
+            workersCreated.incrementAndGet();
+            return new FakeWorker(s3, skus, -1);
+        }, null);
+        ShardCoordinator coordinator = new ShardCoordinator(s3, invoker, BUCKET, PREFIX);
+        AtomicInteger previousLoads = new AtomicInteger();
+
+        SkuRecordStore merged = runCoordinator(coordinator, skus, 4, ShardTask.Strategy.RANGE, new SkuRecordStore(), previousLoads);
+        assertEquals(skus.size(), merged.size());
+        for (int record = 0; record < merged.size(); record++) {
+            assertEquals(skus.get(record), merged.sku(record));
+            assertEquals(record / 250 + 1, merged.quantity(record));
+        }
+        assertEquals(0, previousLoads.get());
+        assertTrue(s3.sizes(BUCKET, PREFIX + "_shards/").isEmpty());
+
+        // A second run reuses each shard's worker, as warm worker instances would be
+        merged = runCoordinator(coordinator, skus, 4, ShardTask.Strategy.HASH, new SkuRecordStore(), previousLoads);
+        assertEquals(skus.size(), merged.size());
+        for (String sku : skus) {
+            int record = merged.indexOf(sku);
+            assertEquals(Math.floorMod(sku.hashCode(), 4) + 1, merged.quantity(record));
+        }
+        assertEquals(4, workersCreated.get());
+        assertTrue(s3.sizes(BUCKET, PREFIX + "_shards/").isEmpty());
+    }
+
+    @Test
+    void keepsPreviousValuesForAFailedShard() throws IOException {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        List<String> skus = skus(400);
+        InProcessShardInvoker invoker = new InProcessShardInvoker(() -> new FakeWorker(s3, skus, 1), null);
+        ShardCoordinator coordinator = new ShardCoordinator(s3, invoker, BUCKET, PREFIX);
+        // The previous snapshot has every other SKU of the failed shard, one of them not found
+        SkuRecordStore previous = new SkuRecordStore();
+        for (int i = 100; i < 200; i += 2) {
+            previous.put(skus.get(i), 7, 500, 795);
+        }
+        previous.putNotFound(skus.get(150), 500, 795);
+        previous.put("SC-99999", 3, 100, 195);
+        AtomicInteger previousLoads = new AtomicInteger();
+
+        SkuRecordStore merged = runCoordinator(coordinator, skus, 4, ShardTask.Strategy.RANGE, previous, previousLoads);
+        assertEquals(350, merged.size());
+        for (int i = 0; i < skus.size(); i++) {
+            int record = merged.indexOf(skus.get(i));
+            if (i / 100 != 1) {
+                assertEquals(i / 100 + 1, merged.quantity(record));
+            } else if (i % 2 == 0) {
+                assertEquals(i == 150 ? 0 : 7, merged.quantity(record));
+                assertEquals(795, merged.priceCents(record));
+                assertEquals(i == 150, merged.isNotFound(record));
+            } else {
+                assertEquals(-1, record);
+            }
+        }
+        // SKUs outside the failed shard are never taken from the snapshot
+        assertEquals(-1, merged.indexOf("SC-99999"));
+        assertEquals(1, previousLoads.get());
+        assertTrue(s3.sizes(BUCKET, PREFIX + "_shards/").isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Checks the fixed-point parsing used for prices, costs, quantities and multipliers.
+ */
+class SkuRecordStoreTest {
+
+    @Test
+    void parsesPlainDecimals() {
+        assertEquals(8241, SkuRecordStore.parseCents("82.41"));
+        assertEquals(1400, SkuRecordStore.parseCents("14"));
+        assertEquals(1450, SkuRecordStore.parseCents("14.5"));
+        assertEquals(-350, SkuRecordStore.parseCents("-3.5"));
+        assertEquals(350, SkuRecordStore.parseCents("+3.5"));
+        assertEquals(50, SkuRecordStore.parseCents(".5"));
+        assertEquals(1400, SkuRecordStore.parseCents("14."));
+        assertEquals(1_400_000, SkuRecordStore.parseFixedPoint("1.4", 6));
+        assertEquals(25, SkuRecordStore.parseFixedPoint("25", 0));
+    }
+
+    @Test
+    void roundsHalfUpBeyondTheDecimalsKept() {
+        assertEquals(1, SkuRecordStore.parseCents("0.005"));
+        assertEquals(0, SkuRecordStore.parseCents("0.0049"));
+        assertEquals(1000, SkuRecordStore.parseCents("9.995"));
+        assertEquals(999, SkuRecordStore.parseCents("9.9949999"));
+        // Away from zero for negative amounts
+        assertEquals(-1, SkuRecordStore.parseCents("-0.005"));
+        assertEquals(1_333_333, SkuRecordStore.parseFixedPoint("1.3333333", 6));
+        assertEquals(1_666_667, SkuRecordStore.parseFixedPoint("1.6666666", 6));
+        assertEquals(25, SkuRecordStore.parseFixedPoint("24.5", 0));
+        assertEquals(24, SkuRecordStore.parseFixedPoint("24.49", 0));
+    }
+
+    @Test
+    void rejectsAmountsThatDoNotFit() {
+        assertEquals(9_000_000_000_000_000L, SkuRecordStore.parseFixedPoint("9000000000", 6));
+        assertEquals(900_000_000_000L, SkuRecordStore.parseCents("9000000000"));
+        // The whole part is bounded before each digit, so the largest accepted values still fit a long at 6 decimals
+        assertEquals(9_999_999_999_999_999L, SkuRecordStore.parseFixedPoint("9999999999.999999", 6));
+        assertThrows(NumberFormatException.class, () -> SkuRecordStore.parseFixedPoint("99999999999", 6));
+        assertThrows(NumberFormatException.class, () -> SkuRecordStore.parseFixedPoint("99999999999.999999", 6));
+        assertThrows(NumberFormatException.class, () -> SkuRecordStore.parseCents("99999999999999999999"));
+        assertThrows(NumberFormatException.class, () -> SkuRecordStore.parseCents("-99999999999999999999"));
+    }
+
+    @Test
+    void rejectsTextThatIsNotAPlainDecimal() {
+        for (String text : new String[]{"", "-", "+", ".", "abc", "1.2.3", "1e5", " 1.5", "1.5 ", "1,5", "--1", "0x10"}) {
+            assertThrows(NumberFormatException.class, () -> SkuRecordStore.parseCents(text), "'" + text + "'");
+        }
+    }
+
+    @Test
+    void rejectsUnsupportedDecimals() {
+        assertThrows(IllegalArgumentException.class, () -> SkuRecordStore.parseFixedPoint("1", 7));
+        assertThrows(IllegalArgumentException.class, () -> SkuRecordStore.parseFixedPoint("1", -1));
+    }
+
+    @Test
+    void formatsCentsBackToTheSameText() {
+        for (String text : new String[]{"0.00", "0.05", "0.95", "14.00", "82.41", "1234567.89", "-3.50"}) {
+            assertEquals(text, SkuRecordStore.formatCents(SkuRecordStore.parseCents(text)));
+        }
+    }
+}
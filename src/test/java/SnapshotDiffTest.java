@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks how records of a run are classified against the previous run's snapshot.
+ */
+class SnapshotDiffTest {
+
+    private static SkuRecordStore previousSnapshot() {
+        SkuRecordStore previous = new SkuRecordStore();
+        previous.put("SAME", 5, 1000, 1495);
+        previous.put("QTY", 5, 1000, 1495);
+        previous.put("PRICE", 5, 1000, 1495);
+        previous.put("COST", 5, 1000, 1495);
+        previous.put("GONE", 3, 2000, 2995);
+        previous.put("GONE-EMPTY", 0, 2000, 2995);
+        previous.put("MISSING", 4, 3000, 3995);
+        previous.put("MISSING-EMPTY", 0, 3000, 3995);
+        previous.putNotFound("STILL-MISSING", 500, 795);
+        previous.exclude(previous.put("EXCLUDED", 9, 100, 195));
+        return previous;
+    }
+
+    @Test
+    void classifiesNewChangedAndUnchangedRecords() {
+        SnapshotDiff diff = new SnapshotDiff(previousSnapshot());
+        SkuRecordStore current = new SkuRecordStore();
+        assertFalse(diff.needsUpdate(current, current.put("SAME", 5, 1000, 1495)));
+        assertTrue(diff.needsUpdate(current, current.put("QTY", 6, 1000, 1495)));
+        assertTrue(diff.needsUpdate(current, current.put("PRICE", 5, 1000, 1595)));
+        // Cost is not sent to Neto
+        assertFalse(diff.needsUpdate(current, current.put("COST", 5, 1100, 1495)));
+        assertTrue(diff.needsUpdate(current, current.put("NEW", 1, 100, 195)));
+
+        assertEquals(2, diff.getChangedCount());
+        assertEquals(1, diff.getNewCount());
+        assertEquals(2, diff.getUnchangedCount());
+        assertEquals(0, diff.getNotFoundCount());
+        assertEquals(10, diff.getPreviousSize());
+    }
+
+    @Test
+    void clearsStockOfSkusNotReturned() {
+        SnapshotDiff diff = new SnapshotDiff(previousSnapshot());
+        SkuRecordStore current = new SkuRecordStore();
+        int missing = current.putNotFound("MISSING", 0, 0);
+        int missingEmpty = current.putNotFound("MISSING-EMPTY", 0, 0);
+        int stillMissing = current.putNotFound("STILL-MISSING", 0, 0);
+        int unknown = current.putNotFound("UNKNOWN", 0, 0);
+
+        assertTrue(diff.needsStockCleared(current, missing));
+        assertFalse(diff.needsStockCleared(current, missingEmpty));
+        assertFalse(diff.needsStockCleared(current, stillMissing));
+        assertTrue(diff.needsStockCleared(current, unknown));
+        assertEquals(2, diff.getNotFoundCount());
+        assertEquals(2, diff.getUnchangedCount());
+
+        // Cost and selling price are kept from the snapshot, the quantity is 0
+        assertEquals(0, current.quantity(missing));
+        assertEquals(3000, current.costCents(missing));
+        assertEquals(3995, current.priceCents(missing));
+        assertTrue(current.isNotFound(missing));
+        assertEquals(795, current.priceCents(stillMissing));
+        assertEquals(0, current.priceCents(unknown));
+    }
+
+    @Test
+    void zeroesUnlistedSkusThatStillHaveStock() {
+        SnapshotDiff diff = new SnapshotDiff(previousSnapshot());
+        SkuRecordStore current = new SkuRecordStore();
+        current.put("SAME", 5, 1000, 1495);
+        Set<String> listed = new HashSet<>(Arrays.asList("SAME", "QTY", "PRICE", "COST", "MISSING", "MISSING-EMPTY"));
+
+        List<Integer> removed = diff.putRemoved(current, listed);
+        // GONE-EMPTY and STILL-MISSING are already at 0, EXCLUDED was not in the snapshot's output
+        assertEquals(1, removed.size());
+        int gone = removed.get(0);
+        assertEquals("GONE", current.sku(gone));
+        assertEquals(0, current.quantity(gone));
+        assertEquals(2000, current.costCents(gone));
+        assertEquals(2995, current.priceCents(gone));
+        assertFalse(current.isNotFound(gone));
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(2, current.size());
+
+        assertEquals(0, new SnapshotDiff(previousSnapshot()).putRemoved(new SkuRecordStore(), new HashSet<>(Arrays.asList("GONE", "SAME", "QTY", "PRICE", "COST", "MISSING"))).size());
+    }
+
+    @Test
+    void restoresPreviousValuesOrExcludesNewSkus() {
+        SnapshotDiff diff = new SnapshotDiff(previousSnapshot());
+        SkuRecordStore current = new SkuRecordStore();
+        int qty = current.put("QTY", 6, 1000, 1495);
+        int added = current.put("NEW", 1, 100, 195);
+
+        diff.restorePrevious(current, "QTY");
+        diff.restorePrevious(current, "NEW");
+        diff.restorePrevious(current, "STILL-MISSING");
+        assertEquals(5, current.quantity(qty));
+        assertFalse(current.isIncluded(added));
+        assertTrue(current.isNotFound(current.indexOf("STILL-MISSING")));
+    }
+
+    @Test
+    void readsTheSnapshotCsv() throws IOException {
+        String csv = "SKU,Quantity,Cost,Selling Price,Status\n"
+                + "A,5,10.00,14.95,In Stock\n"
+                + "\"B,1\",0,2.50,3.95,Out of Stock\n"
+                + "C,0,1.00,1.95,Not Found in API Response\n"
+                + "OLD,2,1.00,1.95\n"
+                + "\n"
+                + "SHORT,1\n"
+                + "BAD,x,1.00,1.95\n";
+        SkuRecordStore snapshot = SnapshotDiff.parseSnapshotCsv(new BufferedReader(new StringReader(csv)));
+        List<String> skus = new ArrayList<>();
+        for (int record = 0; record < snapshot.size(); record++) {
+            skus.add(snapshot.sku(record));
+        }
+        assertEquals(Arrays.asList("A", "B,1", "C", "OLD"), skus);
+        assertEquals(5, snapshot.quantity(0));
+        assertEquals(1495, snapshot.priceCents(0));
+        assertEquals(250, snapshot.costCents(1));
+        assertTrue(snapshot.isNotFound(2));
+        assertFalse(snapshot.isNotFound(3));
+    }
+}